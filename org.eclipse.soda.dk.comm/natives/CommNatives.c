@@ -0,0 +1,356 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#include <stdio.h>
+#ifdef WIN32
+#include "CommNatives.h"
+#include "org_eclipse_soda_dk_comm_NSDeviceInputStream.h"
+#include "org_eclipse_soda_dk_comm_NSDeviceOutputStream.h"
+#else
+#include <CommNatives.h>
+#include <org_eclipse_soda_dk_comm_NSDeviceInputStream.h>
+#include <org_eclipse_soda_dk_comm_NSDeviceOutputStream.h>
+#endif
+#ifdef __linux__
+#include <errno.h>
+#include <fcntl.h>
+#include <poll.h>
+#include <pthread.h>
+#include <stdint.h>
+#include <stdlib.h>
+#include <unistd.h>
+#include <sys/eventfd.h>
+#endif /* __linux__ */
+#define NOOF_ELEMS(s)	((sizeof(s))/(sizeof(s[0])))
+DKCommIDs dkcommIDs;
+#ifdef __linux__
+/*
+ * A port's wakeup descriptors, in a slot handed out when the port is
+ * opened.  The port, its streams and its monitors keep the slot's handle
+ * (its index and a generation number), so a wait finds the descriptor
+ * without a lock or a search.  The slot's state word holds the generation,
+ * a closed bit and the number of references, and a reference is only
+ * taken, by compare and swap, while the generation matches the handle and
+ * the port is not closed; so a handle kept past close fails at once, even
+ * after the slot has gone to another port.  Every poll, signal and destroy
+ * holds a reference while it uses the descriptors, and the last reference
+ * to a closed slot closes them and frees the slot under a new generation.
+ * Slots are never deallocated, so a stale handle still points at a slot.
+ */
+typedef struct dkcommWakeup {
+  volatile unsigned int	state;	/* generation, closed bit and references */
+  int			rfd;	/* polled */
+  int			wfd;	/* signalled; the same as rfd for an eventfd */
+  int			index;	/* this slot's place in the table */
+  int			next;	/* the next free slot while free; -1 at the end */
+} dkcommWakeup;
+#define WAKEUP_GEN_SHIFT	16
+#define WAKEUP_GEN_MASK		0xffffU
+#define WAKEUP_CLOSED		0x8000U
+#define WAKEUP_REFS		0x7fffU
+#define WAKEUP_CHUNK_SHIFT	8
+#define WAKEUP_CHUNK		(1 << WAKEUP_CHUNK_SHIFT)
+#define WAKEUP_CHUNKS		128	/* 32768 slots keep a handle positive */
+/* The slots, allocated a chunk at a time as ports are opened. */
+static dkcommWakeup *wakeupChunks[WAKEUP_CHUNKS];
+static int wakeupSlots = 0;
+static int wakeupFree = -1;
+/* Guards handing out and freeing slots; waits never take it. */
+static pthread_mutex_t wakeupLock = PTHREAD_MUTEX_INITIALIZER;
+#endif /* __linux__ */
+/*
+ * The stream natives are on every read and write, so they are bound up
+ * front instead of being looked up by name on first use.
+ */
+static JNINativeMethod inputStreamMethods[] = {
+  { "getReadCountNC", "()I", (void *)Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_getReadCountNC },
+  { "readDeviceNC", "([BII)I", (void *)Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readDeviceNC },
+  { "readDeviceOneByteNC", "()I", (void *)Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readDeviceOneByteNC },
+  { "readDirectNC", "(Ljava/nio/ByteBuffer;II)I", (void *)Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readDirectNC },
+  { "readFrameNC", "([BIII)I", (void *)Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readFrameNC }
+};
+static JNINativeMethod outputStreamMethods[] = {
+  { "writeDeviceNC", "([BII)I", (void *)Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_writeDeviceNC },
+  { "writeDirectNC", "(Ljava/nio/ByteBuffer;II)I", (void *)Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_writeDirectNC },
+  { "closeSendNC", "(I)I", (void *)Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_closeSendNC }
+};
+jfieldID dkcommFieldID(JNIEnv *jenv, jobject jobj, jfieldID *cache, const char *name, const char *sig) {
+  jclass	jc;
+  if (*cache == NULL) {
+	jc = (*jenv)->GetObjectClass(jenv, jobj);
+	if (jc == NULL)
+		return NULL;
+	*cache = (*jenv)->GetFieldID(jenv, jc, name, sig);
+	(*jenv)->DeleteLocalRef(jenv, jc);
+  }
+  return *cache;
+}	/* dkcommFieldID() */
+jclass dkcommClass(JNIEnv *jenv, jclass *cache, const char *name) {
+  jclass	jc;
+  if (*cache == NULL) {
+	jc = (*jenv)->FindClass(jenv, name);
+	if (jc == NULL)
+		return NULL;
+	*cache = (*jenv)->NewGlobalRef(jenv, jc);
+	(*jenv)->DeleteLocalRef(jenv, jc);
+  }
+  return *cache;
+}	/* dkcommClass() */
+/*
+ * Look up a field of the named class; a missing class or field is left
+ * for the lazy path to report.
+ */
+static jfieldID lookupField(JNIEnv *jenv, const char *cname, const char *name, const char *sig) {
+  jclass	jc;
+  jfieldID	jf = NULL;
+  jc = (*jenv)->FindClass(jenv, cname);
+  if (jc != NULL) {
+	jf = (*jenv)->GetFieldID(jenv, jc, name, sig);
+	(*jenv)->DeleteLocalRef(jenv, jc);
+  }
+  if ((*jenv)->ExceptionCheck(jenv))
+	(*jenv)->ExceptionClear(jenv);
+  return jf;
+}	/* lookupField() */
+/*
+ * Bind the natives of the named class; on failure the VM falls back to
+ * resolving them by name.
+ */
+static void registerMethods(JNIEnv *jenv, const char *cname, JNINativeMethod *methods, jint count) {
+  jclass	jc;
+  jc = (*jenv)->FindClass(jenv, cname);
+  if (jc != NULL) {
+	(void)(*jenv)->RegisterNatives(jenv, jc, methods, count);
+	(*jenv)->DeleteLocalRef(jenv, jc);
+  }
+  if ((*jenv)->ExceptionCheck(jenv))
+	(*jenv)->ExceptionClear(jenv);
+}	/* registerMethods() */
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
+  JNIEnv	*jenv;
+  if ((*vm)->GetEnv(vm, (void **)&jenv, JNI_VERSION_1_2) != JNI_OK)
+	return JNI_VERSION_1_2;
+  (void)dkcommClass(jenv, &dkcommIDs.ioException, "java/io/IOException");
+  (void)dkcommClass(jenv, &dkcommIDs.portInUseException, "javax/comm/PortInUseException");
+  (void)dkcommClass(jenv, &dkcommIDs.noSuchPortException, "javax/comm/NoSuchPortException");
+  (void)dkcommClass(jenv, &dkcommIDs.serialPortException, "javax/comm/SerialPortException");
+  if ((*jenv)->ExceptionCheck(jenv))
+	(*jenv)->ExceptionClear(jenv);
+  dkcommIDs.inFd = lookupField(jenv, "org/eclipse/soda/dk/comm/NSDeviceInputStream", "fd", "I");
+  dkcommIDs.inTmo = lookupField(jenv, "org/eclipse/soda/dk/comm/NSDeviceInputStream", "tmo", "I");
+  dkcommIDs.inTmoDone = lookupField(jenv, "org/eclipse/soda/dk/comm/NSDeviceInputStream", "tmoDone", "Z");
+  dkcommIDs.inThc = lookupField(jenv, "org/eclipse/soda/dk/comm/NSDeviceInputStream", "thc", "I");
+  dkcommIDs.inWakeup = lookupField(jenv, "org/eclipse/soda/dk/comm/NSDeviceInputStream", "wakeup", "I");
+  dkcommIDs.inFrameCount = lookupField(jenv, "org/eclipse/soda/dk/comm/NSDeviceInputStream", "frameCount", "I");
+  dkcommIDs.outFd = lookupField(jenv, "org/eclipse/soda/dk/comm/NSDeviceOutputStream", "fd", "I");
+  dkcommIDs.outTmo = lookupField(jenv, "org/eclipse/soda/dk/comm/NSDeviceOutputStream", "tmo", "I");
+  dkcommIDs.outTmoDone = lookupField(jenv, "org/eclipse/soda/dk/comm/NSDeviceOutputStream", "tmoDone", "Z");
+  dkcommIDs.outSendFd = lookupField(jenv, "org/eclipse/soda/dk/comm/NSDeviceOutputStream", "sendFd", "I");
+  dkcommIDs.dataStopThreadFlag = lookupField(jenv, "org/eclipse/soda/dk/comm/SerialDataEventThread", "stopThreadFlag", "I");
+  dkcommIDs.statusStopThreadFlag = lookupField(jenv, "org/eclipse/soda/dk/comm/SerialStatusEventThread", "stopThreadFlag", "I");
+  dkcommIDs.errorStopThreadFlag = lookupField(jenv, "org/eclipse/soda/dk/comm/ParallelErrorEventThread", "stopThreadFlag", "I");
+  registerMethods(jenv, "org/eclipse/soda/dk/comm/NSDeviceInputStream", inputStreamMethods, NOOF_ELEMS(inputStreamMethods));
+  registerMethods(jenv, "org/eclipse/soda/dk/comm/NSDeviceOutputStream", outputStreamMethods, NOOF_ELEMS(outputStreamMethods));
+  return JNI_VERSION_1_2;
+}	/* JNI_OnLoad() */
+#ifdef __linux__
+/* Return the slot at index, or NULL if its chunk is not allocated. */
+static dkcommWakeup *wakeupAt(unsigned int index) {
+  dkcommWakeup	*chunk;
+  if (index >= WAKEUP_CHUNKS * WAKEUP_CHUNK)
+	return NULL;
+  chunk = wakeupChunks[index >> WAKEUP_CHUNK_SHIFT];
+  if (chunk == NULL)
+	return NULL;
+  return &chunk[index & (WAKEUP_CHUNK - 1)];
+}	/* wakeupAt() */
+/* Take a reference to the slot of handle; NULL if stale or closed. */
+static dkcommWakeup *wakeupAcquire(jint handle) {
+  dkcommWakeup	*w;
+  unsigned int	v;
+  if (handle <= 0 || (w = wakeupAt((unsigned int)handle >> WAKEUP_GEN_SHIFT)) == NULL)
+	return NULL;
+  for (;;) {
+	v = w->state;
+	if ((v >> WAKEUP_GEN_SHIFT) != ((unsigned int)handle & WAKEUP_GEN_MASK) || (v & WAKEUP_CLOSED))
+		return NULL;
+	if (__sync_bool_compare_and_swap(&w->state, v, v + 1))
+		return w;
+  }
+}	/* wakeupAcquire() */
+/*
+ * Drop a reference; the last one to a closed slot closes its descriptors
+ * and frees it under the next generation.
+ */
+static void wakeupRelease(dkcommWakeup *w) {
+  unsigned int	v;
+  unsigned int	gen;
+  v = __sync_sub_and_fetch(&w->state, 1);
+  if (!(v & WAKEUP_CLOSED) || (v & WAKEUP_REFS) != 0)
+	return;
+  // Nobody can take a reference any more: the descriptors are ours.
+  if (w->wfd != w->rfd)
+	(void)close(w->wfd);
+  (void)close(w->rfd);
+  w->rfd = w->wfd = -1;
+  gen = ((v >> WAKEUP_GEN_SHIFT) + 1) & WAKEUP_GEN_MASK;
+  if (gen == 0)
+	gen = 1;
+  (void)pthread_mutex_lock(&wakeupLock);
+  w->state = (gen << WAKEUP_GEN_SHIFT) | WAKEUP_CLOSED;
+  w->next = wakeupFree;
+  wakeupFree = w->index;
+  (void)pthread_mutex_unlock(&wakeupLock);
+}	/* wakeupRelease() */
+jint dkcommWakeupCreate(int fd) {
+  dkcommWakeup	*w = NULL;
+  dkcommWakeup	*chunk;
+  unsigned int	gen;
+  int		pfd[2];
+  int		i;
+  if (fd < 0)
+	return 0;
+  pfd[0] = eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC);
+  if (pfd[0] != -1) {
+	pfd[1] = pfd[0];
+  } else {
+	// No eventfd in this kernel: fall back to a self-pipe.
+	if (pipe(pfd) == -1)
+		return 0;
+	(void)fcntl(pfd[0], F_SETFL, O_NONBLOCK);
+	(void)fcntl(pfd[1], F_SETFL, O_NONBLOCK);
+	(void)fcntl(pfd[0], F_SETFD, FD_CLOEXEC);
+	(void)fcntl(pfd[1], F_SETFD, FD_CLOEXEC);
+  }
+  (void)pthread_mutex_lock(&wakeupLock);
+  if (wakeupFree != -1) {
+	w = wakeupAt((unsigned int)wakeupFree);
+	wakeupFree = w->next;
+  } else if (wakeupSlots < WAKEUP_CHUNKS * WAKEUP_CHUNK) {
+	if ((wakeupSlots & (WAKEUP_CHUNK - 1)) == 0) {
+		chunk = (dkcommWakeup *)calloc(WAKEUP_CHUNK, sizeof(dkcommWakeup));
+		if (chunk != NULL) {
+			for (i = 0; i < WAKEUP_CHUNK; i++) {
+				chunk[i].state = (1U << WAKEUP_GEN_SHIFT) | WAKEUP_CLOSED;
+				chunk[i].rfd = chunk[i].wfd = -1;
+				chunk[i].index = wakeupSlots + i;
+				chunk[i].next = -1;
+			}
+			// Publish the chunk only once it is filled in.
+			__sync_synchronize();
+			wakeupChunks[wakeupSlots >> WAKEUP_CHUNK_SHIFT] = chunk;
+		}
+	}
+	w = wakeupAt((unsigned int)wakeupSlots);
+	if (w != NULL)
+		wakeupSlots++;
+  }
+  if (w == NULL) {
+	(void)pthread_mutex_unlock(&wakeupLock);
+	if (pfd[1] != pfd[0])
+		(void)close(pfd[1]);
+	(void)close(pfd[0]);
+	return 0;
+  }
+  w->rfd = pfd[0];
+  w->wfd = pfd[1];
+  w->next = -1;
+  gen = w->state >> WAKEUP_GEN_SHIFT;
+  // The descriptors must be in place before the slot opens.
+  __sync_synchronize();
+  w->state = gen << WAKEUP_GEN_SHIFT;
+  (void)pthread_mutex_unlock(&wakeupLock);
+  return (jint)(((unsigned int)w->index << WAKEUP_GEN_SHIFT) | gen);
+}	/* dkcommWakeupCreate() */
+void dkcommWakeupDestroy(jint handle) {
+  dkcommWakeup	*w;
+  unsigned int	v;
+  uint64_t	one = 1;
+  w = wakeupAcquire(handle);
+  if (w == NULL)
+	return;
+  do {
+	v = w->state;
+  } while (!__sync_bool_compare_and_swap(&w->state, v, v | WAKEUP_CLOSED));
+  // Release anyone still waiting; they keep the descriptors open.
+  (void)write(w->wfd, &one, sizeof(one));
+  wakeupRelease(w);
+}	/* dkcommWakeupDestroy() */
+void dkcommWakeupSignal(jint handle) {
+  dkcommWakeup	*w;
+  uint64_t	one = 1;
+  w = wakeupAcquire(handle);
+  if (w == NULL)
+	return;
+  // A full pipe or counter is already signalled.
+  (void)write(w->wfd, &one, sizeof(one));
+  wakeupRelease(w);
+}	/* dkcommWakeupSignal() */
+int dkcommWakeupPoll(jint handle, int fd, short events, int timeout) {
+  struct pollfd	pfd[2];
+  dkcommWakeup	*w = NULL;
+  int		rc;
+  int		err;
+  if (handle != 0) {
+	w = wakeupAcquire(handle);
+	if (w == NULL) {
+		errno = EBADF;
+		return -1;
+	}
+  }
+  pfd[0].fd = events ? fd : -1;
+  pfd[0].events = events;
+  pfd[0].revents = 0;
+  pfd[1].fd = w != NULL ? w->rfd : -1;
+  pfd[1].events = POLLIN;
+  pfd[1].revents = 0;
+  rc = poll(pfd, 2, timeout);
+  err = errno;
+  if (w != NULL)
+	wakeupRelease(w);
+  if (rc <= 0) {
+	errno = err;
+	return rc;
+  }
+  if (pfd[1].revents) {
+	errno = EBADF;
+	return -1;
+  }
+  return pfd[0].revents;
+}	/* dkcommWakeupPoll() */
+jint dkcommWakeupOf(JNIEnv *jenv, jobject jobj) {
+  jclass	jc;
+  jfieldID	jf;
+  jc = (*jenv)->GetObjectClass(jenv, jobj);
+  if (jc == NULL)
+	return 0;
+  jf = (*jenv)->GetFieldID(jenv, jc, "wakeup", "I");
+  (*jenv)->DeleteLocalRef(jenv, jc);
+  if (jf == NULL) {
+	(*jenv)->ExceptionClear(jenv);
+	return 0;
+  }
+  return (*jenv)->GetIntField(jenv, jobj, jf);
+}	/* dkcommWakeupOf() */
+void dkcommWakeupKeep(JNIEnv *jenv, jobject jobj, jint handle) {
+  jclass	jc;
+  jfieldID	jf;
+  jc = (*jenv)->GetObjectClass(jenv, jobj);
+  if (jc == NULL)
+	return;
+  jf = (*jenv)->GetFieldID(jenv, jc, "wakeup", "I");
+  (*jenv)->DeleteLocalRef(jenv, jc);
+  if (jf == NULL) {
+	(*jenv)->ExceptionClear(jenv);
+	return;
+  }
+  (*jenv)->SetIntField(jenv, jobj, jf, handle);
+}	/* dkcommWakeupKeep() */
+#endif /* __linux__ */
@@ -0,0 +1,75 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#ifndef _Included_CommNatives
+#define _Included_CommNatives
+#include <jni.h>
+/*
+ * Class references and field IDs used on the per-call paths.  JNI_OnLoad
+ * resolves them once when the library is loaded; the accessors below fill
+ * in anything still missing (for example when the library is linked
+ * statically and JNI_OnLoad is never called).
+ */
+typedef struct {
+  jclass	ioException;		/* java/io/IOException */
+  jclass	portInUseException;	/* javax/comm/PortInUseException */
+  jclass	noSuchPortException;	/* javax/comm/NoSuchPortException */
+  jclass	serialPortException;	/* javax/comm/SerialPortException */
+  jfieldID	inFd;			/* NSDeviceInputStream.fd */
+  jfieldID	inTmo;			/* NSDeviceInputStream.tmo */
+  jfieldID	inTmoDone;		/* NSDeviceInputStream.tmoDone */
+  jfieldID	inThc;			/* NSDeviceInputStream.thc */
+  jfieldID	inWakeup;		/* NSDeviceInputStream.wakeup */
+  jfieldID	inFrameCount;		/* NSDeviceInputStream.frameCount */
+  jfieldID	outFd;			/* NSDeviceOutputStream.fd */
+  jfieldID	outTmo;			/* NSDeviceOutputStream.tmo */
+  jfieldID	outTmoDone;		/* NSDeviceOutputStream.tmoDone */
+  jfieldID	outSendFd;		/* NSDeviceOutputStream.sendFd */
+  jfieldID	dataStopThreadFlag;	/* SerialDataEventThread.stopThreadFlag */
+  jfieldID	statusStopThreadFlag;	/* SerialStatusEventThread.stopThreadFlag */
+  jfieldID	errorStopThreadFlag;	/* ParallelErrorEventThread.stopThreadFlag */
+} DKCommIDs;
+extern DKCommIDs dkcommIDs;
+/* Return the cached field ID, resolving it against jobj's class first if needed. */
+extern jfieldID dkcommFieldID(JNIEnv *jenv, jobject jobj, jfieldID *cache, const char *name, const char *sig);
+/* Return the cached global class reference, resolving it by name first if needed. */
+extern jclass dkcommClass(JNIEnv *jenv, jclass *cache, const char *name);
+#ifdef __linux__
+/*
+ * Per-port wakeup descriptors (an eventfd, or a pipe where eventfd is not
+ * available), named by a handle made when the port is opened and kept in
+ * the wakeup field of the port and of the streams and monitors
+ * that wait on it; 0 is no handle.  Every native wait on a port also polls
+ * its wakeup descriptor, so closing the port releases all of them at once.
+ * A signalled port stays signalled until the descriptor is destroyed.
+ * Destroying signals it as well, and the descriptor stays open until the
+ * last wait on it has returned; a wait that starts after that fails at
+ * once, as if signalled.
+ */
+/* Create the wakeup descriptor for the port fd; returns its handle, or 0 if it cannot be had. */
+extern jint dkcommWakeupCreate(int fd);
+/* Close the wakeup descriptor of handle once nobody waits on it. */
+extern void dkcommWakeupDestroy(jint handle);
+/* Signal the wakeup descriptor of handle. */
+extern void dkcommWakeupSignal(jint handle);
+/*
+ * Poll the port fd for events (not at all if events is 0) and the wakeup
+ * descriptor of handle for up to timeout milliseconds (-1 waits forever).
+ * Returns the port's revents when it is ready, 0 on timeout and -1 on
+ * error; a signalled or destroyed wakeup returns -1 with errno set to EBADF.
+ * With no handle only the port is polled.
+ */
+extern int dkcommWakeupPoll(jint handle, int fd, short events, int timeout);
+/* Get the handle kept in the wakeup field of jobj; 0 if it has none. */
+extern jint dkcommWakeupOf(JNIEnv *jenv, jobject jobj);
+/* Keep handle in the wakeup field of jobj. */
+extern void dkcommWakeupKeep(JNIEnv *jenv, jobject jobj, jint handle);
+#endif /* __linux__ */
+#endif /* _Included_CommNatives */
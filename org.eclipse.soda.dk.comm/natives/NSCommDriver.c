@@ -17,6 +17,7 @@ extern  w32CommDriver_discoverDevicesNC(jenv, jobj);
 extern  w32CommDriver_discoverDevicesNC(jenv, jobj);
 #else
 #include <org_eclipse_soda_dk_comm_NSCommDriver.h>
+extern int cygCommDriver_watchDevicesNC(JNIEnv *, jobject);
 #endif
 #endif
 /*
@@ -37,3 +38,20 @@ JNIEXPORT void JNICALL Java_org_eclipse_soda_dk_comm_NSCommDriver_discoverDevice
 #endif
     return;
 }	// Java_org_eclipse_soda_dk_comm_NSCommDriver_discoverDevicesNC
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSCommDriver
+ * Method:    watchDevicesNC
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSCommDriver_watchDevicesNC
+  (JNIEnv *jenv, jobject jobj) {
+#ifdef WIN32
+    return -2;
+#else
+#if _WIN32_WCE>=400
+    return -2;
+#else
+    return cygCommDriver_watchDevicesNC(jenv, jobj);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_NSCommDriver_watchDevicesNC */
@@ -15,6 +15,7 @@
 #include <windows.h>
 #include "org_eclipse_soda_dk_comm_NSSerialPort.h"
 #include "NSCommLOG.h"
+#include "CommNatives.h"
 /*------------------------------------------------------------------
  * 
  *------------------------------------------------------------------*/
@@ -50,13 +51,13 @@ void iveSerThrow( JNIEnv *env, char *message, int rc ) {
 	LOG(("iveSerThrow(%s)",message));
 	switch (rc){
 		case J9_ERROR_ACCESS_DENIED:
-			clazz = (*env)->FindClass(env, "javax/comm/PortInUseException");
+			clazz = dkcommClass(env, &dkcommIDs.portInUseException, "javax/comm/PortInUseException");
 			break;
 		case J9_ERROR_FILE_NOT_FOUND:
-			clazz = (*env)->FindClass(env, "javax/comm/NoSuchPortException");		
+			clazz = dkcommClass(env, &dkcommIDs.noSuchPortException, "javax/comm/NoSuchPortException");
 			break;
 		default:
-			clazz = (*env)->FindClass(env, "javax/comm/SerialPortException");			
+			clazz = dkcommClass(env, &dkcommIDs.serialPortException, "javax/comm/SerialPortException");
 	}
 	if (!clazz) {
 		LOG(("couldn't find exception class"));
@@ -21,6 +21,8 @@ extern int w32DeviceInputStream_readDeviceNC(JNIEnv *, jobject, jbyteArray, jint
 extern int w32DeviceInputStream_getReadCountNC(JNIEnv *, jobject);
 #else
 #include <org_eclipse_soda_dk_comm_NSDeviceInputStream.h>
+extern int cygDeviceInputStream_readFrameNC(JNIEnv *, jobject, jbyteArray, jint, jint, jint);
+extern int cygDeviceInputStream_readDirectNC(JNIEnv *, jobject, jobject, jint, jint);
 #endif
 #endif
 /*
@@ -74,3 +76,37 @@ JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_getRead
 #endif
 #endif
 }
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceInputStream
+ * Method:    readFrameNC
+ * Signature: ([BIII)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readFrameNC
+  (JNIEnv *jenv, jobject jobj, jbyteArray jba, jint off, jint len, jint delim) {
+#ifdef WIN32
+    return w32DeviceInputStream_readDeviceNC(jenv, jobj, jba, off, len);
+#else
+#if _WIN32_WCE>=400
+    return w32DeviceInputStream_readDeviceNC(jenv, jobj, jba, off, len);
+#else
+    return cygDeviceInputStream_readFrameNC(jenv, jobj, jba, off, len, delim);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readFrameNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceInputStream
+ * Method:    readDirectNC
+ * Signature: (Ljava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readDirectNC
+  (JNIEnv *jenv, jobject jobj, jobject jbb, jint pos, jint len) {
+#ifdef WIN32
+    return -2;
+#else
+#if _WIN32_WCE>=400
+    return -2;
+#else
+    return cygDeviceInputStream_readDirectNC(jenv, jobj, jbb, pos, len);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readDirectNC */
@@ -18,6 +18,8 @@ extern int w32DeviceOutputStream_writeDeviceNC(JNIEnv *, jobject, jbyteArray, ji
 extern int w32DeviceOutputStream_writeDeviceNC(JNIEnv *, jobject, jbyteArray, jint, jint);
 #else
 #include <org_eclipse_soda_dk_comm_NSDeviceOutputStream.h>
+extern int cygDeviceOutputStream_writeDirectNC(JNIEnv *, jobject, jobject, jint, jint);
+extern int cygDeviceOutputStream_closeSendNC(JNIEnv *, jobject, jint);
 #endif
 #endif
 /*
@@ -37,3 +39,37 @@ JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_writeD
 #endif
 #endif
 }	/*/ Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_writeDeviceNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceOutputStream
+ * Method:    writeDirectNC
+ * Signature: (Ljava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_writeDirectNC
+  (JNIEnv *jenv, jobject jobj, jobject jbb, jint pos, jint len) {
+#ifdef WIN32
+    return -2;
+#else
+#if _WIN32_WCE>=400
+    return -2;
+#else
+    return cygDeviceOutputStream_writeDirectNC(jenv, jobj, jbb, pos, len);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_writeDirectNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceOutputStream
+ * Method:    closeSendNC
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_closeSendNC
+  (JNIEnv *jenv, jobject jobj, jint sfd) {
+#ifdef WIN32
+    return -2;
+#else
+#if _WIN32_WCE>=400
+    return -2;
+#else
+    return cygDeviceOutputStream_closeSendNC(jenv, jobj, sfd);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_closeSendNC */
@@ -118,3 +118,17 @@ JNIEXPORT jboolean JNICALL Java_org_eclipse_soda_dk_comm_NSParallelPort_isPrinte
     return cygParallelPort_isPrinterErrorNC(jenv, jobj, jfd);
 #endif
 }	/* Java_org_eclipse_soda_dk_comm_NSParallelPort_isPrinterErrorNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSParallelPort
+ * Method:    wakeupNC
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSParallelPort_wakeupNC
+  (JNIEnv *jenv, jobject jobj, jint jfd)
+{
+#ifdef WIN32
+	return -2;
+#else
+    return cygParallelPort_wakeupNC(jenv, jobj, jfd);
+#endif
+}	/* Java_org_eclipse_soda_dk_comm_NSParallelPort_wakeupNC */
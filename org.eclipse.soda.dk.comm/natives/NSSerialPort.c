@@ -17,6 +17,11 @@
 #include "w32SerialPort.h"
 #else
 #include <org_eclipse_soda_dk_comm_NSSerialPort.h>
+extern int cygSerialPort_getErrorCountsNC(JNIEnv *, jobject, jint, jintArray);
+extern int cygSerialPort_setReceiveModeNC(JNIEnv *, jobject, jint, jint, jint);
+extern int cygSerialPort_drainNC(JNIEnv *, jobject, jint);
+extern int cygSerialPort_getOutputQueueNC(JNIEnv *, jobject, jint);
+extern int cygSerialPort_wakeupNC(JNIEnv *, jobject, jint);
 #endif
 #endif
 /*
@@ -342,3 +347,88 @@ JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_setSerialPortP
 #endif
 #endif
 } /* Java_org_eclipse_soda_dk_comm_NSSerialPort_setSerialPortParamsNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    getErrorCountsNC
+ * Signature: (I[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_getErrorCountsNC
+  (JNIEnv *jenv, jobject jobj, jint jfd, jintArray jcounts) {
+#ifdef WIN32
+    return -1;
+#else
+#if _WIN32_WCE>=400
+    return -1;
+#else
+    return cygSerialPort_getErrorCountsNC(jenv, jobj, jfd, jcounts);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_NSSerialPort_getErrorCountsNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    setReceiveModeNC
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_setReceiveModeNC
+  (JNIEnv *jenv, jobject jobj, jint jfd, jint vmin, jint vtime) {
+#ifdef WIN32
+    return -1;
+#else
+#if _WIN32_WCE>=400
+    return -1;
+#else
+    return cygSerialPort_setReceiveModeNC(jenv, jobj, jfd, vmin, vtime);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_NSSerialPort_setReceiveModeNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    drainNC
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_drainNC
+  (JNIEnv *jenv, jobject jobj, jint jfd) {
+#ifdef WIN32
+    return -1;
+#else
+#if _WIN32_WCE>=400
+    return -1;
+#else
+    return cygSerialPort_drainNC(jenv, jobj, jfd);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_NSSerialPort_drainNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    getOutputQueueNC
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_getOutputQueueNC
+  (JNIEnv *jenv, jobject jobj, jint jfd) {
+#ifdef WIN32
+    return -1;
+#else
+#if _WIN32_WCE>=400
+    return -1;
+#else
+    return cygSerialPort_getOutputQueueNC(jenv, jobj, jfd);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_NSSerialPort_getOutputQueueNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    wakeupNC
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_wakeupNC
+  (JNIEnv *jenv, jobject jobj, jint jfd) {
+#ifdef WIN32
+    return -2;
+#else
+#if _WIN32_WCE>=400
+    return -2;
+#else
+    return cygSerialPort_wakeupNC(jenv, jobj, jfd);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_NSSerialPort_wakeupNC */
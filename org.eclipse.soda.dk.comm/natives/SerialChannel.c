@@ -0,0 +1,41 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#ifdef WIN32
+#include "org_eclipse_soda_dk_comm_SerialChannel.h"
+#else
+#if _WIN32_WCE>=400
+#include "org_eclipse_soda_dk_comm_SerialChannel.h"
+#else
+#include <org_eclipse_soda_dk_comm_SerialChannel.h>
+extern int cygSerialChannel_writevNC(JNIEnv *, jclass, jint, jobjectArray, jint, jint, jintArray, jintArray);
+#endif
+#endif
+/*
+ * Gathering writes are only native on Linux.  Elsewhere writevNC reports
+ * -2 and the Java side writes the buffers one after another.
+ */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialChannel
+ * Method:    writevNC
+ * Signature: (I[Ljava/nio/ByteBuffer;II[I[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialChannel_writevNC
+  (JNIEnv *jenv, jclass jcls, jint fd, jobjectArray jsrcs, jint offset, jint count, jintArray jpos, jintArray jlen) {
+#ifdef WIN32
+    return -2;
+#else
+#if _WIN32_WCE>=400
+    return -2;
+#else
+    return cygSerialChannel_writevNC(jenv, jcls, fd, jsrcs, offset, count, jpos, jlen);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_SerialChannel_writevNC */
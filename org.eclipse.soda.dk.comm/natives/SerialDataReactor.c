@@ -0,0 +1,132 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#ifdef WIN32
+#include "org_eclipse_soda_dk_comm_SerialDataReactor.h"
+#else
+#if _WIN32_WCE>=400
+#include "org_eclipse_soda_dk_comm_SerialDataReactor.h"
+#else
+#include <org_eclipse_soda_dk_comm_SerialDataReactor.h>
+extern void cygSerialDataReactor_closeNC(JNIEnv *, jclass, jint);
+extern int cygSerialDataReactor_createNC(JNIEnv *, jclass);
+extern int cygSerialDataReactor_addNC(JNIEnv *, jobject, jint, jint, jint);
+extern void cygSerialDataReactor_monitorNC(JNIEnv *, jobject, jint);
+extern int cygSerialDataReactor_removeNC(JNIEnv *, jobject, jint, jint);
+extern int cygSerialDataReactor_rearmNC(JNIEnv *, jobject, jint, jint, jint);
+#endif
+#endif
+/*
+ * The shared reactor is only available on Linux.  Elsewhere createNC
+ * reports -1 and the Java side falls back to one SerialDataEventThread
+ * per port.
+ */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    closeNC
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_closeNC
+  (JNIEnv *jenv, jclass jcls, jint rd) {
+#ifdef WIN32
+    return;
+#else
+#if _WIN32_WCE>=400
+    return;
+#else
+    cygSerialDataReactor_closeNC(jenv, jcls, rd);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_SerialDataReactor_closeNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    createNC
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_createNC
+  (JNIEnv *jenv, jclass jcls) {
+#ifdef WIN32
+    return -1;
+#else
+#if _WIN32_WCE>=400
+    return -1;
+#else
+    return cygSerialDataReactor_createNC(jenv, jcls);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_SerialDataReactor_createNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    addNC
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_addNC
+  (JNIEnv *jenv, jobject jobj, jint rd, jint fd, jint slot) {
+#ifdef WIN32
+    return -1;
+#else
+#if _WIN32_WCE>=400
+    return -1;
+#else
+    return cygSerialDataReactor_addNC(jenv, jobj, rd, fd, slot);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_SerialDataReactor_addNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    monitorNC
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_monitorNC
+  (JNIEnv *jenv, jobject jobj, jint rd) {
+#ifdef WIN32
+    return;
+#else
+#if _WIN32_WCE>=400
+    return;
+#else
+    cygSerialDataReactor_monitorNC(jenv, jobj, rd);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_SerialDataReactor_monitorNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    removeNC
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_removeNC
+  (JNIEnv *jenv, jobject jobj, jint rd, jint fd) {
+#ifdef WIN32
+    return -1;
+#else
+#if _WIN32_WCE>=400
+    return -1;
+#else
+    return cygSerialDataReactor_removeNC(jenv, jobj, rd, fd);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_SerialDataReactor_removeNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    rearmNC
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_rearmNC
+  (JNIEnv *jenv, jobject jobj, jint rd, jint fd, jint slot) {
+#ifdef WIN32
+    return -1;
+#else
+#if _WIN32_WCE>=400
+    return -1;
+#else
+    return cygSerialDataReactor_rearmNC(jenv, jobj, rd, fd, slot);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_SerialDataReactor_rearmNC */
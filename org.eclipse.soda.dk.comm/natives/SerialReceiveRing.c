@@ -0,0 +1,41 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#ifdef WIN32
+#include "org_eclipse_soda_dk_comm_SerialReceiveRing.h"
+#else
+#if _WIN32_WCE>=400
+#include "org_eclipse_soda_dk_comm_SerialReceiveRing.h"
+#else
+#include <org_eclipse_soda_dk_comm_SerialReceiveRing.h>
+extern int cygSerialReceiveRing_pumpNC(JNIEnv *, jobject, jint, jobject, jint);
+#endif
+#endif
+/*
+ * The receive ring pump is only native on Linux.  Elsewhere pumpNC returns
+ * -2 at once and the input stream keeps reading the device directly.
+ */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialReceiveRing
+ * Method:    pumpNC
+ * Signature: (ILjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialReceiveRing_pumpNC
+  (JNIEnv *jenv, jobject jobj, jint fd, jobject jring, jint capacity) {
+#ifdef WIN32
+    return -2;
+#else
+#if _WIN32_WCE>=400
+    return -2;
+#else
+    return cygSerialReceiveRing_pumpNC(jenv, jobj, fd, jring, capacity);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_SerialReceiveRing_pumpNC */
@@ -17,6 +17,7 @@ extern void w32SerialStatusEventThread_monitorSerialStatusNC(JNIEnv *, jobject,
 extern void w32SerialStatusEventThread_monitorSerialStatusNC(JNIEnv *, jobject, jint);
 #else
 #include <org_eclipse_soda_dk_comm_SerialStatusEventThread.h>
+extern void cygSerialStatusEventThread_wakeupNC(JNIEnv *, jobject, jlong);
 #endif
 #endif
 /*
@@ -36,3 +37,20 @@ JNIEXPORT void JNICALL Java_org_eclipse_soda_dk_comm_SerialStatusEventThread_mon
 #endif
 #endif
 } /* Java_org_eclipse_soda_dk_comm_SerialStatusEventThread_monitorSerialStatusNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialStatusEventThread
+ * Method:    wakeupNC
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_eclipse_soda_dk_comm_SerialStatusEventThread_wakeupNC
+(JNIEnv *jenv, jobject jobj, jlong thread) {
+#ifdef WIN32
+	return;
+#else
+#if _WIN32_WCE>=400
+	return;
+#else
+    cygSerialStatusEventThread_wakeupNC(jenv, jobj, thread);
+#endif
+#endif
+} /* Java_org_eclipse_soda_dk_comm_SerialStatusEventThread_wakeupNC */
@@ -8,6 +8,9 @@
  * Contributors:                                                         *
  *     IBM - initial API and implementation                              *
  ************************************************************************/
+#ifdef __linux__
+#define _GNU_SOURCE	/* strverscmp() */
+#endif	/* __linux__ */
 #include <stdio.h>
 #include <org_eclipse_soda_dk_comm_NSCommDriver.h>
 #include <sys/stat.h>
@@ -21,6 +24,17 @@
 #include <sys/sem.h> 
 #endif 
 #include <stdlib.h>
+#ifdef __linux__
+#include <ctype.h>
+#include <dirent.h>
+#include <fcntl.h>
+#include <fnmatch.h>
+#include <glob.h>
+#include <limits.h>
+#include <poll.h>
+#include <string.h>
+#include <sys/inotify.h>
+#endif	/* __linux__ */
 #define assert(s) if (!s) {printf("\n\n%d asserted!\n\n", __LINE__); return;}
 #define CREAT_PERMS	(0666)
 // for unix only
@@ -32,15 +46,283 @@ typedef struct port_s {
 	char		*deviceName;
 	int		semKey;
 } port_t;
+/*
+ * Add one port to the driver's device list, with a semaphore for the
+ * device.  If the semaphore cannot be had, the port is not locked later on.
+ */
+static void add_port(JNIEnv *jenv, jobject jobj, jmethodID jm,
+		     const char *portName, int portType, const char *deviceName, int semKey)
+{
+  jstring	pName;
+  jstring	dName;
+  jthrowable	jt;
+  int		semID;
+  pName = (*jenv)->NewStringUTF(jenv, portName);
+  if (!pName)
+	return;
+  dName = (*jenv)->NewStringUTF(jenv, deviceName);
+  if (!dName)
+	return;
+  /* Obtain/create a semaphore for the device in consideration.
+     If it fails, don't lock/unlock it later on. */
+#ifdef _POSIX_SEMAPHORES
+  semID = sem_create(semKey, 1);
+#else
+  semID = semget((key_t)semKey, 1, IPC_CREAT | CREAT_PERMS);
+#endif
+#ifdef DEBUG
+  printf( "%s ( %s ) semID %d\n", portName, deviceName, semID );
+  fflush( stdout );
+#endif
+  (*jenv)->CallVoidMethod(jenv, jobj, jm, pName, portType, dName, semID);
+  jt = (*jenv)->ExceptionOccurred(jenv);
+  if (jt) {
+	(*jenv)->ExceptionDescribe(jenv);
+	(*jenv)->ExceptionClear(jenv);
+  }
+  (*jenv)->DeleteLocalRef(jenv, pName);
+  (*jenv)->DeleteLocalRef(jenv, dName);
+}	// add_port()
+#ifdef __linux__
+/* Where the kernel lists every tty it knows about. */
+#define SYSFS_TTY		"/sys/class/tty"
+/* Most ports one discovery pass lists. */
+#define MAX_DISCOVERED		256
+/* Most directories the watch follows besides /dev. */
+#define MAX_WATCHED		16
+/* Semaphore keys of ports outside the fixed table: this base plus a hash
+   of the device name, so every process picks the same key for a device. */
+#define DYNAMIC_SEM_BASE	0x10000000
+/*
+ * One discovery pass.  Devices are remembered by device number, so a port
+ * reached through several names (a by-id link and its ttyUSB node, say)
+ * is listed only once, under the first name found.
+ */
+typedef struct discovery_s {
+	JNIEnv		*jenv;
+	jobject		jobj;
+	jmethodID	jm;
+	port_t		*table;
+	int		tableSize;
+	dev_t		added[MAX_DISCOVERED];
+	int		count;
+} discovery_t;
+/*
+ * Return the semaphore key for the device: the fixed table's key where it
+ * has one, so older releases still share the lock, else a hash of the name.
+ */
+static int sem_key_of(discovery_t *dp, const char *deviceName)
+{
+  unsigned int	h = 2166136261u;
+  const char	*cp;
+  int		i;
+  for (i = 0; i < dp->tableSize; i++) {
+	if (strcmp(dp->table[i].deviceName, deviceName) == 0)
+		return dp->table[i].semKey;
+  }
+  for (cp = deviceName; *cp; cp++) {
+	h ^= (unsigned char)*cp;
+	h *= 16777619u;
+  }
+  return (int)(DYNAMIC_SEM_BASE | (h & 0x0fffffff));
+}	// sem_key_of()
+/*
+ * Add the serial device at path unless it is missing, not a character
+ * device or already listed.
+ */
+static void add_serial(discovery_t *dp, const char *portName, const char *path)
+{
+  struct stat	sbuf;
+  int		i;
+  if (dp->count >= MAX_DISCOVERED)
+	return;
+  if (stat(path, &sbuf) == -1 || !S_ISCHR(sbuf.st_mode))
+	return;
+  for (i = 0; i < dp->count; i++) {
+	if (dp->added[i] == sbuf.st_rdev)
+		return;
+  }
+  dp->added[dp->count++] = sbuf.st_rdev;
+  add_port(dp->jenv, dp->jobj, dp->jm, portName, 1, path, sem_key_of(dp, path));
+}	// add_serial()
+/*
+ * Answer whether the sysfs tty entry is a serial port worth listing, from
+ * its attributes alone; the device itself is never opened.  Virtual
+ * terminals, ptys and the console have no device behind them (rfcomm ttys
+ * only have one while connected).  serial_core ports report their UART
+ * type, and an 8250 slot with no UART behind it reports PORT_UNKNOWN (0).
+ */
+static int is_serial_port(const char *name)
+{
+  char		path[PATH_MAX];
+  char		type[16];
+  int		fd;
+  int		n;
+  (void)snprintf(path, sizeof(path), SYSFS_TTY "/%s/device", name);
+  if (access(path, F_OK) == -1)
+	return strncmp(name, "rfcomm", 6) == 0;
+  (void)snprintf(path, sizeof(path), SYSFS_TTY "/%s/type", name);
+  if ((fd = open(path, O_RDONLY)) == -1)
+	return 1;	/* not serial_core: usb-serial, cdc-acm, ... */
+  n = read(fd, type, sizeof(type) - 1);
+  (void)close(fd);
+  if (n <= 0)
+	return 1;
+  type[n] = 0;
+  return atoi(type) != 0;
+}	// is_serial_port()
+/*
+ * Name the port for the tty: ttyS<n> keeps its traditional name COM<n+1>;
+ * every other port goes by its device name (ttyUSB0, ttyACM0, rfcomm0, ...).
+ */
+static void port_name_of(const char *name, char *portName, size_t size)
+{
+  if (strncmp(name, "ttyS", 4) == 0 && isdigit((unsigned char)name[4]))
+	(void)snprintf(portName, size, "COM%d", atoi(name + 4) + 1);
+  else
+	(void)snprintf(portName, size, "%s", name);
+}	// port_name_of()
+static int compare_names(const void *a, const void *b)
+{
+  return strverscmp(*(const char * const *)a, *(const char * const *)b);
+}	// compare_names()
+/*
+ * List the serial ports known to the kernel, in natural order, under the
+ * names port_name_of() gives them.  Returns -1 if sysfs is not available.
+ */
+static int discover_sysfs(discovery_t *dp)
+{
+  DIR		*dir;
+  struct dirent	*de;
+  char		*names[MAX_DISCOVERED];
+  char		portName[64];
+  char		path[PATH_MAX];
+  int		count = 0;
+  int		i;
+  if ((dir = opendir(SYSFS_TTY)) == NULL)
+	return -1;
+  while ((de = readdir(dir)) != NULL && count < MAX_DISCOVERED) {
+	if (de->d_name[0] == '.' || !is_serial_port(de->d_name))
+		continue;
+	if ((names[count] = strdup(de->d_name)) != NULL)
+		count++;
+  }
+  (void)closedir(dir);
+  qsort(names, count, sizeof(names[0]), compare_names);
+  for (i = 0; i < count; i++) {
+	port_name_of(names[i], portName, sizeof(portName));
+	(void)snprintf(path, sizeof(path), "/dev/%s", names[i]);
+	add_serial(dp, portName, path);
+	free(names[i]);
+  }
+  return 0;
+}	// discover_sysfs()
+/*
+ * Get the comma separated glob patterns of the driver's devicePatterns
+ * field, or NULL if there are none.  Release them with release_patterns().
+ */
+static const char *patterns_of(discovery_t *dp, jstring *jpatterns)
+{
+  jclass	jc;
+  jfieldID	jf;
+  jc = (*dp->jenv)->GetObjectClass(dp->jenv, dp->jobj);
+  jf = (*dp->jenv)->GetFieldID(dp->jenv, jc, "devicePatterns", "Ljava/lang/String;");
+  if (jf == NULL) {
+	(*dp->jenv)->ExceptionClear(dp->jenv);
+	return NULL;
+  }
+  *jpatterns = (jstring)(*dp->jenv)->GetObjectField(dp->jenv, dp->jobj, jf);
+  if (*jpatterns == NULL)
+	return NULL;
+  return (*dp->jenv)->GetStringUTFChars(dp->jenv, *jpatterns, 0);
+}	// patterns_of()
+static void release_patterns(discovery_t *dp, jstring jpatterns, const char *patterns)
+{
+  if (patterns != NULL)
+	(*dp->jenv)->ReleaseStringUTFChars(dp->jenv, jpatterns, patterns);
+}	// release_patterns()
+/*
+ * Copy the next pattern of the list at *cpp, without surrounding blanks,
+ * and step past it.  Empty and overlong patterns are skipped.  Returns 0
+ * at the end of the list.
+ */
+static int next_pattern(const char **cpp, char *pattern, size_t size)
+{
+  const char	*cp;
+  const char	*end;
+  int		len;
+  for (cp = *cpp; *cp; cp = *end ? end + 1 : end) {
+	end = strchr(cp, ',');
+	if (end == NULL)
+		end = cp + strlen(cp);
+	while (cp < end && isspace((unsigned char)*cp))
+		cp++;
+	len = (int)(end - cp);
+	while (len > 0 && isspace((unsigned char)cp[len - 1]))
+		len--;
+	if (len == 0 || len >= (int)size)
+		continue;
+	(void)memcpy(pattern, cp, len);
+	pattern[len] = 0;
+	*cpp = *end ? end + 1 : end;
+	return 1;
+  }
+  *cpp = cp;
+  return 0;
+}	// next_pattern()
+/*
+ * Answer whether the path matches one of the patterns.
+ */
+static int matches_pattern(const char *patterns, const char *path)
+{
+  char		pattern[PATH_MAX];
+  const char	*cp = patterns;
+  if (patterns == NULL)
+	return 0;
+  while (next_pattern(&cp, pattern, sizeof(pattern))) {
+	if (fnmatch(pattern, path, FNM_PATHNAME) == 0)
+		return 1;
+  }
+  return 0;
+}	// matches_pattern()
+/*
+ * List the devices matching the comma separated glob patterns of the
+ * driver's devicePatterns field, under their file names.
+ */
+static void discover_patterns(discovery_t *dp)
+{
+  jstring	jpatterns;
+  const char	*patterns;
+  char		pattern[PATH_MAX];
+  const char	*cp;
+  const char	*base;
+  glob_t	gl;
+  size_t	i;
+  if ((patterns = patterns_of(dp, &jpatterns)) == NULL)
+	return;
+  cp = patterns;
+  while (next_pattern(&cp, pattern, sizeof(pattern))) {
+	if (glob(pattern, 0, NULL, &gl) != 0)
+		continue;
+	for (i = 0; i < gl.gl_pathc; i++) {
+		base = strrchr(gl.gl_pathv[i], '/');
+		add_serial(dp, base ? base + 1 : gl.gl_pathv[i], gl.gl_pathv[i]);
+	}
+	globfree(&gl);
+  }
+  release_patterns(dp, jpatterns, patterns);
+}	// discover_patterns()
+#endif	/* __linux__ */
 void cygCommDriver_discoverDevicesNC(JNIEnv *jenv, jobject jobj) {
   jclass	jc;
   jmethodID	jm;
   const int	PORT_SERIAL = 1;	// should match with CommPortIdentifier
   const int	PORT_PARALLEL = 2;	// should match with CommPortIdentifier
   struct stat	sbuf;
-  jstring	pName;
-  jstring	dName;
-  jthrowable	jt;
+#ifdef __linux__
+  discovery_t	discovery;
+  int		useSysfs;
+#endif	/* __linux__ */
   port_t	port_tbl[] =
 		{
 #ifdef NCI
@@ -99,40 +381,169 @@ void cygCommDriver_discoverDevicesNC(JNIEnv *jenv, jobject jobj) {
   //    }
   // }
   //}
+#ifdef __linux__
+  // Ports named by the configured patterns come first and keep their
+  // names; then every serial port the kernel lists.  The table below is
+  // only used for the parallel port, and for the serial ports if sysfs
+  // is not mounted.
+  discovery.jenv = jenv;
+  discovery.jobj = jobj;
+  discovery.jm = jm;
+  discovery.table = port_tbl;
+  discovery.tableSize = sizeof(port_tbl)/sizeof(port_tbl[0]);
+  discovery.count = 0;
+  discover_patterns(&discovery);
+  useSysfs = discover_sysfs(&discovery) == 0;
+#endif	/* __linux__ */
   // For all the pre-defined ports, check to see which ones exist, and add
   // them selectively.
   for (pp = port_tbl;
        pp < port_tbl+(sizeof(port_tbl)/sizeof(port_tbl[0]));
        ++pp) {
-       if (stat(pp->deviceName, &sbuf) != -1) {
-		int		semID;
-		
-		pName = (*jenv)->NewStringUTF(jenv, pp->portName);
-		if (!pName)
-			continue;
-		dName = (*jenv)->NewStringUTF(jenv, pp->deviceName);
-		if (!dName)
-			continue;
-		/* Obtain/create a semaphore for the device in consideration.
-		   If it fails, don't lock/unlock it later on. */
-#ifdef _POSIX_SEMAPHORES
-		semID = sem_create(pp->semKey, 1);
-#else
-		semID = semget((key_t)pp->semKey, 1, IPC_CREAT | CREAT_PERMS);
-#endif
-#ifdef DEBUG
-       printf( "%s ( %s ) semID %d\n", pName, dName, semID );
-       fflush( stdout );
-#endif
-		
-		(*jenv)->CallVoidMethod(jenv, jobj, jm,
-					pName, pp->portType, dName, semID);
-		jt = (*jenv)->ExceptionOccurred(jenv);
-		if (jt) {
-			(*jenv)->ExceptionDescribe(jenv);
-			(*jenv)->ExceptionClear(jenv);
-		}
+#ifdef __linux__
+       if (pp->portType == PORT_SERIAL) {
+		if (!useSysfs)
+			add_serial(&discovery, pp->portName, pp->deviceName);
+		continue;
        }
+#endif	/* __linux__ */
+       if (stat(pp->deviceName, &sbuf) != -1)
+		add_port(jenv, jobj, jm, pp->portName, pp->portType, pp->deviceName, pp->semKey);
   }
   return;
 }	// Java_org_eclipse_soda_dk_comm_NSCommDriver_discoverDevicesNC
+/*
+ * Watch /dev for serial ports coming and going until the driver's
+ * stopWatchFlag is set.  The fixed directory of each devicePatterns
+ * pattern (/dev/serial/by-id for /dev/serial/by-id/ttyUSB*, say) is watched
+ * too, if it exists.  A created entry matching a pattern is listed under
+ * its file name, as discovery does; else a node in /dev is checked on its
+ * own against sysfs.  Either way it is handed to portAdded(), which
+ * ignores ports it already lists.  A removed entry is handed to
+ * portRemoved(), which ignores devices it never listed.  Once the watches
+ * are set, discovery runs once more through portAdded(), for the devices
+ * that appeared since the driver's own discovery.  Returns -1 if /dev
+ * cannot be watched, -2 if not supported.
+ */
+int cygCommDriver_watchDevicesNC(JNIEnv *jenv, jobject jobj)
+{
+#ifdef __linux__
+  jclass	jc;
+  jmethodID	jmAdded;
+  jmethodID	jmRemoved;
+  jfieldID	jfStop;
+  jstring	dName;
+  jstring	jpatterns;
+  const char	*patterns;
+  discovery_t	discovery;
+  struct pollfd	pfd;
+  const struct inotify_event *ev;
+  char		buf[4096] __attribute__ ((aligned(__alignof__(struct inotify_event))));
+  char		portName[64];
+  char		path[PATH_MAX];
+  char		pattern[PATH_MAX];
+  char		*dirs[MAX_WATCHED];
+  int		wds[MAX_WATCHED];
+  const char	*dir;
+  const char	*pp;
+  char		*cp;
+  ssize_t	n;
+  int		ifd;
+  int		devWd;
+  int		wd;
+  int		watched = 0;
+  int		i;
+  jc = (*jenv)->GetObjectClass(jenv, jobj);
+  jmAdded = (*jenv)->GetMethodID(jenv, jc, "portAdded",
+				 "(Ljava/lang/String;ILjava/lang/String;I)V");
+  jmRemoved = (*jenv)->GetMethodID(jenv, jc, "portRemoved", "(Ljava/lang/String;)V");
+  jfStop = (*jenv)->GetFieldID(jenv, jc, "stopWatchFlag", "I");
+  if (jmAdded == NULL || jmRemoved == NULL || jfStop == NULL) {
+	(*jenv)->ExceptionClear(jenv);
+	return -1;
+  }
+  if ((ifd = inotify_init1(IN_NONBLOCK | IN_CLOEXEC)) == -1)
+	return -1;
+  if ((devWd = inotify_add_watch(ifd, "/dev", IN_CREATE | IN_DELETE | IN_MOVED_TO | IN_MOVED_FROM)) == -1) {
+	(void)close(ifd);
+	return -1;
+  }
+  // Hot plugged ports are never in the fixed table; their semaphore key
+  // is the hash of the device name.
+  discovery.jenv = jenv;
+  discovery.jobj = jobj;
+  discovery.jm = jmAdded;
+  discovery.table = NULL;
+  discovery.tableSize = 0;
+  patterns = patterns_of(&discovery, &jpatterns);
+  for (pp = patterns; pp != NULL && next_pattern(&pp, pattern, sizeof(pattern)); ) {
+	if ((cp = strrchr(pattern, '/')) == NULL || cp == pattern)
+		continue;
+	*cp = 0;
+	if (strpbrk(pattern, "*?[") != NULL || strcmp(pattern, "/dev") == 0)
+		continue;
+	wd = inotify_add_watch(ifd, pattern, IN_CREATE | IN_DELETE | IN_MOVED_TO | IN_MOVED_FROM);
+	if (wd == -1 || wd == devWd || watched == MAX_WATCHED)
+		continue;
+	for (i = 0; i < watched && wds[i] != wd; i++)
+		;
+	if (i < watched || (dirs[watched] = strdup(pattern)) == NULL)
+		continue;
+	wds[watched++] = wd;
+  }
+  // Catch the devices that appeared between the driver's discovery and
+  // the watches being set.
+  discovery.count = 0;
+  discover_patterns(&discovery);
+  (void)discover_sysfs(&discovery);
+  pfd.fd = ifd;
+  pfd.events = POLLIN;
+  while ((*jenv)->GetIntField(jenv, jobj, jfStop) == 0) {
+	// Wake up once a second to look at the stop flag.
+	if (poll(&pfd, 1, 1000) <= 0)
+		continue;
+	if ((n = read(ifd, buf, sizeof(buf))) <= 0)
+		continue;
+	for (cp = buf; cp < buf + n; cp += sizeof(struct inotify_event) + ev->len) {
+		ev = (const struct inotify_event *)cp;
+		if (ev->len == 0 || (ev->mask & IN_ISDIR))
+			continue;
+		dir = NULL;
+		if (ev->wd == devWd)
+			dir = "/dev";
+		for (i = 0; dir == NULL && i < watched; i++) {
+			if (wds[i] == ev->wd)
+				dir = dirs[i];
+		}
+		if (dir == NULL)
+			continue;
+		(void)snprintf(path, sizeof(path), "%s/%s", dir, ev->name);
+		if (ev->mask & (IN_CREATE | IN_MOVED_TO)) {
+			discovery.count = 0;
+			if (matches_pattern(patterns, path)) {
+				add_serial(&discovery, ev->name, path);
+			} else if (ev->wd == devWd && is_serial_port(ev->name)) {
+				port_name_of(ev->name, portName, sizeof(portName));
+				add_serial(&discovery, portName, path);
+			}
+		} else {
+			if ((dName = (*jenv)->NewStringUTF(jenv, path)) == NULL)
+				continue;
+			(*jenv)->CallVoidMethod(jenv, jobj, jmRemoved, dName);
+			if ((*jenv)->ExceptionOccurred(jenv)) {
+				(*jenv)->ExceptionDescribe(jenv);
+				(*jenv)->ExceptionClear(jenv);
+			}
+			(*jenv)->DeleteLocalRef(jenv, dName);
+		}
+	}
+  }
+  for (i = 0; i < watched; i++)
+	free(dirs[i]);
+  release_patterns(&discovery, jpatterns, patterns);
+  (void)close(ifd);
+  return 0;
+#else
+  return -2;
+#endif	/* __linux__ */
+}	// cygCommDriver_watchDevicesNC()
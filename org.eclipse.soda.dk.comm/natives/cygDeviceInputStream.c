@@ -10,10 +10,12 @@
  ************************************************************************/
 #include <stdio.h>
 #include <stdlib.h>
+#include <string.h>
 #include <signal.h>
 #include <errno.h>
 #include <sys/ioctl.h>
 #include <org_eclipse_soda_dk_comm_NSDeviceInputStream.h>
+#include <CommNatives.h>
 #include <sys/time.h>
 #ifndef FALSE
 #define FALSE 0
@@ -23,53 +25,124 @@
 #endif
 #define assert(s) if (!s) {printf("\n\n%d asserted!\n\n", __LINE__); return(-1);}
 #define assertexc(s) if (!s) {printf("\n\n%d asserted!\n\n", __LINE__); (*jenv)->ThrowNew(jenv, ec, "");}
+/* Reads up to this size go through the stack; larger ones that the driver
+   can satisfy at once are read straight into the Java array. */
+#define READ_STACK_SIZE	4096
 #ifdef __linux__
-static volatile int	timeoutOccurred = FALSE;
-static struct itimerval	apptimer;
-static struct sigaction	appsa;
-// static void		(*apphandler)();
-int			timerflag;
-static void alarm_handler(int sig)
+#include <poll.h>
+#include <time.h>
+/*
+ * Wait until fd becomes readable or tmovalue milliseconds have elapsed
+ * (forever if tmovalue is not positive).  The deadline is kept per call on
+ * the caller's stack, so concurrent reads on different ports (or the
+ * application's own itimer/SIGALRM) never interfere with each other.  The
+ * port's wakeup descriptor, named by wakeup, is polled as well, so closing
+ * the port releases the reader at once.  Returns 1 when readable, 0 on
+ * timeout and -1 on error (errno is preserved; EBADF once the port is
+ * closing).
+ */
+static int wait_readable(jint wakeup, int fd, int tmovalue)
 {
-	 timeoutOccurred = TRUE; 
-}
-static void start_read_timer(int tmovalue)
+   struct timespec	now;
+   struct timespec	deadline;
+   int			remaining;
+   int			rc;
+   if (tmovalue <= 0) {
+	while ((rc = dkcommWakeupPoll(wakeup, fd, POLLIN, -1)) < 0 && errno == EINTR)
+		;
+	return rc > 0 ? 1 : rc;
+   }
+   (void)clock_gettime(CLOCK_MONOTONIC, &deadline);
+   deadline.tv_sec += tmovalue / 1000;
+   deadline.tv_nsec += (long)(tmovalue % 1000) * 1000000L;
+   if (deadline.tv_nsec >= 1000000000L) {
+	deadline.tv_sec++;
+	deadline.tv_nsec -= 1000000000L;
+   }
+   remaining = tmovalue;
+   for (;;) {
+	rc = dkcommWakeupPoll(wakeup, fd, POLLIN, remaining);
+	if (rc > 0)
+		return 1;
+	if (rc == 0)
+		return 0;
+	if (errno != EINTR)
+		return -1;
+	/* Interrupted by a signal: recompute what is left of the deadline. */
+	(void)clock_gettime(CLOCK_MONOTONIC, &now);
+	remaining = (int)((deadline.tv_sec - now.tv_sec) * 1000 +
+			  (deadline.tv_nsec - now.tv_nsec) / 1000000L);
+	if (remaining <= 0)
+		return 0;
+   }
+}	/* wait_readable() */
+/*
+ * Read until need bytes (of at most len) have arrived or tmovalue
+ * milliseconds have passed since the call (never, if tmovalue is not
+ * positive), whichever comes first.  This is how a receive threshold is
+ * met: with VMIN set the kernel would report the port readable only once
+ * VMIN bytes are queued, however few the read asks for, and VTIME would
+ * only time the gaps between bytes.  The port runs with VMIN=1, so each
+ * read takes what the driver holds, and the deadline of the whole read
+ * is kept here.  Sets *timedOut if the deadline passed first.  Returns
+ * the number of bytes read, or -1 on an error before any byte arrived.
+ */
+static int read_until(jint wakeup, int fd, char *buf, int len, int need, int tmovalue, int *timedOut)
 {
-   struct itimerval	tm;
-   struct sigaction	newsa;
-   /* Suspend the app's timer and save it. */
-   (void)memset(&tm, 0, sizeof(tm));
-   (void)setitimer(ITIMER_REAL, &tm, &apptimer);
-   /* Replace the app's signal handler with ours. */
-   (void)memset(&newsa, 0, sizeof(newsa));
-   newsa.sa_handler = alarm_handler;
-   (void)sigaction(SIGALRM, &newsa, &appsa);
-   // apphandler = signal(SIGALRM, alarm_handler);
-   /* Start our timer. */
-   (void)memset(&tm, 0, sizeof(tm));
-   tm.it_value.tv_usec = tmovalue * 1000;  // convert millisec into microsec
-   (void)setitimer(ITIMER_REAL, &tm, NULL);
-   timerflag = TRUE;
-}	/* start_read_timer() */
-static void stop_read_timer()
+   struct timespec	start;
+   struct timespec	now;
+   int			remaining;
+   int			rc;
+   int			dc = 0;
+   *timedOut = 0;
+   (void)clock_gettime(CLOCK_MONOTONIC, &start);
+   remaining = tmovalue;
+   while (dc < need) {
+	rc = wait_readable(wakeup, fd, remaining);
+	if (rc == 0) {
+		*timedOut = 1;
+		break;
+	}
+	if (rc < 0)
+		return dc > 0 ? dc : -1;
+	rc = read(fd, buf + dc, len - dc);
+	if (rc < 0) {
+		if (errno != EINTR && errno != EAGAIN)
+			return dc > 0 ? dc : -1;
+	} else if (rc == 0) {
+		break;	/* hung up */
+	} else {
+		dc += rc;
+	}
+	if (tmovalue <= 0)
+		continue;
+	(void)clock_gettime(CLOCK_MONOTONIC, &now);
+	remaining = tmovalue - (int)((now.tv_sec - start.tv_sec) * 1000 +
+				     (now.tv_nsec - start.tv_nsec) / 1000000L);
+	if (dc < need && remaining <= 0) {
+		*timedOut = 1;
+		break;
+	}
+   }
+   return dc;
+}	/* read_until() */
+/*
+ * Get the handle of the port's wakeup descriptor, which the port keeps in
+ * the stream's wakeup field; 0 (none) with an older class.
+ */
+static jint stream_wakeup(JNIEnv *jenv, jobject jobj)
 {
-   struct itimerval	tm;
-   if (!timerflag)
-      return;
-   /* Stop our ticking timer. */
-   (void)memset(&tm, 0, sizeof(tm));
-   (void)setitimer(ITIMER_REAL, &tm, NULL);
-   /* Restore the app's signal handler. */
-   (void)sigaction(SIGALRM, &appsa, NULL);
-   // (void)signal(SIGALRM, apphandler);
-   /* Restore the app's timer */
-   (void)setitimer(ITIMER_REAL, &apptimer, NULL);
-   timerflag = FALSE;
-}	/* stop_read_timer */
+   jfieldID	wf;
+   wf = dkcommFieldID(jenv, jobj, &dkcommIDs.inWakeup, "wakeup", "I");
+   if (wf == NULL) {
+	(*jenv)->ExceptionClear(jenv);
+	return 0;
+   }
+   return (*jenv)->GetIntField(jenv, jobj, wf);
+}	/* stream_wakeup() */
 #endif /* __linux__ */
 int cygDeviceInputStream_readDeviceOneByteNC
   (JNIEnv *jenv, jobject jobj) {
-  jclass	jc;
   jclass	ec;
   jfieldID	jf;
   jint 		fd = -1;
@@ -81,18 +154,16 @@ int cygDeviceInputStream_readDeviceOneByteNC
   int		serrno;
 	
   // Get the exception class.
-  ec = (*jenv)->FindClass(jenv, "java/io/IOException");
+  ec = dkcommClass(jenv, &dkcommIDs.ioException, "java/io/IOException");
   assert(ec);
   // Get the file descriptor.
-  jc = (*jenv)->GetObjectClass(jenv, jobj);
-  assertexc(jc);
-  jf = (*jenv)->GetFieldID(jenv, jc, "fd", "I");
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.inFd, "fd", "I");
   assertexc(jf);
   fd = (*jenv)->GetIntField(jenv, jobj, jf);
   if (fd == -1) {
 	(*jenv)->ThrowNew(jenv, ec, "");
   }
-  tmof = (*jenv)->GetFieldID(jenv, jc, "tmo", "I");
+  tmof = dkcommFieldID(jenv, jobj, &dkcommIDs.inTmo, "tmo", "I");
   assert(tmof);
   tmo = (*jenv)->GetIntField(jenv, jobj, tmof);
   
@@ -107,17 +178,13 @@ int cygDeviceInputStream_readDeviceOneByteNC
 	}
 #endif /* QNX */
 #ifdef __linux__
-  // Start the timer.
-  timeoutOccurred = FALSE;
-  if (tmo > 0)
-	start_read_timer(tmo);
-  // Read data.
+  // Wait for data up to the timeout, if one is set, or for the port to close.
   buf[0] = 0;
-  dc = read(fd, buf, 1);
+  dc = wait_readable(stream_wakeup(jenv, jobj), fd, tmo);
+  // Read data.
+  if (dc > 0)
+	dc = read(fd, buf, 1);
   serrno = errno;
-  // Stop the timer.
-  if (tmo > 0)
-	stop_read_timer();
   if (dc < 0 && !(serrno == EINTR || serrno == EAGAIN)) {
 	(*jenv)->ThrowNew(jenv, ec, "");
   }
@@ -129,84 +196,156 @@ int cygDeviceInputStream_readDeviceOneByteNC
 }	/* cygDeviceInputStream_readDeviceOneByteNC */
 int cygDeviceInputStream_readDeviceNC
   (JNIEnv *jenv, jobject jobj, jbyteArray jba, jint off, jint len) {
-  jclass	jc;
   jfieldID	jf;
   jint 		fd = -1;
-  int		rc;
   int		dc = 0;
-  char		*cbuf;
+  char		cbuf[READ_STACK_SIZE];
+  jbyte		*jbuf;
+  int		pending;
   jfieldID	tmof;
   int		tmo;
   jfieldID	tmoDonef;
+  jfieldID	thcf;
+  int		thc;
+  int		timedOut;
   
-  cbuf = malloc(len);
-  
-  assert(cbuf);
   // Get the file descriptor.
-  jc = (*jenv)->GetObjectClass(jenv, jobj);
-  assert(jc);
-  jf = (*jenv)->GetFieldID(jenv, jc, "fd", "I");
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.inFd, "fd", "I");
   assert(jf);
   fd = (*jenv)->GetIntField(jenv, jobj, jf);
   if (fd == -1) {
 	return -1;
   }
-  tmof = (*jenv)->GetFieldID(jenv, jc, "tmo", "I");
+  tmof = dkcommFieldID(jenv, jobj, &dkcommIDs.inTmo, "tmo", "I");
   assert(tmof);
-  tmoDonef = (*jenv)->GetFieldID(jenv, jc, "tmoDone", "Z");
+  tmoDonef = dkcommFieldID(jenv, jobj, &dkcommIDs.inTmoDone, "tmoDone", "Z");
   assert(tmoDonef);
   tmo = (*jenv)->GetIntField(jenv, jobj, tmof);
+  thcf = dkcommFieldID(jenv, jobj, &dkcommIDs.inThc, "thc", "I");
+  assert(thcf);
+  thc = (*jenv)->GetIntField(jenv, jobj, thcf);
 #ifdef QNX
 	// Read data - QNX with timeout
 	if (tmo <100 & tmo>0) {
 		tmo=100;
 	}
-	
+	if (len > (int)sizeof(cbuf))
+		len = sizeof(cbuf);
 	dc=readcond(fd, cbuf, len, len, tmo/100, tmo/100); //10th of a second instead of microSecs
 	if (dc<len) {
 		(*jenv)->SetBooleanField(jenv, jobj, tmoDonef, (jboolean)JNI_TRUE);
 		//dc=-1; //return fake error
 	}
+	if (dc > 0)
+		(*jenv)->SetByteArrayRegion(jenv, jba, off, dc, (jbyte*)cbuf);
 #endif /* QNX */
 #ifdef __linux__ 
-  // Start the timer.
-  timeoutOccurred = FALSE;
-  if (tmo > 0)
-	start_read_timer(tmo);
-  
-    //Read data
-   dc = read(fd, cbuf, len);
-	
-  // If the timer had already expired, set the field tmoDone.
-  // Else, stop the timer.
-    if (timeoutOccurred) {
-    	dc = 0; // Bug fix for PR#117959
+  // With a threshold, collect it here, against the timeout's deadline if
+  // one is set.
+  if (thc > 0) {
+	if (len > (int)sizeof(cbuf))
+		len = sizeof(cbuf);
+	dc = read_until(stream_wakeup(jenv, jobj), fd, cbuf, len, thc < len ? thc : len, tmo, &timedOut);
+	if (timedOut)
 		(*jenv)->SetBooleanField(jenv, jobj, tmoDonef, (jboolean)JNI_TRUE);
-  	}
-  if (tmo > 0)
-    stop_read_timer();
+	if (dc > 0)
+		(*jenv)->SetByteArrayRegion(jenv, jba, off, dc, (jbyte*)cbuf);
+	return dc;
+  }
+  // Wait for data up to the timeout, if one is set, or for the port to
+  // close.  If the deadline passes without data, set the field tmoDone.
+  dc = wait_readable(stream_wakeup(jenv, jobj), fd, tmo);
+  if (dc == 0) // Bug fix for PR#117959
+	(*jenv)->SetBooleanField(jenv, jobj, tmoDonef, (jboolean)JNI_TRUE);
+  if (dc > 0) {
+	// When the driver already holds the whole request, read it straight
+	// into the Java array: the read cannot block, so holding the array
+	// critical is safe.  Otherwise read (and possibly block, honouring
+	// VMIN/VTIME) into a stack buffer and copy only what arrived.
+	if (len > (int)sizeof(cbuf) && ioctl(fd, FIONREAD, &pending) != -1 && pending >= len) {
+		jbuf = (*jenv)->GetPrimitiveArrayCritical(jenv, jba, NULL);
+		if (jbuf == NULL)
+			return -1;
+		dc = read(fd, jbuf + off, len);
+		(*jenv)->ReleasePrimitiveArrayCritical(jenv, jba, jbuf, dc > 0 ? 0 : JNI_ABORT);
+	} else {
+		if (len > (int)sizeof(cbuf))
+			len = sizeof(cbuf);
+		dc = read(fd, cbuf, len);
+		if (dc > 0)
+			(*jenv)->SetByteArrayRegion(jenv, jba, off, dc, (jbyte*)cbuf);
+	}
+  }
 #endif /*__linux__*/
-  // Copy back the data into the java buffer.
-  if (dc > 0)
-	(*jenv)->SetByteArrayRegion(jenv, jba, off, dc, (jbyte*)cbuf);
-  free(cbuf);
   return dc;
 }	/* cygDeviceInputStream_readDeviceNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceInputStream
+ * Method:    readDirectNC
+ * Signature: (Ljava/nio/ByteBuffer;II)I
+ *
+ * Read into a direct buffer at the given position without any copy.
+ */
+int cygDeviceInputStream_readDirectNC
+  (JNIEnv *jenv, jobject jobj, jobject jbb, jint pos, jint len) {
+  jfieldID	jf;
+  jint 		fd = -1;
+  int		dc = 0;
+  char		*addr;
+  jfieldID	tmof;
+  int		tmo;
+  jfieldID	tmoDonef;
+  jfieldID	thcf;
+  int		thc;
+  int		timedOut;
+  addr = (*jenv)->GetDirectBufferAddress(jenv, jbb);
+  if (addr == NULL)
+	return -2;
+  // Get the file descriptor.
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.inFd, "fd", "I");
+  assert(jf);
+  fd = (*jenv)->GetIntField(jenv, jobj, jf);
+  if (fd == -1) {
+	return -1;
+  }
+  tmof = dkcommFieldID(jenv, jobj, &dkcommIDs.inTmo, "tmo", "I");
+  assert(tmof);
+  tmoDonef = dkcommFieldID(jenv, jobj, &dkcommIDs.inTmoDone, "tmoDone", "Z");
+  assert(tmoDonef);
+  tmo = (*jenv)->GetIntField(jenv, jobj, tmof);
+  thcf = dkcommFieldID(jenv, jobj, &dkcommIDs.inThc, "thc", "I");
+  assert(thcf);
+  thc = (*jenv)->GetIntField(jenv, jobj, thcf);
+#ifdef __linux__ 
+  if (thc > 0) {
+	dc = read_until(stream_wakeup(jenv, jobj), fd, addr + pos, len, thc < len ? thc : len, tmo, &timedOut);
+	if (timedOut)
+		(*jenv)->SetBooleanField(jenv, jobj, tmoDonef, (jboolean)JNI_TRUE);
+	return dc;
+  }
+  dc = wait_readable(stream_wakeup(jenv, jobj), fd, tmo);
+  if (dc == 0)
+	(*jenv)->SetBooleanField(jenv, jobj, tmoDonef, (jboolean)JNI_TRUE);
+  // Direct buffer memory never moves, so the read may block freely.
+  if (dc > 0)
+	dc = read(fd, addr + pos, len);
+#else
+  dc = -2;
+#endif /*__linux__*/
+  return dc;
+}	/* cygDeviceInputStream_readDirectNC */
 int cygDeviceInputStream_getReadCountNC
   (JNIEnv *jenv, jobject jobj) {
-  jclass	jc;
   jclass	ec;
   jfieldID	jf;
   jint 		fd = -1;
   int		rc;
   int		dc = 0;
   // Get the exception class.
-  ec = (*jenv)->FindClass(jenv, "java/io/IOException");
+  ec = dkcommClass(jenv, &dkcommIDs.ioException, "java/io/IOException");
   assert(ec);
   // Get the file descriptor.
-  jc = (*jenv)->GetObjectClass(jenv, jobj);
-  assertexc(jc);
-  jf = (*jenv)->GetFieldID(jenv, jc, "fd", "I");
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.inFd, "fd", "I");
   assertexc(jf);
   fd = (*jenv)->GetIntField(jenv, jobj, jf);
   if (fd == -1) {
@@ -217,3 +356,79 @@ int cygDeviceInputStream_getReadCountNC
 	(*jenv)->ThrowNew(jenv, ec, "");
   return dc;
 } /* cygDeviceInputStream_getReadCountNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceInputStream
+ * Method:    readFrameNC
+ * Signature: ([BIII)I
+ *
+ * Read until the framing byte delim arrives, len bytes have been read or
+ * the timeout expires.  Each chunk is scanned as it comes in, so a frame
+ * costs one JNI transition however it is split across reads.  Returns the
+ * number of bytes stored and sets the field frameCount to the length of
+ * the frame including the framing byte (0 if it was not seen); any bytes
+ * after the framing byte belong to the next frame.
+ */
+int cygDeviceInputStream_readFrameNC
+  (JNIEnv *jenv, jobject jobj, jbyteArray jba, jint off, jint len, jint delim) {
+  jfieldID	jf;
+  jint 		fd = -1;
+  int		dc;
+  int		n = 0;
+  int		frame = 0;
+  int		chunk;
+  char		cbuf[256];
+  char		*cp;
+  jfieldID	tmof;
+  int		tmo;
+  jfieldID	tmoDonef;
+  jfieldID	framef;
+  // Get the file descriptor.
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.inFd, "fd", "I");
+  assert(jf);
+  fd = (*jenv)->GetIntField(jenv, jobj, jf);
+  if (fd == -1) {
+	return -1;
+  }
+  tmof = dkcommFieldID(jenv, jobj, &dkcommIDs.inTmo, "tmo", "I");
+  assert(tmof);
+  tmoDonef = dkcommFieldID(jenv, jobj, &dkcommIDs.inTmoDone, "tmoDone", "Z");
+  assert(tmoDonef);
+  framef = dkcommFieldID(jenv, jobj, &dkcommIDs.inFrameCount, "frameCount", "I");
+  assert(framef);
+  tmo = (*jenv)->GetIntField(jenv, jobj, tmof);
+#ifdef __linux__
+  while (n < len) {
+	// Wait for data up to the timeout, if one is set, or for the port to close.
+	dc = wait_readable(stream_wakeup(jenv, jobj), fd, tmo);
+	if (dc == 0) {
+		(*jenv)->SetBooleanField(jenv, jobj, tmoDonef, (jboolean)JNI_TRUE);
+		break;
+	}
+	chunk = len - n;
+	if (chunk > (int)sizeof(cbuf))
+		chunk = sizeof(cbuf);
+	if (dc > 0)
+		dc = read(fd, cbuf, chunk);
+	if (dc < 0) {
+		if (errno == EINTR)
+			continue;
+		if (n == 0)
+			n = -1;
+		break;
+	}
+	if (dc == 0)
+		break;
+	(*jenv)->SetByteArrayRegion(jenv, jba, off + n, dc, (jbyte*)cbuf);
+	cp = memchr(cbuf, (unsigned char)delim, dc);
+	n += dc;
+	if (cp != NULL) {
+		frame = n - dc + (int)(cp - cbuf) + 1;
+		break;
+	}
+  }
+#else
+  n = -1;
+#endif /*__linux__*/
+  (*jenv)->SetIntField(jenv, jobj, framef, (jint)frame);
+  return n;
+}	/* cygDeviceInputStream_readFrameNC */
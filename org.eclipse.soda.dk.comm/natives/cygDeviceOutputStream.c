@@ -9,8 +9,157 @@
  *     IBM - initial API and implementation                              *
  ************************************************************************/
 #include <stdio.h>
+#include <unistd.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <poll.h>
+#include <time.h>
 #include <org_eclipse_soda_dk_comm_NSDeviceOutputStream.h>
+#include <CommNatives.h>
 #define assert(s) if (!s) {printf("\n\n%d asserted!\n\n", __LINE__); return(-1);}
+/* Writes are staged through a stack buffer of this size, one chunk per
+   write(), so only the region being written is ever copied out of the Java
+   array.  A tty rarely accepts more than this per write() anyway. */
+#define WRITE_STACK_SIZE	4096
+/* With a send timeout, writes go through a second, non-blocking open of
+   the tty, so they take only what the driver has room for and never run
+   past the deadline; reads keep their blocking VMIN/VTIME descriptor.
+   Where that descriptor cannot be had, each blocking write() is capped at
+   this size instead, which serial_core always has room for after POLLOUT. */
+#define SEND_CHUNK	256
+/*
+ * Compute the deadline tmo milliseconds from now.
+ */
+static void send_deadline(int tmo, struct timespec *deadline)
+{
+  (void)clock_gettime(CLOCK_MONOTONIC, deadline);
+  deadline->tv_sec += tmo / 1000;
+  deadline->tv_nsec += (long)(tmo % 1000) * 1000000L;
+  if (deadline->tv_nsec >= 1000000000L) {
+	deadline->tv_sec++;
+	deadline->tv_nsec -= 1000000000L;
+  }
+}	/* send_deadline() */
+/*
+ * Return the stream's non-blocking descriptor for timed writes, opening it
+ * on first use, or -1 if it cannot be had.  It is a second open of the
+ * same tty through /proc, so O_NONBLOCK applies to it alone.  A failure is
+ * remembered as -2 so it is not tried again.
+ */
+static int send_fd(JNIEnv *jenv, jobject jobj, int fd)
+{
+#ifdef __linux__
+  jfieldID	jf;
+  char		path[64];
+  int		sfd;
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.outSendFd, "sendFd", "I");
+  if (jf == NULL) {
+	(*jenv)->ExceptionClear(jenv);
+	return -1;
+  }
+  sfd = (*jenv)->GetIntField(jenv, jobj, jf);
+  if (sfd == -1) {
+	(void)snprintf(path, sizeof(path), "/proc/self/fd/%d", fd);
+	sfd = open(path, O_WRONLY | O_NOCTTY | O_NONBLOCK | O_CLOEXEC);
+	if (sfd == -1)
+		sfd = -2;
+	(*jenv)->SetIntField(jenv, jobj, jf, sfd);
+  }
+  return sfd < 0 ? -1 : sfd;
+#else
+  return -1;
+#endif /* __linux__ */
+}	/* send_fd() */
+/*
+ * Write len bytes from cb, resuming short writes and retrying EINTR and
+ * EAGAIN.  With tmo <= 0 this blocks until everything is written or a
+ * real error occurs.  Otherwise it waits for POLLOUT before each write
+ * and gives up at the deadline; the writes go to the non-blocking sfd, or
+ * are capped at SEND_CHUNK on fd if sfd is -1.  Returns the count written
+ * and sets *expired when the deadline cut the write short.
+ */
+static int send_bytes(int fd, int sfd, const char *cb, int len, int tmo, const struct timespec *deadline, int *expired)
+{
+  int			wfd = fd;
+  struct pollfd		pfd;
+  struct timespec	now;
+  int			remaining;
+  int			wc = 0;
+  int			cc;
+  int			rc;
+  while (wc < len) {
+	cc = len - wc;
+	pfd.fd = fd;
+	pfd.events = POLLOUT;
+	pfd.revents = 0;
+	if (tmo > 0) {
+		(void)clock_gettime(CLOCK_MONOTONIC, &now);
+		remaining = (int)((deadline->tv_sec - now.tv_sec) * 1000 +
+				  (deadline->tv_nsec - now.tv_nsec) / 1000000L);
+		if (remaining <= 0) {
+			*expired = 1;
+			break;
+		}
+		rc = poll(&pfd, 1, remaining);
+		if (rc < 0) {
+			if (errno == EINTR)
+				continue;
+			break;
+		}
+		if (rc == 0) {
+			*expired = 1;
+			break;
+		}
+		if (pfd.revents & (POLLERR | POLLHUP | POLLNVAL))
+			break;
+		if (sfd >= 0)
+			wfd = sfd;
+		else if (cc > SEND_CHUNK)
+			cc = SEND_CHUNK;
+	}
+	rc = write(wfd, cb + wc, cc);
+	if (rc > 0) {
+		wc += rc;
+		continue;
+	}
+	if (rc < 0 && errno == EINTR)
+		continue;
+	if (rc < 0 && errno != EAGAIN && errno != EWOULDBLOCK)
+		break;
+	// Nothing was taken: wait for room (the timed path polls at the top).
+	if (tmo <= 0 && poll(&pfd, 1, -1) < 0 && errno != EINTR)
+		break;
+  }
+  return wc;
+}	/* send_bytes() */
+/*
+ * Read the stream's send timeout, clear its timed-out flag and start the
+ * deadline.  Returns the timeout in milliseconds, or -1 if none is set.
+ */
+static int send_timeout(JNIEnv *jenv, jobject jobj, struct timespec *deadline)
+{
+  jfieldID	jf;
+  int		tmo = -1;
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.outTmo, "tmo", "I");
+  if (jf)
+	tmo = (*jenv)->GetIntField(jenv, jobj, jf);
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.outTmoDone, "tmoDone", "Z");
+  if (jf)
+	(*jenv)->SetBooleanField(jenv, jobj, jf, JNI_FALSE);
+  if (tmo > 0)
+	send_deadline(tmo, deadline);
+  return tmo;
+}	/* send_timeout() */
+/*
+ * Record on the stream that the send timeout expired.
+ */
+static void send_expired(JNIEnv *jenv, jobject jobj)
+{
+  jfieldID	jf;
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.outTmoDone, "tmoDone", "Z");
+  if (jf)
+	(*jenv)->SetBooleanField(jenv, jobj, jf, JNI_TRUE);
+}	/* send_expired() */
 /*
  * Class:     org_eclipse_soda_dk_comm_NSDeviceOutputStream
  * Method:    writeDeviceNC
@@ -18,33 +167,85 @@
  */
 int cygDeviceOutputStream_writeDeviceNC
   (JNIEnv *jenv, jobject jobj, jbyteArray jbuf, jint off, jint len) {
-  jclass	jc;
   jfieldID	jf;
   jint 		fd = -1;
-  jbyte		*cbuf;
-  jboolean	isCopy;
+  jbyte		cbuf[WRITE_STACK_SIZE];
+  struct timespec deadline;
+  int		tmo;
+  int		expired = 0;
   int		wc = 0;
-  jbyte		*cb;
-  int		rc;
+  int		cc;
+  int		bc;
+  int		sfd = -1;
   if (!len)
 	return wc;
   // Get the file descriptor.
-  jc = (*jenv)->GetObjectClass(jenv, jobj);
-  assert(jc);
-  jf = (*jenv)->GetFieldID(jenv, jc, "fd", "I");
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.outFd, "fd", "I");
   assert(jf);
   fd = (*jenv)->GetIntField(jenv, jobj, jf);
   if (fd == -1)
 	return -1;
-  // Convert the java byte array buffer into c byte buffer.
-  cbuf =  (*jenv)->GetByteArrayElements(jenv, jbuf, &isCopy);
-  // Write the data out to the device.
-  for ( cb = cbuf+off; len; len -= rc, wc += rc, cb += rc ) {
-	if ((rc = write(fd, cb, len)) < 0)
-		break;
+  tmo = send_timeout(jenv, jobj, &deadline);
+  if (tmo > 0)
+	sfd = send_fd(jenv, jobj, fd);
+  // Copy [off, off+len) a chunk at a time and write it out to the device.
+  // The array is never pinned: write() may block on flow control, which
+  // must not happen inside a critical region.
+  while (len) {
+	cc = len < (int)sizeof(cbuf) ? len : (int)sizeof(cbuf);
+	(*jenv)->GetByteArrayRegion(jenv, jbuf, off + wc, cc, cbuf);
+	bc = send_bytes(fd, sfd, (const char *)cbuf, cc, tmo, &deadline, &expired);
+	if (bc < cc) {
+		if (expired)
+			send_expired(jenv, jobj);
+		return wc + bc;
+	}
+	len -= cc;
+	wc += cc;
   }
-  // Should we throw some exception in the event of a write error ????
-  // Free the c byte buffer.
-  (*jenv)->ReleaseByteArrayElements(jenv, jbuf, cbuf, JNI_ABORT);
   return wc;
 }	/* cygDeviceOutputStream_writeDeviceNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceOutputStream
+ * Method:    writeDirectNC
+ * Signature: (Ljava/nio/ByteBuffer;II)I
+ *
+ * Write from a direct buffer at the given position without any copy.
+ */
+int cygDeviceOutputStream_writeDirectNC
+  (JNIEnv *jenv, jobject jobj, jobject jbb, jint pos, jint len) {
+  jfieldID	jf;
+  jint 		fd = -1;
+  char		*cb;
+  struct timespec deadline;
+  int		tmo;
+  int		expired = 0;
+  int		wc = 0;
+  int		sfd = -1;
+  cb = (*jenv)->GetDirectBufferAddress(jenv, jbb);
+  if (cb == NULL)
+	return -2;
+  if (!len)
+	return wc;
+  // Get the file descriptor.
+  jf = dkcommFieldID(jenv, jobj, &dkcommIDs.outFd, "fd", "I");
+  assert(jf);
+  fd = (*jenv)->GetIntField(jenv, jobj, jf);
+  if (fd == -1)
+	return -1;
+  tmo = send_timeout(jenv, jobj, &deadline);
+  if (tmo > 0)
+	sfd = send_fd(jenv, jobj, fd);
+  wc = send_bytes(fd, sfd, cb + pos, len, tmo, &deadline, &expired);
+  if (expired)
+	send_expired(jenv, jobj);
+  return wc;
+}	/* cygDeviceOutputStream_writeDirectNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceOutputStream
+ * Method:    closeSendNC
+ * Signature: (I)I
+ */
+int cygDeviceOutputStream_closeSendNC(JNIEnv *jenv, jobject jobj, jint sfd) {
+  return close(sfd);
+}	/* cygDeviceOutputStream_closeSendNC */
@@ -20,6 +20,7 @@
 #include <linux/lp.h>
 #endif	/* __linux__ */
 #include <org_eclipse_soda_dk_comm_ParallelErrorEventThread.h>
+#include <CommNatives.h>
 #define assertexc(s)       if (!s) {printf("\n\n%d asserted!\n\n", __LINE__); \
 				 return;}
 static int	getPollingTime(JNIEnv *jenv) {
@@ -40,14 +41,10 @@ static int	getPollingTime(JNIEnv *jenv) {
 }	/* getPollingTime() */
 static int getStopThreadFlag(JNIEnv *jenv, jobject jobj)
 {
-	jclass cls;
 	jfieldID fid;
 	jint stopThreadFlag;
 	
-	cls = (*jenv)->GetObjectClass(jenv, jobj);
-	if (!cls) (*jenv)->FatalError(jenv, "Missing class");
-	
-	fid = (*jenv)->GetFieldID(jenv, cls, "stopThreadFlag", "I");
+	fid = dkcommFieldID(jenv, jobj, &dkcommIDs.errorStopThreadFlag, "stopThreadFlag", "I");
 	if (fid == NULL) (*jenv)->FatalError(jenv, "Missing field");
 	
 	stopThreadFlag = (*jenv)->GetIntField(jenv, jobj, fid);
@@ -78,6 +75,9 @@ void cygParallelErrorEventThread_monitorParallelErrorNC
 	jclass		jthreadClass;
 	
 	jint 		stopThreadFlag;
+#ifdef __linux__
+	jint		wakeup;
+#endif	/* __linux__ */
 	pollingTime = getPollingTime(jenv);
 	/* Get the const value for the parallel port error event type.*/
 	jppec = (*jenv)->FindClass(jenv, "javax/comm/ParallelPortEvent");
@@ -92,6 +92,9 @@ void cygParallelErrorEventThread_monitorParallelErrorNC
 	assertexc(ppID);
 	jpp = (*jenv)->GetObjectField(jenv, jobj, ppID);
 	assertexc(jpp);
+#ifdef __linux__
+	wakeup = dkcommWakeupOf(jenv, jpp);
+#endif	/* __linux__ */
 	/* Get the class ID of the parallel port object.*/
 	jppc = (*jenv)->GetObjectClass(jenv, jpp);
 	assertexc(jppc);
@@ -121,7 +124,14 @@ void cygParallelErrorEventThread_monitorParallelErrorNC
 	}
 	while(1)
 	{
+#ifdef __linux__
+		/* Sleep on the port's wakeup descriptor, which ends the wait
+		   as soon as the port starts to close. */
+		if (dkcommWakeupPoll(wakeup, jfd, 0, pollingTime * 1000) < 0 && errno == EBADF)
+			break;
+#else
 		sleep(pollingTime);
+#endif	/* __linux__ */
 		stopThreadFlag = getStopThreadFlag(jenv, jobj);
 		if (stopThreadFlag)
 			break;
@@ -32,6 +32,7 @@
 #include <sys/sem.h> 
 #endif 
 #include <org_eclipse_soda_dk_comm_NSParallelPort.h>
+#include <CommNatives.h>
 #define NOOF_ELEMS(s)	((sizeof(s))/(sizeof(s[0])))
 #ifndef _POSIX_SEMAPHORES
 static struct sembuf	dev_test[] = {
@@ -89,6 +90,9 @@ int cygParallelPort_closeDeviceNC
   (void)tcdrain(fd);
    ***/
 #endif /* QNX */
+#ifdef __linux__
+  dkcommWakeupDestroy(dkcommWakeupOf(jenv, jobj));
+#endif	/* __linux__ */
   return close(fd);
 }	/* cygParallelPort_closeDeviceNC */
 /*
@@ -147,6 +151,12 @@ int cygParallelPort_openDeviceNC
 	(void)fcntl(fd, F_SETFL, sts);
      }
   }
+#ifdef __linux__
+  /* Give the port a wakeup descriptor for its monitors and readers;
+     they find it by the handle kept in the port. */
+  if (fd != -1)
+	dkcommWakeupKeep(jenv, jobj, dkcommWakeupCreate(fd));
+#endif	/* __linux__ */
   (*jenv)->ReleaseStringUTFChars(jenv, name, dname);
   /* If the open has failed and the semaphore was locked, unlock it. */
   if (fd == -1 && semId != -1) {
@@ -292,3 +302,19 @@ jboolean cygParallelPort_isPrinterErrorNC
   return JNI_FALSE;
 #endif /* QNX*/	
 }	/* cygParallelPort_isPrinterErrorNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSParallelPort
+ * Method:    wakeupNC
+ * Signature: (I)I
+ *
+ * Signal the port's wakeup descriptor, releasing every monitor and reader
+ * waiting on the port.
+ */
+int cygParallelPort_wakeupNC(JNIEnv *jenv, jobject jobj, jint jfd) {
+#ifdef __linux__
+  dkcommWakeupSignal(dkcommWakeupOf(jenv, jobj));
+  return 0;
+#else
+  return -2;
+#endif	/* __linux__ */
+}	/* cygParallelPort_wakeupNC */
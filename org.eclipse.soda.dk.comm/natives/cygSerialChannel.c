@@ -0,0 +1,83 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#include <stdio.h>
+#include <errno.h>
+#include <unistd.h>
+#include <org_eclipse_soda_dk_comm_SerialChannel.h>
+#ifdef __linux__
+#include <sys/uio.h>
+#endif /* __linux__ */
+/* Buffers handed to one writev() call; longer arrays go out in batches. */
+#define MAX_IOV	16
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialChannel
+ * Method:    writevNC
+ * Signature: (I[Ljava/nio/ByteBuffer;II[I[I)I
+ *
+ * Write count direct buffers, starting at srcs[offset], with writev().
+ * positions and lengths give each buffer's region.  Short writes are
+ * resumed until everything is out.  Returns the number of bytes written,
+ * -1 on error before anything was written, or -2 when direct buffer
+ * access is not available.
+ */
+int cygSerialChannel_writevNC
+  (JNIEnv *jenv, jclass jcls, jint fd, jobjectArray jsrcs, jint offset, jint count, jintArray jpos, jintArray jlen) {
+#ifdef __linux__
+  struct iovec	iov[MAX_IOV];
+  jint		pos[MAX_IOV];
+  jint		len[MAX_IOV];
+  jobject	jbb;
+  char		*addr;
+  int		done;
+  int		n;
+  int		i;
+  int		total = 0;
+  ssize_t	rc;
+  for (done = 0; done < count; done += n) {
+	n = count - done;
+	if (n > MAX_IOV)
+		n = MAX_IOV;
+	(*jenv)->GetIntArrayRegion(jenv, jpos, done, n, pos);
+	(*jenv)->GetIntArrayRegion(jenv, jlen, done, n, len);
+	for (i = 0; i < n; i++) {
+		jbb = (*jenv)->GetObjectArrayElement(jenv, jsrcs, offset + done + i);
+		addr = (*jenv)->GetDirectBufferAddress(jenv, jbb);
+		(*jenv)->DeleteLocalRef(jenv, jbb);
+		if (addr == NULL)
+			return total > 0 ? total : -2;
+		iov[i].iov_base = addr + pos[i];
+		iov[i].iov_len = len[i];
+	}
+	// Write the batch, skipping past whatever a short write took.
+	i = 0;
+	while (i < n) {
+		rc = writev(fd, iov + i, n - i);
+		if (rc < 0) {
+			if (errno == EINTR)
+				continue;
+			return total > 0 ? total : -1;
+		}
+		total += rc;
+		while (i < n && (size_t)rc >= iov[i].iov_len) {
+			rc -= iov[i].iov_len;
+			i++;
+		}
+		if (i < n) {
+			iov[i].iov_base = (char *)iov[i].iov_base + rc;
+			iov[i].iov_len -= rc;
+		}
+	}
+  }
+  return total;
+#else
+  return -2;
+#endif /* __linux__ */
+} /* cygSerialChannel_writevNC */
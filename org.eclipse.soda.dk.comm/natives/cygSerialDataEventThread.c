@@ -11,10 +11,13 @@
 #include <stdio.h>
 #include <sys/time.h>
 #include <sys/select.h>
+#include <poll.h>
 #include <sys/types.h>
 #include <errno.h>
 #include <unistd.h>
+#include <sys/ioctl.h>
 #include <org_eclipse_soda_dk_comm_SerialDataEventThread.h>
+#include <CommNatives.h>
 #define assertexc(s)       if (!s) {printf("\n\n%d asserted!\n\n", __LINE__); \
 				 return;}
 static int	getPollingTime(JNIEnv *jenv) {
@@ -35,14 +38,10 @@ static int	getPollingTime(JNIEnv *jenv) {
 }	// getPollingTime()
 static int getStopThreadFlag(JNIEnv *jenv, jobject jobj)
 {
-	jclass cls;
 	jfieldID fid;
 	jint stopThreadFlag;
 	
-	cls = (*jenv)->GetObjectClass(jenv, jobj);
-	if (!cls) (*jenv)->FatalError(jenv, "Missing class");
-	
-	fid = (*jenv)->GetFieldID(jenv, cls, "stopThreadFlag", "I");
+	fid = dkcommFieldID(jenv, jobj, &dkcommIDs.dataStopThreadFlag, "stopThreadFlag", "I");
 	if (fid == NULL) (*jenv)->FatalError(jenv, "Missing field");
 	
 	stopThreadFlag = (*jenv)->GetIntField(jenv, jobj, fid);
@@ -56,45 +55,44 @@ static int getStopThreadFlag(JNIEnv *jenv, jobject jobj)
  */
 void cygSerialDataEventThread_monitorSerialDataNC
   (JNIEnv *jenv, jobject jobj, jint jfd) {
-    jclass   jspec; /* serial port event class */
-    fd_set  r_mask;
-    jfieldID   data_available_id;      /* field ID */
-        jint   data_available_event;  /* field value */
         jclass        jc;
         jmethodID     jm;
+        jmethodID     awaitm;
         jfieldID         spID;
         jobject  jsp;
         jclass   jspc;
         jfieldID notifyOnDataAvailableID;
+        jfieldID pushDataID;
         jboolean notifyOnDataAvailableFlag = JNI_FALSE;
         int result;
+	int		pending;
 	int		pollingTime;	/* seconds */
-	struct timeval	tv;
 	jboolean	 isInterruptedReturn;
 	jclass	 jthreadClass;
 	jmethodID	 jintMethod;
 	jint 		stopThreadFlag;
+	jint		wakeup;
 	pollingTime = getPollingTime(jenv);
-        jspec = (*jenv)->FindClass(jenv, "javax/comm/SerialPortEvent");
-        assertexc(jspec);
-        data_available_id = (*jenv)->GetStaticFieldID(jenv, jspec, "DATA_AVAILABLE", "I");
-        assertexc(data_available_id);
-        data_available_event = (*jenv)->GetStaticIntField(jenv, jspec, data_available_id);
         /* Get the serial port object.*/
         jc = (*jenv)->GetObjectClass(jenv, jobj);
         assertexc(jc);
+        awaitm = (*jenv)->GetMethodID(jenv, jc, "awaitRearm", "()V");
+        assertexc(awaitm);
         spID = (*jenv)->GetFieldID(jenv, jc, "serialPort", "Lorg/eclipse/soda/dk/comm/NSSerialPort;");
         assertexc(spID);
         jsp = (*jenv)->GetObjectField(jenv, jobj, spID);
         assertexc(jsp);
+	wakeup = dkcommWakeupOf(jenv, jsp);
         /* Get the class ID of the serial port object.*/
         jspc = (*jenv)->GetObjectClass(jenv, jsp);
         assertexc(jspc);
         /* Get access to the method to add a port.*/
-        jm = (*jenv)->GetMethodID(jenv, jspc, "reportSerialEvent", "(IZZ)V");
+        jm = (*jenv)->GetMethodID(jenv, jspc, "reportDataAvailable", "(I)Z");
         assertexc(jm);
         notifyOnDataAvailableID = (*jenv)->GetFieldID(jenv, jspc, "notifyOnDataFlag", "Z");
         assertexc(notifyOnDataAvailableID);
+        pushDataID = (*jenv)->GetFieldID(jenv, jspc, "pushData", "Z");
+        assertexc(pushDataID);
 	/* Get access to the interrupted method.*/
 	jthreadClass = (*jenv)->FindClass(jenv, "java/lang/Thread");
 	assertexc(jthreadClass);
@@ -111,20 +109,28 @@ void cygSerialDataEventThread_monitorSerialDataNC
 	isInterruptedReturn = (*jenv)->CallBooleanMethod(jenv,jobj,jintMethod);
 	if(isInterruptedReturn == JNI_TRUE)
 		break;
-	(void)memset(&tv, 0, sizeof(tv));
-	tv.tv_sec = pollingTime;
-        FD_ZERO(&r_mask);
-        FD_SET(jfd, &r_mask);
-        result = select(jfd + 1, &r_mask, NULL, NULL, &tv);
+	/* The port's wakeup descriptor ends the wait (with EBADF) as soon
+	   as the port starts to close. */
+        result = dkcommWakeupPoll(wakeup, jfd, POLLIN, pollingTime * 1000);
         if (result == -1 && errno != EINTR)
 		break;
-	if (!result)	// time out
+	if (result <= 0)	// time out
 		continue;
-       if (FD_ISSET(jfd, &r_mask))
 	{
-        notifyOnDataAvailableFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnDataAvailableID);
-         if(notifyOnDataAvailableFlag)
-           (*jenv)->CallVoidMethod(jenv, jsp, jm, data_available_event, JNI_TRUE, JNI_TRUE);
+        notifyOnDataAvailableFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnDataAvailableID) ||
+                                    (*jenv)->GetBooleanField(jenv, jsp, pushDataID);
+         if(notifyOnDataAvailableFlag) {
+           if (ioctl(jfd, FIONREAD, &pending) == -1)
+		pending = 0;
+           /* poll() is level triggered: while an earlier event has not
+              been followed by a read, leave the port alone until the
+              application reads it. */
+           if ((*jenv)->CallBooleanMethod(jenv, jsp, jm, (jint)pending) == JNI_FALSE) {
+		(*jenv)->CallVoidMethod(jenv, jobj, awaitm);
+		if ((*jenv)->ExceptionCheck(jenv))
+			(*jenv)->ExceptionClear(jenv);
+           }
+           }
         }
     }
 } /* cygSerialDataEventThread_monitorSerialDataNC */
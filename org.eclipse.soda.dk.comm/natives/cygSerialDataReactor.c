@@ -0,0 +1,208 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#include <stdio.h>
+#include <errno.h>
+#include <unistd.h>
+#include <stdint.h>
+#include <sys/ioctl.h>
+#include <sys/time.h>
+
+/* The epoll user data carries both the port fd (high word) and its slot in
+   the Java reactor (low word). */
+#define REACTOR_DATA(fd, slot)	((((uint64_t)(unsigned int)(fd)) << 32) | (unsigned int)(slot))
+#define REACTOR_FD(data)	((int)((data) >> 32))
+#define REACTOR_SLOT(data)	((jint)((data) & 0xffffffffu))
+#include <org_eclipse_soda_dk_comm_SerialDataReactor.h>
+#ifdef __linux__
+#include <sys/epoll.h>
+#endif /* __linux__ */
+#define assertexc(s)       if (!s) {printf("\n\n%d asserted!\n\n", __LINE__); \
+				 return;}
+#define MAX_REACTOR_EVENTS	64
+/* Reads made for one push mode port per wakeup before it is re-armed and
+   the other ready ports get their turn. */
+#define MAX_PUSH_READS	8
+#define PUSH_SLOT	((jint)org_eclipse_soda_dk_comm_SerialDataReactor_PUSH_SLOT)
+#ifdef __linux__
+/*
+ * Read what is pending on a push mode port into the reactor's buffer and
+ * hand each chunk to dispatchData with the time it was read.  The port is
+ * read until the driver is empty, up to MAX_PUSH_READS chunks; if data is
+ * still pending after that the entry is modified so epoll reports it again.
+ * When dispatchData answers false the port has no room for another chunk
+ * and has already been taken out of the reactor, so reading stops there.
+ */
+static void pushData(JNIEnv *jenv, jobject jobj, jmethodID jm, jint rd, uint64_t data, char *buf, jint cap)
+{
+  struct epoll_event	ev;
+  struct timeval	tv;
+  int			fd = REACTOR_FD(data);
+  jint			slot = REACTOR_SLOT(data) & ~PUSH_SLOT;
+  jlong			timestamp;
+  jboolean		more;
+  int			pending;
+  int			rc;
+  int			i;
+  for (i = 0; i < MAX_PUSH_READS; i++) {
+	if (ioctl(fd, FIONREAD, &pending) == -1 || pending <= 0)
+		return;
+	rc = read(fd, buf, pending < cap ? pending : cap);
+	if (rc <= 0)
+		return;
+	(void)gettimeofday(&tv, NULL);
+	timestamp = (jlong)tv.tv_sec * 1000 + tv.tv_usec / 1000;
+	more = (*jenv)->CallBooleanMethod(jenv, jobj, jm, slot, (jint)rc, timestamp);
+	if ((*jenv)->ExceptionCheck(jenv)) {
+		(*jenv)->ExceptionDescribe(jenv);
+		(*jenv)->ExceptionClear(jenv);
+		more = JNI_FALSE;
+	}
+	if (!more)
+		return;
+  }
+  ev.events = EPOLLIN | EPOLLET;
+  ev.data.u64 = data;
+  (void)epoll_ctl(rd, EPOLL_CTL_MOD, fd, &ev);
+}	/* pushData() */
+#endif /* __linux__ */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    createNC
+ * Signature: ()I
+ */
+int cygSerialDataReactor_createNC
+  (JNIEnv *jenv, jclass jcls) {
+#ifdef __linux__
+  return epoll_create(MAX_REACTOR_EVENTS);
+#else
+  return -1;
+#endif /* __linux__ */
+} /* cygSerialDataReactor_createNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    closeNC
+ * Signature: (I)V
+ */
+void cygSerialDataReactor_closeNC
+  (JNIEnv *jenv, jclass jcls, jint rd) {
+  if (rd != -1)
+	(void)close(rd);
+} /* cygSerialDataReactor_closeNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    addNC
+ * Signature: (III)I
+ */
+int cygSerialDataReactor_addNC
+  (JNIEnv *jenv, jobject jobj, jint rd, jint fd, jint slot) {
+#ifdef __linux__
+  struct epoll_event	ev;
+  /* Edge triggered: one wakeup per arrival, never a busy loop while the
+     reader is still catching up. */
+  ev.events = EPOLLIN | EPOLLET;
+  ev.data.u64 = REACTOR_DATA(fd, slot);
+  return epoll_ctl(rd, EPOLL_CTL_ADD, fd, &ev);
+#else
+  return -1;
+#endif /* __linux__ */
+} /* cygSerialDataReactor_addNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    rearmNC
+ * Signature: (III)I
+ */
+int cygSerialDataReactor_rearmNC
+  (JNIEnv *jenv, jobject jobj, jint rd, jint fd, jint slot) {
+#ifdef __linux__
+  struct epoll_event	ev;
+  /* Modifying the entry makes epoll re-check the fd, so data that is
+     still pending produces a fresh edge. */
+  ev.events = EPOLLIN | EPOLLET;
+  ev.data.u64 = REACTOR_DATA(fd, slot);
+  return epoll_ctl(rd, EPOLL_CTL_MOD, fd, &ev);
+#else
+  return -1;
+#endif /* __linux__ */
+} /* cygSerialDataReactor_rearmNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    removeNC
+ * Signature: (II)I
+ */
+int cygSerialDataReactor_removeNC
+  (JNIEnv *jenv, jobject jobj, jint rd, jint fd) {
+#ifdef __linux__
+  struct epoll_event	ev;	/* ignored, but must be non-NULL before 2.6.9 */
+  return epoll_ctl(rd, EPOLL_CTL_DEL, fd, &ev);
+#else
+  return -1;
+#endif /* __linux__ */
+} /* cygSerialDataReactor_removeNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    monitorNC
+ * Signature: (I)V
+ */
+void cygSerialDataReactor_monitorNC
+  (JNIEnv *jenv, jobject jobj, jint rd) {
+#ifdef __linux__
+  struct epoll_event	events[MAX_REACTOR_EVENTS];
+  jclass		jc;
+  jmethodID		jm;
+  jmethodID		jdm;
+  jfieldID		jf;
+  jobject		jbuf;
+  char			*pushbuf;
+  jint			pushcap;
+  int			n;
+  int			i;
+  int			pending;
+  /* Get access to the dispatch method once; it is reused for every event. */
+  jc = (*jenv)->GetObjectClass(jenv, jobj);
+  assertexc(jc);
+  jm = (*jenv)->GetMethodID(jenv, jc, "dispatch", "(II)V");
+  assertexc(jm);
+  jdm = (*jenv)->GetMethodID(jenv, jc, "dispatchData", "(IIJ)Z");
+  assertexc(jdm);
+  /* The push buffer lives as long as the reactor object. */
+  jf = (*jenv)->GetFieldID(jenv, jc, "pushBuffer", "Ljava/nio/ByteBuffer;");
+  assertexc(jf);
+  jbuf = (*jenv)->GetObjectField(jenv, jobj, jf);
+  assertexc(jbuf);
+  pushbuf = (*jenv)->GetDirectBufferAddress(jenv, jbuf);
+  pushcap = (jint)(*jenv)->GetDirectBufferCapacity(jenv, jbuf);
+  while (1) {
+	/* Block until one of the registered ports is readable; an idle
+	   reactor costs no wakeups at all. */
+	n = epoll_wait(rd, events, MAX_REACTOR_EVENTS, -1);
+	if (n == -1) {
+		if (errno == EINTR)
+			continue;
+		break;
+	}
+	for (i = 0; i < n; i++) {
+		if ((REACTOR_SLOT(events[i].data.u64) & PUSH_SLOT) && pushbuf != NULL) {
+			if (events[i].events & EPOLLIN)
+				pushData(jenv, jobj, jdm, rd, events[i].data.u64, pushbuf, pushcap);
+			continue;
+		}
+		/* Hand the listener the number of bytes it can read in one go. */
+		if (ioctl(REACTOR_FD(events[i].data.u64), FIONREAD, &pending) == -1)
+			pending = 0;
+		(*jenv)->CallVoidMethod(jenv, jobj, jm, REACTOR_SLOT(events[i].data.u64) & ~PUSH_SLOT, (jint)pending);
+		if ((*jenv)->ExceptionCheck(jenv)) {
+			(*jenv)->ExceptionDescribe(jenv);
+			(*jenv)->ExceptionClear(jenv);
+		}
+	}
+  }
+#endif /* __linux__ */
+} /* cygSerialDataReactor_monitorNC */
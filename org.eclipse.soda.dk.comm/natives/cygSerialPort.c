@@ -23,6 +23,7 @@
 #ifdef __linux__
  //#include <asm/ioctls.h>
  #include <sys/ioctl.h>
+ #include <linux/serial.h>
  //#include <asm/termios.h>
  #include <termios.h>
  #endif	/* __linux__ */
@@ -35,6 +36,7 @@
 #include <sys/sem.h> 
 #endif 
 #include <org_eclipse_soda_dk_comm_NSSerialPort.h>
+#include <CommNatives.h>
 #define assertexc(s) if (!s) {printf("\n\n%d asserted!\n\n", __LINE__); return(-1);}
 #define NOOF_ELEMS(s)	((sizeof(s))/(sizeof(s[0])))
 #ifndef _POSIX_SEMAPHORES
@@ -105,6 +107,9 @@ int cygSerialPort_closeDeviceNC
 # ifdef QNX
   (void)tcdrain(fd);
 #endif /* QNX */
+#ifdef __linux__
+  dkcommWakeupDestroy(dkcommWakeupOf(jenv, jobj));
+#endif	/* __linux__ */
   return close(fd);
 }	/* cygSerialPort_closeDeviceNC */
 int cygSerialPort_openDeviceNC
@@ -196,6 +201,12 @@ int cygSerialPort_openDeviceNC
 	}
   }
 #endif
+#ifdef __linux__
+  /* Give the port a wakeup descriptor for its monitors and readers;
+     they find it by the handle kept in the port. */
+  if (fd != -1)
+	dkcommWakeupKeep(jenv, jobj, dkcommWakeupCreate(fd));
+#endif	/* __linux__ */
   (*jenv)->ReleaseStringUTFChars(jenv, name, dname);
   /* If the open has failed and the semaphore was locked, unlock it. */
   if (fd == -1 && semId != -1) {
@@ -686,3 +697,97 @@ int cygSerialPort_setSerialPortParamsNC
   rc = tcsetattr(jfd, TCSANOW, &ios);
   return rc;
 } /* cygSerialPort_setSerialPortParamsNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    getErrorCountsNC
+ * Signature: (I[I)I
+ */
+int cygSerialPort_getErrorCountsNC(JNIEnv *jenv, jobject jobj, jint jfd, jintArray jcounts) {
+#if defined(__linux__) && defined(TIOCGICOUNT)
+  struct serial_icounter_struct	icount;
+  jint				counts[5];
+  jsize				len;
+  // One ioctl; the driver keeps the running totals for us.
+  if (ioctl(jfd, TIOCGICOUNT, &icount) == -1)
+	return -1;
+  counts[0] = icount.overrun;
+  counts[1] = icount.parity;
+  counts[2] = icount.frame;
+  counts[3] = icount.brk;
+  counts[4] = icount.buf_overrun;
+  len = (*jenv)->GetArrayLength(jenv, jcounts);
+  if (len > 5)
+	len = 5;
+  (*jenv)->SetIntArrayRegion(jenv, jcounts, 0, len, counts);
+  return len;
+#else
+  return -1;
+#endif
+} /* cygSerialPort_getErrorCountsNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    setReceiveModeNC
+ * Signature: (III)I
+ */
+int cygSerialPort_setReceiveModeNC(JNIEnv *jenv, jobject jobj, jint jfd, jint vmin, jint vtime) {
+#ifdef __linux__
+  struct termios	io;
+  if (tcgetattr(jfd, &io) == -1)
+	return -1;
+  // Let the line discipline wait for the threshold and timeout so a
+  // read() returns only once it has something worth returning.
+  io.c_cc[VMIN] = (cc_t)vmin;
+  io.c_cc[VTIME] = (cc_t)vtime;
+  return tcsetattr(jfd, TCSANOW, &io);
+#else
+  return -1;
+#endif /* __linux__ */
+} /* cygSerialPort_setReceiveModeNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    drainNC
+ * Signature: (I)I
+ */
+int cygSerialPort_drainNC(JNIEnv *jenv, jobject jobj, jint jfd) {
+#ifdef __linux__
+  int	rc;
+  // Blocks until the driver reports everything written has left the UART.
+  do {
+	rc = tcdrain(jfd);
+  } while (rc == -1 && errno == EINTR);
+  return rc;
+#else
+  return -1;
+#endif /* __linux__ */
+} /* cygSerialPort_drainNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    getOutputQueueNC
+ * Signature: (I)I
+ */
+int cygSerialPort_getOutputQueueNC(JNIEnv *jenv, jobject jobj, jint jfd) {
+#if defined(__linux__) && defined(TIOCOUTQ)
+  int	queued;
+  if (ioctl(jfd, TIOCOUTQ, &queued) == -1)
+	return -1;
+  return queued;
+#else
+  return -1;
+#endif
+} /* cygSerialPort_getOutputQueueNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    wakeupNC
+ * Signature: (I)I
+ *
+ * Signal the port's wakeup descriptor, releasing every monitor and reader
+ * waiting on the port.
+ */
+int cygSerialPort_wakeupNC(JNIEnv *jenv, jobject jobj, jint jfd) {
+#ifdef __linux__
+  dkcommWakeupSignal(dkcommWakeupOf(jenv, jobj));
+  return 0;
+#else
+  return -2;
+#endif	/* __linux__ */
+}	/* cygSerialPort_wakeupNC */
@@ -0,0 +1,152 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#include <stdio.h>
+#include <errno.h>
+#include <unistd.h>
+#include <poll.h>
+#include <org_eclipse_soda_dk_comm_SerialReceiveRing.h>
+#include <CommNatives.h>
+/* How long one poll() waits before the stop flag is checked again. */
+#define RING_POLL_MS	100
+/* The header after the data; these must match SerialReceiveRing. */
+#define RING_HEAD	0
+#define RING_HIGH_WATER	4
+#define RING_FULL_COUNT	8
+#define RING_TAIL	64
+#define RING_WAITING	68
+#define RING_NOTIFY	72
+#define RING_STOP	76
+/* One header slot, read and written whole. */
+#define RING_SLOT(hdr, off)	(*(volatile jint *)((hdr) + (off)))
+/*
+ * Order the pump's accesses against the consumer's.  The consumer pairs
+ * this with its volatile fence field.
+ */
+#define RING_FENCE()	__sync_synchronize()
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialReceiveRing
+ * Method:    pumpNC
+ * Signature: (ILjava/nio/ByteBuffer;I)I
+ *
+ * Read fd into the direct buffer ring until the stop flag is set or the
+ * device fails.  capacity is a power of two; the ring's header follows
+ * that many data bytes.  The ring is single producer, single consumer:
+ * this loop is the only writer of head, highWater and fullCount, and the
+ * Java consumer is the only writer of tail.  All of them, and the flags,
+ * are in the header, so moving data takes no JNI call.  The pump calls
+ * back into Java only after a read, and only to wake a waiting consumer
+ * or to raise DATA_AVAILABLE while those events are wanted, and when it
+ * finds the ring full, to sleep until the consumer frees space.  A hang
+ * up (a read of 0 bytes, or POLLHUP or POLLERR once the data is read)
+ * ends the pump like any other device error.  Returns 0 when stopped,
+ * -1 on a device error, -2 if the buffer is not direct.
+ */
+int cygSerialReceiveRing_pumpNC
+  (JNIEnv *jenv, jobject jobj, jint fd, jobject jring, jint capacity) {
+  jclass	jc;
+  jmethodID	producedm;
+  jmethodID	awaitm;
+  char		*base;
+  char		*hdr;
+  jint		head;
+  jint		used;
+  jint		high;
+  jint		mask = capacity - 1;
+  jint		wakeup;
+  int		pos;
+  int		room;
+  int		rc;
+  base = (*jenv)->GetDirectBufferAddress(jenv, jring);
+  if (base == NULL)
+	return -2;
+  hdr = base + capacity;
+  jc = (*jenv)->GetObjectClass(jenv, jobj);
+  producedm = (*jenv)->GetMethodID(jenv, jc, "produced", "()V");
+  awaitm = (*jenv)->GetMethodID(jenv, jc, "awaitSpace", "()V");
+  (*jenv)->DeleteLocalRef(jenv, jc);
+  if (!producedm || !awaitm)
+	return -1;
+  wakeup = dkcommWakeupOf(jenv, jobj);
+  head = RING_SLOT(hdr, RING_HEAD);
+  high = RING_SLOT(hdr, RING_HIGH_WATER);
+  rc = 0;
+  for (;;) {
+	RING_FENCE();
+	if (RING_SLOT(hdr, RING_STOP))
+		break;
+	used = head - RING_SLOT(hdr, RING_TAIL);
+	if (used >= capacity) {
+		// Leave the data in the kernel until the consumer catches up;
+		// it wakes the pump once it has freed space.
+		RING_SLOT(hdr, RING_FULL_COUNT) += 1;
+		(*jenv)->CallVoidMethod(jenv, jobj, awaitm);
+		if ((*jenv)->ExceptionCheck(jenv))
+			(*jenv)->ExceptionClear(jenv);
+		continue;
+	}
+	// The space freed by the consumer must not be written before its
+	// copy out of it is done.
+	RING_FENCE();
+	// The port's wakeup descriptor ends the wait as soon as the port
+	// starts to close.
+	rc = dkcommWakeupPoll(wakeup, fd, POLLIN, RING_POLL_MS);
+	if (rc < 0) {
+		if (errno == EINTR)
+			continue;
+		rc = errno == EBADF ? 0 : -1;
+		break;
+	}
+	if (rc == 0)
+		continue;
+	// With POLLHUP or POLLERR, what is left is read first; the read of 0
+	// bytes that follows ends the pump.
+	if (!(rc & POLLIN)) {
+		rc = -1;
+		break;
+	}
+	// Read into the free space up to the physical end of the ring; a
+	// wrap is picked up by the next pass.
+	pos = (int)(head & mask);
+	room = (int)(capacity - used);
+	if (room > capacity - pos)
+		room = capacity - pos;
+	rc = read(fd, base + pos, room);
+	if (rc < 0) {
+		if (errno == EINTR || errno == EAGAIN)
+			continue;
+		rc = -1;
+		break;
+	}
+	if (rc == 0) {
+		// Readable but nothing read: the device has hung up.
+		rc = -1;
+		break;
+	}
+	head += rc;
+	// The bytes must be visible before the new head is.
+	RING_FENCE();
+	RING_SLOT(hdr, RING_HEAD) = head;
+	if (used + rc > high) {
+		high = used + rc;
+		RING_SLOT(hdr, RING_HIGH_WATER) = high;
+	}
+	// The head must be visible before waiting is read, or a consumer
+	// that just started waiting could miss this batch.
+	RING_FENCE();
+	if (RING_SLOT(hdr, RING_WAITING) || RING_SLOT(hdr, RING_NOTIFY)) {
+		(*jenv)->CallVoidMethod(jenv, jobj, producedm);
+		if ((*jenv)->ExceptionCheck(jenv))
+			(*jenv)->ExceptionClear(jenv);
+	}
+	rc = 0;
+  }
+  return rc;
+}	/* cygSerialReceiveRing_pumpNC */
@@ -9,57 +9,149 @@
  *     IBM - initial API and implementation                              *
  ************************************************************************/
 #include <stdio.h>
+#include <string.h>
 #include <errno.h>
+#include <signal.h>
+#include <poll.h>
+#include <pthread.h>
 #include <sys/ioctl.h>
+#ifdef __linux__
+#include <linux/serial.h>
+#endif /* __linux__ */
 #include <org_eclipse_soda_dk_comm_SerialStatusEventThread.h>
+#include <CommNatives.h>
 #define assertexc(s)       if (!s) {printf("\n\n%d asserted!\n\n", __LINE__); \
 				 return;}
-static int	getPollingTime(JNIEnv *jenv) {
-  int		ptime = 5;
-  jclass	cic;
-  jfieldID	ptID;
-  jint		pt;
+#ifndef FALSE
+#define FALSE 0
+#endif
+#ifndef TRUE
+#define TRUE 1
+#endif
+#define MODEM_LINES		(TIOCM_CD | TIOCM_CTS | TIOCM_DSR | TIOCM_RNG)
+#define MAX_REPORTED_EDGES	16
+#ifdef __linux__
+/* Signal used to knock a monitor out of TIOCMIWAIT when the port stops
+   monitoring.  The JDK uses SIGRTMAX - 2 for the same purpose; stay clear
+   of it. */
+#define WAKEUP_SIGNAL		(SIGRTMAX - 3)
+static int	wakeupInstalled = -1;
+static void wakeup_handler(int sig)
+{
+	/* Nothing to do; delivery alone interrupts the blocked ioctl. */
+}
+/*
+ * Install the wakeup handler once, without SA_RESTART so that a blocked
+ * TIOCMIWAIT returns EINTR.  The handler is only installed if nobody else
+ * owns the signal; otherwise the monitor sticks to sampling.
+ */
+static int install_wakeup_handler(void)
+{
+	struct sigaction	sa;
+	if (wakeupInstalled != -1)
+		return wakeupInstalled;
+	wakeupInstalled = FALSE;
+	if (sigaction(WAKEUP_SIGNAL, NULL, &sa) == 0 && sa.sa_handler == SIG_DFL) {
+		(void)memset(&sa, 0, sizeof(sa));
+		sa.sa_handler = wakeup_handler;
+		(void)sigemptyset(&sa.sa_mask);
+		if (sigaction(WAKEUP_SIGNAL, &sa, NULL) == 0)
+			wakeupInstalled = TRUE;
+	}
+	return wakeupInstalled;
+}	// install_wakeup_handler()
+#endif /* __linux__ */
+static void setNativeThread(JNIEnv *jenv, jobject jobj, jlong value)
+{
+	jclass cls;
+	jfieldID fid;
+	cls = (*jenv)->GetObjectClass(jenv, jobj);
+	if (!cls) (*jenv)->FatalError(jenv, "Missing class");
+	fid = (*jenv)->GetFieldID(jenv, cls, "nativeThread", "J");
+	if (fid == NULL) (*jenv)->FatalError(jenv, "Missing field");
+	/* Synchronize with setStopThreadFlag() so a wakeup is never sent to a
+	   thread that has already left the monitor. */
+	(*jenv)->MonitorEnter(jenv, jobj);
+	(*jenv)->SetLongField(jenv, jobj, fid, value);
+	(*jenv)->MonitorExit(jenv, jobj);
+}	// setNativeThread()
+static int	getPollingInterval(JNIEnv *jenv, jobject jobj) {
+  int		interval = 100;
+  jclass	cls;
+  jfieldID	fid;
+  jint		pi;
   do {
-	cic = (*jenv)->FindClass(jenv, "javax/comm/CommPortIdentifier");
-	if (!cic) break;
-	ptID = (*jenv)->GetStaticFieldID(jenv, cic, "pollingTime", "I");
-	if (!ptID) break;
-	pt = (*jenv)->GetStaticIntField(jenv, cic, ptID);
-	if (pt > 0)
-		ptime = pt;
+	cls = (*jenv)->GetObjectClass(jenv, jobj);
+	if (!cls) break;
+	fid = (*jenv)->GetFieldID(jenv, cls, "pollingInterval", "I");
+	if (!fid) break;
+	pi = (*jenv)->GetIntField(jenv, jobj, fid);
+	if (pi > 0)
+		interval = pi;
   } while (0);
-  return ptime;
-}	// getPollingTime()
+  return interval;
+}	// getPollingInterval()
 static int getStopThreadFlag(JNIEnv *jenv, jobject jobj)
 {
-	jclass cls;
 	jfieldID fid;
 	jint stopThreadFlag;
 	
-	cls = (*jenv)->GetObjectClass(jenv, jobj);
-	if (!cls) (*jenv)->FatalError(jenv, "Missing class");
-	
-	fid = (*jenv)->GetFieldID(jenv, cls, "stopThreadFlag", "I");
+	fid = dkcommFieldID(jenv, jobj, &dkcommIDs.statusStopThreadFlag, "stopThreadFlag", "I");
 	if (fid == NULL) (*jenv)->FatalError(jenv, "Missing field");
 	
 	stopThreadFlag = (*jenv)->GetIntField(jenv, jobj, fid);
 	
 	return stopThreadFlag;	
 } 
+/*
+ * Report the transitions of one modem line.  transitions is the number of
+ * edges counted by the driver since the last sample (0 if unknown); it is
+ * corrected so that the last reported value always matches the current
+ * line level, so a pulse shorter than the sampling gap is still seen as
+ * two events instead of none.
+ */
+static void reportLine(JNIEnv *jenv, jobject jsp, jmethodID jm, jint type,
+		       int oldbit, int newbit, int transitions)
+{
+	jboolean	value = oldbit ? JNI_TRUE : JNI_FALSE;
+	if (transitions < 0)
+		transitions = 0;
+	if (((transitions & 1) != 0) != ((oldbit != 0) != (newbit != 0)))
+		transitions++;
+	if (transitions > MAX_REPORTED_EDGES)
+		transitions = MAX_REPORTED_EDGES + (transitions & 1);
+	while (transitions-- > 0) {
+		(*jenv)->CallVoidMethod(jenv, jsp, jm, type, value, (jboolean)!value);
+		value = !value;
+	}
+}	// reportLine()
 /*
  * Class:     org_eclipse_soda_dk_comm_SerialStatusEventThread
  * Method:    monitorSerialStatusNC
  * Signature: (I)V
  */
 void cygSerialStatusEventThread_monitorSerialStatusNC(JNIEnv *jenv, jobject jobj, jint jfd) {
-	int		pollingTime;	/* seconds */
+	int		pollingInterval;	/* milliseconds */
+	int		useWait = FALSE;
+	int		useCount = FALSE;
 	int oldStatus, newStatus;
+#ifdef __linux__
+	struct serial_icounter_struct	oldCount, newCount;
+#endif /* __linux__ */
+	int		cdEdges, ctsEdges, dsrEdges, riEdges;
+	int		oeCount, peCount, feCount, biCount;
 	jfieldID notifyOnCDID, notifyOnCTSID;
 	jfieldID notifyOnDSRID, notifyOnRIID;
+	jfieldID notifyOnORID, notifyOnPEID;
+	jfieldID notifyOnFEID, notifyOnBIID;
 	jboolean notifyOnCDFlag = JNI_FALSE;
 	jboolean notifyOnCTSFlag = JNI_FALSE;
 	jboolean notifyOnDSRFlag = JNI_FALSE;
 	jboolean notifyOnRIFlag = JNI_FALSE;
+	jboolean notifyOnORFlag = JNI_FALSE;
+	jboolean notifyOnPEFlag = JNI_FALSE;
+	jboolean notifyOnFEFlag = JNI_FALSE;
+	jboolean notifyOnBIFlag = JNI_FALSE;
 	jclass        jc;
 	jmethodID     jm;
 	jclass	 jspc;
@@ -68,12 +160,18 @@ void cygSerialStatusEventThread_monitorSerialStatusNC(JNIEnv *jenv, jobject jobj
 	jboolean	 isInterruptedReturn;
 	jclass	 jspec;	/* serial port event class */
 	jfieldID	 speCDID,speCTSID, speDSRID, speRIID ;	/* field ID */
+	jfieldID	 speOEID, spePEID, speFEID, speBIID;	/* field ID */
 	jint		 speCD, speCTS, speDSR, speRI;	/* field value */
+	jint		 speOE, spePE, speFE, speBI;	/* field value */
 	jmethodID	 jintMethod;
 	jclass	 jthreadClass;
 	jint 		stopThreadFlag;
+	jfieldID	 wakeupRequestID, wakeupAckID;
+#ifdef __linux__
+	jint		wakeup;
+#endif /* __linux__ */
 	
-	pollingTime = getPollingTime(jenv);
+	pollingInterval = getPollingInterval(jenv, jobj);
 	/* Get the const values for all the serial port event types.*/
 	jspec = (*jenv)->FindClass(jenv, "javax/comm/SerialPortEvent");
 	assertexc(jspec);
@@ -89,6 +187,18 @@ void cygSerialStatusEventThread_monitorSerialStatusNC(JNIEnv *jenv, jobject jobj
 	speRIID = (*jenv)->GetStaticFieldID(jenv, jspec, "RI", "I");
 	assertexc(speRIID);
 	speRI = (*jenv)->GetStaticIntField(jenv, jspec, speRIID);
+	speOEID = (*jenv)->GetStaticFieldID(jenv, jspec, "OE", "I");
+	assertexc(speOEID);
+	speOE = (*jenv)->GetStaticIntField(jenv, jspec, speOEID);
+	spePEID = (*jenv)->GetStaticFieldID(jenv, jspec, "PE", "I");
+	assertexc(spePEID);
+	spePE = (*jenv)->GetStaticIntField(jenv, jspec, spePEID);
+	speFEID = (*jenv)->GetStaticFieldID(jenv, jspec, "FE", "I");
+	assertexc(speFEID);
+	speFE = (*jenv)->GetStaticIntField(jenv, jspec, speFEID);
+	speBIID = (*jenv)->GetStaticFieldID(jenv, jspec, "BI", "I");
+	assertexc(speBIID);
+	speBI = (*jenv)->GetStaticIntField(jenv, jspec, speBIID);
 	/* Get the serial port object.*/
 	jc = (*jenv)->GetObjectClass(jenv, jobj);
 	assertexc(jc);
@@ -96,6 +206,9 @@ void cygSerialStatusEventThread_monitorSerialStatusNC(JNIEnv *jenv, jobject jobj
 	assertexc(spID);
 	jsp = (*jenv)->GetObjectField(jenv, jobj, spID);
 	assertexc(jsp);
+#ifdef __linux__
+	wakeup = dkcommWakeupOf(jenv, jsp);
+#endif /* __linux__ */
 	/* Get the class ID of the serial port object.*/
 	jspc = (*jenv)->GetObjectClass(jenv, jsp);
 	assertexc(jspc);
@@ -107,6 +220,14 @@ void cygSerialStatusEventThread_monitorSerialStatusNC(JNIEnv *jenv, jobject jobj
 	assertexc(notifyOnDSRID);
 	notifyOnRIID = (*jenv)->GetFieldID(jenv, jspc, "notifyOnRIFlag", "Z");
 	assertexc(notifyOnRIID);
+	notifyOnORID = (*jenv)->GetFieldID(jenv, jspc, "notifyOnORFlag", "Z");
+	assertexc(notifyOnORID);
+	notifyOnPEID = (*jenv)->GetFieldID(jenv, jspc, "notifyOnPEFlag", "Z");
+	assertexc(notifyOnPEID);
+	notifyOnFEID = (*jenv)->GetFieldID(jenv, jspc, "notifyOnFEFlag", "Z");
+	assertexc(notifyOnFEID);
+	notifyOnBIID = (*jenv)->GetFieldID(jenv, jspc, "notifyOnBIFlag", "Z");
+	assertexc(notifyOnBIID);
 	/* Get access to the method to add a port.*/
 	jm = (*jenv)->GetMethodID(jenv, jspc, "reportSerialEvent", "(IZZ)V");
 	assertexc(jm);
@@ -115,13 +236,31 @@ void cygSerialStatusEventThread_monitorSerialStatusNC(JNIEnv *jenv, jobject jobj
 	assertexc(jthreadClass);
 	jintMethod = (*jenv)->GetMethodID(jenv, jthreadClass, "isInterrupted", "()Z");
 	assertexc(jintMethod);
+	wakeupRequestID = (*jenv)->GetFieldID(jenv, jc, "wakeupRequest", "I");
+	assertexc(wakeupRequestID);
+	wakeupAckID = (*jenv)->GetFieldID(jenv, jc, "wakeupAck", "I");
+	assertexc(wakeupAckID);
 	if (ioctl(jfd, TIOCMGET, &oldStatus) < 0) {
 		(void)fprintf(stderr, "Java_org_eclipse_soda_dk_comm_SerialStatusEventThread_monitorSerialStatusNC: ioctl error %d!\n", errno);
 		return;
 	}
+#ifdef __linux__
+	/* Prefer blocking on TIOCMIWAIT; it needs a way to be woken up when
+	   the monitor is stopped.  Edge counters, where the driver keeps them,
+	   let us report pulses that came and went between two samples. */
+	useWait = install_wakeup_handler();
+	useCount = ioctl(jfd, TIOCGICOUNT, &oldCount) == 0;
+	if (useWait)
+		setNativeThread(jenv, jobj, (jlong)pthread_self());
+#endif /* __linux__ */
 	while(1)
 	{
-		sleep(pollingTime);
+		/* Acknowledge the wakeups asked for so far before reading the
+		   flags they were sent for; wakeup() keeps signalling until it
+		   sees the acknowledgement, so a signal that arrives before the
+		   ioctl below is not lost. */
+		(*jenv)->SetIntField(jenv, jobj, wakeupAckID,
+				     (*jenv)->GetIntField(jenv, jobj, wakeupRequestID));
 		stopThreadFlag = getStopThreadFlag(jenv, jobj);
 		if (stopThreadFlag)
 			break;
@@ -129,40 +268,95 @@ void cygSerialStatusEventThread_monitorSerialStatusNC(JNIEnv *jenv, jobject jobj
 		isInterruptedReturn = (*jenv)->CallBooleanMethod(jenv,jobj,jintMethod);
 		if(isInterruptedReturn == JNI_TRUE)
 			break;
+		notifyOnORFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnORID);
+		notifyOnPEFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnPEID);
+		notifyOnFEFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnFEID);
+		notifyOnBIFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnBIID);
+#ifdef __linux__
+		/* TIOCMIWAIT only wakes up on modem line changes, so line errors
+		   are sampled from the counters while anybody is listening. */
+		if (useWait && !(useCount && (notifyOnORFlag || notifyOnPEFlag || notifyOnFEFlag || notifyOnBIFlag))) {
+			if (ioctl(jfd, TIOCMIWAIT, MODEM_LINES) < 0) {
+				if (errno == EINTR)
+					continue;	/* woken up; re-check the stop flag */
+				if (errno != EINVAL && errno != ENOTTY && errno != ENOSYS) {
+					(void)fprintf(stderr, "Java_org_eclipse_soda_dk_comm_SerialStatusEventThread_monitorSerialStatusNC: ioctl error %d!\n", errno);
+					break;
+				}
+				/* Not supported by this driver; fall back to sampling. */
+				useWait = FALSE;
+				continue;
+			}
+		} else
+#endif /* __linux__ */
+		{
+#ifdef __linux__
+			/* Sample on the port's wakeup descriptor, which ends
+			   the wait as soon as the port starts to close. */
+			if (dkcommWakeupPoll(wakeup, jfd, 0, pollingInterval) < 0 && errno == EBADF)
+				break;
+#else
+			(void)poll(NULL, 0, pollingInterval);
+#endif /* __linux__ */
+		}
 		notifyOnCDFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnCDID);
 		notifyOnCTSFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnCTSID);
 		notifyOnDSRFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnDSRID);
 		notifyOnRIFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnRIID);
 		if (ioctl(jfd, TIOCMGET, &newStatus) < 0) {
 			(void)fprintf(stderr, "Java_org_eclipse_soda_dk_comm_SerialStatusEventThread_monitorSerialStatusNC: ioctl error %d!\n", errno);
-			return;
-		}
-		if (newStatus == oldStatus)
-			continue;
-		if((newStatus & TIOCM_CD) != (oldStatus & TIOCM_CD))
-		{
-			if(notifyOnCDFlag)        /* need to use jsp to access this field */
-				(*jenv)->CallVoidMethod(jenv, jsp, jm, speCD,
-				    (oldStatus & TIOCM_CD)? JNI_TRUE:JNI_FALSE,(newStatus & TIOCM_CD)? JNI_TRUE:JNI_FALSE);
-		}
-		if((newStatus & TIOCM_CTS) != (oldStatus & TIOCM_CTS))
-		{
-			if(notifyOnCTSFlag)
-				(*jenv)->CallVoidMethod(jenv, jsp, jm, speCTS,
-				    (oldStatus & TIOCM_CTS)? JNI_TRUE:JNI_FALSE,(newStatus & TIOCM_CTS)? JNI_TRUE:JNI_FALSE);
-		}
-		if((newStatus & TIOCM_DSR) != (oldStatus & TIOCM_DSR))
-		{
-			if(notifyOnDSRFlag)
-				(*jenv)->CallVoidMethod(jenv, jsp, jm, speDSR,
-				    (oldStatus & TIOCM_DSR)? JNI_TRUE:JNI_FALSE,(newStatus & TIOCM_DSR)? JNI_TRUE:JNI_FALSE);
+			break;
 		}
-		if((newStatus & TIOCM_RI) != (oldStatus & TIOCM_RI))
-		{
-			if(notifyOnRIFlag)
-				(*jenv)->CallVoidMethod(jenv, jsp, jm, speRI,
-				    (oldStatus & TIOCM_RI)? JNI_TRUE:JNI_FALSE,(newStatus & TIOCM_RI)? JNI_TRUE:JNI_FALSE);
+		cdEdges = ctsEdges = dsrEdges = riEdges = 0;
+		oeCount = peCount = feCount = biCount = 0;
+#ifdef __linux__
+		if (useCount && ioctl(jfd, TIOCGICOUNT, &newCount) == 0) {
+			cdEdges = newCount.dcd - oldCount.dcd;
+			ctsEdges = newCount.cts - oldCount.cts;
+			dsrEdges = newCount.dsr - oldCount.dsr;
+			/* The driver counts only the trailing edge of RI. */
+			riEdges = 2 * (newCount.rng - oldCount.rng);
+			if (riEdges && (oldStatus & TIOCM_RI) && !(newStatus & TIOCM_RI))
+				riEdges--;
+			oeCount = (newCount.overrun - oldCount.overrun) + (newCount.buf_overrun - oldCount.buf_overrun);
+			peCount = newCount.parity - oldCount.parity;
+			feCount = newCount.frame - oldCount.frame;
+			biCount = newCount.brk - oldCount.brk;
+			oldCount = newCount;
 		}
+#endif /* __linux__ */
+		/* Line errors have no level; report one event per sample in
+		   which the driver counted any. */
+		if (notifyOnORFlag && oeCount > 0)
+			(*jenv)->CallVoidMethod(jenv, jsp, jm, speOE, JNI_FALSE, JNI_TRUE);
+		if (notifyOnPEFlag && peCount > 0)
+			(*jenv)->CallVoidMethod(jenv, jsp, jm, spePE, JNI_FALSE, JNI_TRUE);
+		if (notifyOnFEFlag && feCount > 0)
+			(*jenv)->CallVoidMethod(jenv, jsp, jm, speFE, JNI_FALSE, JNI_TRUE);
+		if (notifyOnBIFlag && biCount > 0)
+			(*jenv)->CallVoidMethod(jenv, jsp, jm, speBI, JNI_FALSE, JNI_TRUE);
+		if (newStatus == oldStatus && !cdEdges && !ctsEdges && !dsrEdges && !riEdges)
+			continue;
+		if(notifyOnCDFlag)        /* need to use jsp to access this field */
+			reportLine(jenv, jsp, jm, speCD, oldStatus & TIOCM_CD, newStatus & TIOCM_CD, cdEdges);
+		if(notifyOnCTSFlag)
+			reportLine(jenv, jsp, jm, speCTS, oldStatus & TIOCM_CTS, newStatus & TIOCM_CTS, ctsEdges);
+		if(notifyOnDSRFlag)
+			reportLine(jenv, jsp, jm, speDSR, oldStatus & TIOCM_DSR, newStatus & TIOCM_DSR, dsrEdges);
+		if(notifyOnRIFlag)
+			reportLine(jenv, jsp, jm, speRI, oldStatus & TIOCM_RI, newStatus & TIOCM_RI, riEdges);
 		oldStatus = newStatus;
 	}	/* end of while() */
+	setNativeThread(jenv, jobj, (jlong)0);
 } /* cygSerialStatusEventThread_monitorSerialStatusNC */
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialStatusEventThread
+ * Method:    wakeupNC
+ * Signature: (J)V
+ */
+void cygSerialStatusEventThread_wakeupNC(JNIEnv *jenv, jobject jobj, jlong thread) {
+#ifdef __linux__
+	if (thread != 0 && wakeupInstalled == TRUE)
+		(void)pthread_kill((pthread_t)thread, WAKEUP_SIGNAL);
+#endif /* __linux__ */
+} /* cygSerialStatusEventThread_wakeupNC */
@@ -22,6 +22,13 @@ extern "C" {
  */
 JNIEXPORT void JNICALL Java_org_eclipse_soda_dk_comm_NSCommDriver_discoverDevicesNC
   (JNIEnv *, jobject);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSCommDriver
+ * Method:    watchDevicesNC
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSCommDriver_watchDevicesNC
+  (JNIEnv *, jobject);
 #ifdef __cplusplus
 }
 #endif
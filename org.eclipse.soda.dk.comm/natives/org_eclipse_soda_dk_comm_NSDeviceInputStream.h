@@ -36,6 +36,20 @@ JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readDev
  */
 JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_getReadCountNC
   (JNIEnv *, jobject);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceInputStream
+ * Method:    readFrameNC
+ * Signature: ([BIII)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readFrameNC
+  (JNIEnv *, jobject, jbyteArray, jint, jint, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceInputStream
+ * Method:    readDirectNC
+ * Signature: (Ljava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceInputStream_readDirectNC
+  (JNIEnv *, jobject, jobject, jint, jint);
 #ifdef __cplusplus
 }
 #endif
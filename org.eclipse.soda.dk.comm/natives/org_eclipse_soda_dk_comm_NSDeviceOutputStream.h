@@ -22,6 +22,20 @@ extern "C" {
  */
 JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_writeDeviceNC
   (JNIEnv *, jobject, jbyteArray, jint, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceOutputStream
+ * Method:    writeDirectNC
+ * Signature: (Ljava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_writeDirectNC
+  (JNIEnv *, jobject, jobject, jint, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSDeviceOutputStream
+ * Method:    closeSendNC
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSDeviceOutputStream_closeSendNC
+  (JNIEnv *, jobject, jint);
 #ifdef __cplusplus
 }
 #endif
@@ -88,6 +88,13 @@ JNIEXPORT jboolean JNICALL Java_org_eclipse_soda_dk_comm_NSParallelPort_isPrinte
  */
 JNIEXPORT jboolean JNICALL Java_org_eclipse_soda_dk_comm_NSParallelPort_isPrinterErrorNC
   (JNIEnv *, jobject, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSParallelPort
+ * Method:    wakeupNC
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSParallelPort_wakeupNC
+  (JNIEnv *, jobject, jint);
 #ifdef __cplusplus
 }
 #endif
@@ -209,6 +209,41 @@ JNIEXPORT jboolean JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_isRINC
  */
 JNIEXPORT jboolean JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_isCDNC
   (JNIEnv *, jobject);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    getErrorCountsNC
+ * Signature: (I[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_getErrorCountsNC
+  (JNIEnv *, jobject, jint, jintArray);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    setReceiveModeNC
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_setReceiveModeNC
+  (JNIEnv *, jobject, jint, jint, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    drainNC
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_drainNC
+  (JNIEnv *, jobject, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    getOutputQueueNC
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_getOutputQueueNC
+  (JNIEnv *, jobject, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_NSSerialPort
+ * Method:    wakeupNC
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_NSSerialPort_wakeupNC
+  (JNIEnv *, jobject, jint);
 #ifdef __cplusplus
 }
 #endif
@@ -0,0 +1,28 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#include <jni.h>
+/* Header for class org_eclipse_soda_dk_comm_SerialChannel */
+#ifndef _Included_org_eclipse_soda_dk_comm_SerialChannel
+#define _Included_org_eclipse_soda_dk_comm_SerialChannel
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialChannel
+ * Method:    writevNC
+ * Signature: (I[Ljava/nio/ByteBuffer;II[I[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialChannel_writevNC
+  (JNIEnv *, jclass, jint, jobjectArray, jint, jint, jintArray, jintArray);
+#ifdef __cplusplus
+}
+#endif
+#endif
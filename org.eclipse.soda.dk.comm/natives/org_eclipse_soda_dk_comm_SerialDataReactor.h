@@ -0,0 +1,71 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#include <jni.h>
+/* Header for class org_eclipse_soda_dk_comm_SerialDataReactor */
+#ifndef _Included_org_eclipse_soda_dk_comm_SerialDataReactor
+#define _Included_org_eclipse_soda_dk_comm_SerialDataReactor
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef org_eclipse_soda_dk_comm_SerialDataReactor_MAX_PRIORITY
+#define org_eclipse_soda_dk_comm_SerialDataReactor_MAX_PRIORITY 10L
+#undef org_eclipse_soda_dk_comm_SerialDataReactor_MIN_PRIORITY
+#define org_eclipse_soda_dk_comm_SerialDataReactor_MIN_PRIORITY 1L
+#undef org_eclipse_soda_dk_comm_SerialDataReactor_NORM_PRIORITY
+#define org_eclipse_soda_dk_comm_SerialDataReactor_NORM_PRIORITY 5L
+#undef org_eclipse_soda_dk_comm_SerialDataReactor_PUSH_SLOT
+#define org_eclipse_soda_dk_comm_SerialDataReactor_PUSH_SLOT 1073741824L
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    closeNC
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_closeNC
+  (JNIEnv *, jclass, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    createNC
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_createNC
+  (JNIEnv *, jclass);
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    addNC
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_addNC
+  (JNIEnv *, jobject, jint, jint, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    monitorNC
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_monitorNC
+  (JNIEnv *, jobject, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    removeNC
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_removeNC
+  (JNIEnv *, jobject, jint, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialDataReactor
+ * Method:    rearmNC
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialDataReactor_rearmNC
+  (JNIEnv *, jobject, jint, jint, jint);
+#ifdef __cplusplus
+}
+#endif
+#endif
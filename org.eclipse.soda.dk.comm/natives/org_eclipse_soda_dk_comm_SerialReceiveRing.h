@@ -0,0 +1,32 @@
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+#include <jni.h>
+/* Header for class org_eclipse_soda_dk_comm_SerialReceiveRing */
+#ifndef _Included_org_eclipse_soda_dk_comm_SerialReceiveRing
+#define _Included_org_eclipse_soda_dk_comm_SerialReceiveRing
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef org_eclipse_soda_dk_comm_SerialReceiveRing_MIN_SIZE
+#define org_eclipse_soda_dk_comm_SerialReceiveRing_MIN_SIZE 4096L
+#undef org_eclipse_soda_dk_comm_SerialReceiveRing_MAX_SIZE
+#define org_eclipse_soda_dk_comm_SerialReceiveRing_MAX_SIZE 1073741824L
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialReceiveRing
+ * Method:    pumpNC
+ * Signature: (ILjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_soda_dk_comm_SerialReceiveRing_pumpNC
+  (JNIEnv *, jobject, jint, jobject, jint);
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -34,6 +34,13 @@ extern "C" {
  */
 JNIEXPORT void JNICALL Java_org_eclipse_soda_dk_comm_SerialStatusEventThread_monitorSerialStatusNC
   (JNIEnv *, jobject, jint);
+/*
+ * Class:     org_eclipse_soda_dk_comm_SerialStatusEventThread
+ * Method:    wakeupNC
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_eclipse_soda_dk_comm_SerialStatusEventThread_wakeupNC
+  (JNIEnv *, jobject, jlong);
 #ifdef __cplusplus
 }
 #endif
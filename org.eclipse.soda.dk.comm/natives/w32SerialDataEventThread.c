@@ -69,6 +69,7 @@ void w32SerialDataEventThread_monitorSerialDataNC
     jobject		jsp;
     jclass		jspc;
     jfieldID	notifyOnDataAvailableID;
+    jfieldID	pushDataID;
     jboolean	notifyOnDataAvailableFlag = JNI_FALSE;
     int			result;
 	int			pollingTime;			/* seconds */
@@ -100,6 +101,8 @@ void w32SerialDataEventThread_monitorSerialDataNC
     assertexc(jm);
     notifyOnDataAvailableID = (*jenv)->GetFieldID(jenv, jspc, "notifyOnDataFlag", "Z");
     assertexc(notifyOnDataAvailableID);
+    pushDataID = (*jenv)->GetFieldID(jenv, jspc, "pushData", "Z");
+    assertexc(pushDataID);
 	/* Get access to the interrupted method.*/
 	jthreadClass = (*jenv)->FindClass(jenv, "java/lang/Thread");
 	assertexc(jthreadClass);
@@ -127,7 +130,8 @@ void w32SerialDataEventThread_monitorSerialDataNC
 		if (!result)  continue;
 		if (FD_ISSET(jfd, &r_mask))
 		{
-			notifyOnDataAvailableFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnDataAvailableID);
+			notifyOnDataAvailableFlag = (*jenv)->GetBooleanField(jenv, jsp, notifyOnDataAvailableID) ||
+						    (*jenv)->GetBooleanField(jenv, jsp, pushDataID);
 			if(notifyOnDataAvailableFlag)
 				(*jenv)->CallVoidMethod(jenv, jsp, jm, data_available_event, JNI_TRUE, JNI_TRUE);
         }
@@ -0,0 +1,44 @@
+package javax.comm;
+
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+
+/**
+ * Discovers the ports in the background for
+ * <code>CommPortIdentifier.discoverInBackground()</code>. If discovery
+ * fails, the failure is printed and the next lookup tries again, in the
+ * caller's thread, and the lookup fails with the failure as its cause.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class CommPortDiscoveryThread extends Thread {
+	/**
+	 * Constructs an instance of this class.
+	 */
+	CommPortDiscoveryThread() {
+		super("CommPortDiscoveryThread"); //$NON-NLS-1$
+		setDaemon(true);
+	}
+
+	/**
+	 * Run.
+	 */
+	public void run() {
+		try {
+			CommPortIdentifier.discover();
+		} catch (final UnsatisfiedLinkError e) {
+			e.printStackTrace();
+		} catch (final RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -32,31 +32,28 @@ public class CommPortIdentifier {
 	 */
 	public static final int PORT_PARALLEL = 2;
 
-	static CommDriver commDriver = null;
+	static volatile CommDriver commDriver = null;
 
-	static boolean initialized = false;
+	static volatile boolean initialized = false;
+
+	/**
+	 * Define the discovering (boolean) field, set while some thread discovers the ports.
+	 */
+	private static boolean discovering = false;
+
+	/**
+	 * Define the discovery lock (Object) field.
+	 */
+	private static final Object discoveryLock = new Object();
 
 	static Hashtable identifiers = new Hashtable(4); // initial number of
 	// ports
-	// static block to ensure proper initialization
-	static {
-		// TODO: Create a factory that would return the proper Comdriver based
-		// on the property file
-		// where the comdrivers are registered. (javax.comm.properties)
-		// lazy initialization to avoid overhead.
-		try {
-			// System.loadLibrary("dkcomm"); // replace the old ibmcomm //$NON-NLS-1$
-			Library.load_dkcomm();
-		} catch (final UnsatisfiedLinkError e) {
-			e.printStackTrace();
-			System.exit(1);
-		}
-		if (!initialized) {
-			commDriver = new org.eclipse.soda.dk.comm.NSCommDriver();
-			commDriver.initialize();
-			initialized = true;
-		}
-	}
+
+	/**
+	 * Define the identifier listeners (CommPortIdentifierListener[]) field,
+	 * replaced rather than changed so events are fired without a lock.
+	 */
+	private static volatile CommPortIdentifierListener[] identifierListeners = new CommPortIdentifierListener[0];
 
 	/**
 	 * Adds <CODE>portName</CODE> to the list of ports.
@@ -74,8 +71,127 @@ public class CommPortIdentifier {
 	// Also the signature is non-standard. Type needs to be added.
 	public static void addPortName(final String portName, final int portType, final CommDriver commDriver) {
 		// what do I do with CommDriver??
-		identifiers.put(portName, new CommPortIdentifier(portName, portType));
+		final CommPortIdentifier identifier = new CommPortIdentifier(portName, portType);
+		identifiers.put(portName, identifier);
 		// name=portName;
+		fireIdentifierEvent(identifier, true);
+	}
+
+	/**
+	 * Non-Api method. Registers a listener told about ports added to and
+	 * removed from the list of ports after it is registered.
+	 * 
+	 * @param listener
+	 *            a <CODE>CommPortIdentifierListener</CODE> callback object
+	 */
+	public static synchronized void addPortIdentifierListener(final CommPortIdentifierListener listener) {
+		if (listener == null) {
+			return;
+		}
+		final int count = identifierListeners.length;
+		for (int i = 0; i < count; i++) {
+			if (identifierListeners[i] == listener) {
+				return;
+			}
+		}
+		final CommPortIdentifierListener[] newListeners = new CommPortIdentifierListener[count + 1];
+		System.arraycopy(identifierListeners, 0, newListeners, 0, count);
+		newListeners[count] = listener;
+		identifierListeners = newListeners;
+	}
+
+	/**
+	 * Tell the identifier listeners that a port was added or removed. A
+	 * listener that throws does not keep the others from being told.
+	 * 
+	 * @param identifier
+	 *            the port added or removed
+	 * @param added
+	 *            <CODE>true</CODE> if the port was added
+	 */
+	private static void fireIdentifierEvent(final CommPortIdentifier identifier, final boolean added) {
+		final CommPortIdentifierListener[] current = identifierListeners;
+		for (int i = 0; i < current.length; i++) {
+			try {
+				if (added) {
+					current[i].portAdded(identifier);
+				} else {
+					current[i].portRemoved(identifier);
+				}
+			} catch (final RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Wait for the ports to be discovered, discovering them in this thread
+	 * if no other thread is already doing so. Returns at once after the
+	 * first discovery has succeeded.
+	 * 
+	 * @exception UnsatisfiedLinkError
+	 *                if the native library cannot be loaded; the next call tries again
+	 */
+	private static void awaitDiscovery() {
+		boolean interrupted = false;
+		synchronized (discoveryLock) {
+			while (discovering) {
+				try {
+					discoveryLock.wait();
+				} catch (final InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (!initialized) {
+				discovering = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (!initialized) {
+			discover();
+		}
+	}
+
+	/**
+	 * Load the native library, create the driver and discover the ports.
+	 * Called by a thread that has set <CODE>discovering</CODE>. A failure
+	 * is thrown to that thread and leaves the ports undiscovered.
+	 */
+	static void discover() {
+		boolean done = false;
+		try {
+			// TODO: Create a factory that would return the proper Comdriver based
+			// on the property file
+			// where the comdrivers are registered. (javax.comm.properties)
+			Library.load_dkcomm();
+			final CommDriver driver = new org.eclipse.soda.dk.comm.NSCommDriver();
+			commDriver = driver;
+			driver.initialize();
+			done = true;
+		} finally {
+			synchronized (discoveryLock) {
+				initialized = done;
+				discovering = false;
+				discoveryLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Non-Api method. Starts discovering the ports in a background thread,
+	 * so that the first lookup only waits for whatever is left of it. Does
+	 * nothing if the ports are discovered or being discovered.
+	 */
+	public static void discoverInBackground() {
+		synchronized (discoveryLock) {
+			if (initialized || discovering) {
+				return;
+			}
+			discovering = true;
+		}
+		new CommPortDiscoveryThread().start();
 	}
 
 	/**
@@ -98,9 +214,18 @@ public class CommPortIdentifier {
 	 *            name of the port to open
 	 * @return a <CODE>CommPortIdentifier</CODE> object
 	 * @exception NoSuchPortException
-	 *                if the port does not exist
+	 *                if the port does not exist, or if the ports cannot be discovered because the native library cannot be loaded; then the cause is the <CODE>UnsatisfiedLinkError</CODE> and the next call tries again
 	 */
 	public static CommPortIdentifier getPortIdentifier(final String portName) throws NoSuchPortException {
+		if (!initialized) {
+			try {
+				awaitDiscovery();
+			} catch (final UnsatisfiedLinkError e) {
+				final NoSuchPortException exception = new NoSuchPortException(e.getMessage());
+				exception.initCause(e);
+				throw exception;
+			}
+		}
 		final Object comPortId = identifiers.get(portName);
 		if (comPortId == null) {
 			throw new NoSuchPortException();
@@ -112,9 +237,20 @@ public class CommPortIdentifier {
 	 * Obtains an enumeration object that contains a <CODE>CommPortIdentifier</CODE> object for each port in the system.
 	 * 
 	 * @return an <CODE> Enumeration </CODE> object that can be used to enumerate all the ports known to the system
+	 * @exception IllegalStateException
+	 *                if the ports cannot be discovered because the native library cannot be loaded; the cause is the <CODE>UnsatisfiedLinkError</CODE> and the next call tries again
 	 * @see java.util.Enumeration
 	 */
 	public static Enumeration getPortIdentifiers() {
+		if (!initialized) {
+			try {
+				awaitDiscovery();
+			} catch (final UnsatisfiedLinkError e) {
+				final IllegalStateException exception = new IllegalStateException(e.getMessage());
+				exception.initCause(e);
+				throw exception;
+			}
+		}
 		return identifiers.elements();
 	}
 
@@ -251,6 +387,38 @@ public class CommPortIdentifier {
 		return commDriver.getCommPort(getName(), getPortType());
 	}
 
+	/**
+	 * Non-Api method. Deregisters a <CODE>CommPortIdentifierListener</CODE> registered using <CODE>addPortIdentifierListener</CODE>.
+	 * 
+	 * @param listener
+	 *            The CommPortIdentifierListener object that was previously registered using addPortIdentifierListener
+	 */
+	public static synchronized void removePortIdentifierListener(final CommPortIdentifierListener listener) {
+		final int count = identifierListeners.length;
+		for (int i = 0; i < count; i++) {
+			if (identifierListeners[i] == listener) {
+				final CommPortIdentifierListener[] newListeners = new CommPortIdentifierListener[count - 1];
+				System.arraycopy(identifierListeners, 0, newListeners, 0, i);
+				System.arraycopy(identifierListeners, i + 1, newListeners, i, count - i - 1);
+				identifierListeners = newListeners;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Non-Api method. Removes <CODE>portName</CODE> from the list of ports, when its device goes away. An application that has the port open keeps it until it is closed.
+	 * 
+	 * @param portName
+	 *            The name of the port being removed
+	 */
+	public static void removePortName(final String portName) {
+		final CommPortIdentifier identifier = (CommPortIdentifier) identifiers.remove(portName);
+		if (identifier != null) {
+			fireIdentifierEvent(identifier, false);
+		}
+	}
+
 	/**
 	 * Deregisters a <CODE>CommPortOwnershipListener</CODE> registered using <CODE>addPortOwnershipListener</CODE>
 	 * 
@@ -0,0 +1,38 @@
+package javax.comm;
+
+/*************************************************************************
+ * Copyright (c) 1999, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.util.*;
+
+/**
+ * Non-Api interface. Told when a port is added to or removed from the
+ * ports known to <code>CommPortIdentifier</code>, such as a USB serial
+ * adapter being plugged in or pulled out. Called on the thread that
+ * noticed the change, which must not be held up for long.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ * @see CommPortIdentifier#addPortIdentifierListener(CommPortIdentifierListener)
+ */
+public interface CommPortIdentifierListener extends EventListener {
+	/**
+	 * Port added with the specified identifier parameter.
+	 * @param identifier	The identifier (<code>CommPortIdentifier</code>) parameter.
+	 */
+	public abstract void portAdded(final CommPortIdentifier identifier);
+
+	/**
+	 * Port removed with the specified identifier parameter. A port that is
+	 * open stays usable until it is closed, though its device is gone.
+	 * @param identifier	The identifier (<code>CommPortIdentifier</code>) parameter.
+	 */
+	public abstract void portRemoved(final CommPortIdentifier identifier);
+}
@@ -0,0 +1,29 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+/**
+ * Runs the tasks that deliver port events to listeners. The shape matches
+ * <code>java.util.concurrent.Executor</code>, which the Foundation class
+ * libraries this bundle targets do not have, so any executor, thread pool
+ * or virtual thread factory can be adapted with a one line wrapper.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ * @see NSSerialPort#setEventExecutor(CommEventExecutor)
+ */
+public interface CommEventExecutor {
+	/**
+	 * Run the specified task at some point in the future, on any thread.
+	 * @param task	The task (<code>Runnable</code>) parameter.
+	 */
+	public void execute(Runnable task);
+}
@@ -0,0 +1,151 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.util.Vector;
+
+/**
+ * Default event executor: a pool of daemon threads shared by all ports.
+ * Tasks run in the order they are handed over. Each port's dispatcher
+ * only submits its task when it is not already scheduled, so a port's
+ * events are still delivered one at a time and in order. A thread is
+ * started whenever a task finds no idle one, and ends after a minute
+ * without work. The pool so never holds more threads than there are ports
+ * with a task outstanding, and ports whose listeners are idle cost none;
+ * a listener that blocks (reading the stream in <code>serialEvent</code>,
+ * or waiting for another port's event) only holds up its own port. Setting
+ * the <code>org.eclipse.soda.dk.comm.event.threads</code> system property
+ * bounds the pool; tasks then wait for a free thread, so a blocked
+ * listener holds up the ports queued behind it.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class CommEventPool implements CommEventExecutor, Runnable {
+	/**
+	 * Define the threads property (String) constant.
+	 */
+	static final String THREADS_PROPERTY = "org.eclipse.soda.dk.comm.event.threads"; //$NON-NLS-1$
+
+	/**
+	 * Define the idle timeout (long) constant, in milliseconds.
+	 */
+	private static final long IDLE_TIMEOUT = 60000;
+
+	/**
+	 * Define the instance (CommEventPool) field.
+	 */
+	private static CommEventPool instance = null;
+
+	/**
+	 * Define the tasks (Vector) field, the tasks waiting for a thread.
+	 */
+	private final Vector tasks = new Vector();
+
+	/**
+	 * Define the maximum (int) field, the most threads to run; 0 for no limit.
+	 */
+	private final int maximum;
+
+	/**
+	 * Define the threads (int) field, the threads running.
+	 */
+	private int threads = 0;
+
+	/**
+	 * Define the idle (int) field, the threads waiting for a task.
+	 */
+	private int idle = 0;
+
+	/**
+	 * Define the started (int) field, used to name the threads.
+	 */
+	private int started = 0;
+
+	/**
+	 * Constructs an instance of this class from the specified maximum parameter.
+	 * @param maximum	The maximum (<code>int</code>) parameter.
+	 */
+	private CommEventPool(final int maximum) {
+		this.maximum = maximum < 0 ? 0 : maximum;
+	}
+
+	/**
+	 * Gets the shared pool, bounded by the
+	 * <code>org.eclipse.soda.dk.comm.event.threads</code> system property if
+	 * it is set to a positive number, else growing on demand.
+	 * @return	The default (<code>CommEventPool</code>) value.
+	 */
+	static synchronized CommEventPool getDefault() {
+		if (instance == null) {
+			instance = new CommEventPool(Integer.getInteger(THREADS_PROPERTY, 0).intValue());
+		}
+		return instance;
+	}
+
+	/**
+	 * Execute the specified task on a thread of the pool.
+	 * @param task	The task (<code>Runnable</code>) parameter.
+	 */
+	public synchronized void execute(final Runnable task) {
+		this.tasks.addElement(task);
+		if ((this.tasks.size() > this.idle) && ((this.maximum == 0) || (this.threads < this.maximum))) {
+			this.threads++;
+			final Thread thread = new Thread(this, "CommEventPool-" + (++this.started)); //$NON-NLS-1$
+			thread.setDaemon(true);
+			thread.start();
+		} else {
+			notify();
+		}
+	}
+
+	/**
+	 * Wait for the next task.
+	 * @return	The task (<code>Runnable</code>) value, or <code>null</code> if the thread has been idle too long and must end.
+	 */
+	private synchronized Runnable next() {
+		long waited = 0;
+		while (this.tasks.isEmpty()) {
+			if (waited >= IDLE_TIMEOUT) {
+				this.threads--;
+				return null;
+			}
+			final long start = System.currentTimeMillis();
+			this.idle++;
+			try {
+				wait(IDLE_TIMEOUT - waited);
+			} catch (final InterruptedException e) {
+				// keep waiting until idle too long
+			} finally {
+				this.idle--;
+			}
+			final long now = System.currentTimeMillis();
+			waited += now >= start ? now - start : 0;
+		}
+		final Runnable task = (Runnable) this.tasks.elementAt(0);
+		this.tasks.removeElementAt(0);
+		return task;
+	}
+
+	/**
+	 * Run tasks until idle too long.
+	 */
+	public void run() {
+		Runnable task;
+		while ((task = next()) != null) {
+			try {
+				task.run();
+			} catch (final RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.util.EventListener;
+
+/**
+ * Immutable list of port event listeners, each with the mask of event
+ * types it wants (bit <code>1 &lt;&lt; eventType</code>). Adding or removing
+ * a listener builds a new list, so a port publishes it through a single
+ * volatile field and delivers events by walking the arrays without a lock
+ * or an iterator.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class CommListenerList {
+	/**
+	 * Define the empty (CommListenerList) constant.
+	 */
+	static final CommListenerList EMPTY = new CommListenerList(new EventListener[0], new int[0]);
+
+	/**
+	 * Define the listeners (EventListener[]) field.
+	 */
+	final EventListener[] listeners;
+
+	/**
+	 * Define the masks (int[]) field, the event mask of each listener.
+	 */
+	final int[] masks;
+
+	/**
+	 * Define the mask (int) field, the union of all listener masks.
+	 */
+	private final int mask;
+
+	/**
+	 * Constructs an instance of this class from the specified listeners and masks parameters.
+	 * @param listeners	The listeners (<code>EventListener[]</code>) parameter.
+	 * @param masks	The masks (<code>int[]</code>) parameter.
+	 */
+	private CommListenerList(final EventListener[] listeners, final int[] masks) {
+		int union = 0;
+		for (int i = 0; i < masks.length; i++) {
+			union |= masks[i];
+		}
+		this.listeners = listeners;
+		this.masks = masks;
+		this.mask = union;
+	}
+
+	/**
+	 * Answer whether any listener wants the specified event type.
+	 * @param eventType	The event type (<code>int</code>) parameter.
+	 * @return	The accepts (<code>boolean</code>) value.
+	 */
+	boolean accepts(final int eventType) {
+		return (this.mask & (1 << eventType)) != 0;
+	}
+
+	/**
+	 * Return a list with the specified listener added, or its mask replaced if it is already present.
+	 * @param listener	The listener (<code>EventListener</code>) parameter.
+	 * @param eventMask	The event mask (<code>int</code>) parameter.
+	 * @return	The new list (<code>CommListenerList</code>) value.
+	 */
+	CommListenerList add(final EventListener listener, final int eventMask) {
+		final int index = indexOf(listener);
+		final int length = this.listeners.length;
+		if (index >= 0) {
+			final int[] newMasks = new int[length];
+			System.arraycopy(this.masks, 0, newMasks, 0, length);
+			newMasks[index] = eventMask;
+			return new CommListenerList(this.listeners, newMasks);
+		}
+		final EventListener[] newListeners = new EventListener[length + 1];
+		final int[] newMasks = new int[length + 1];
+		System.arraycopy(this.listeners, 0, newListeners, 0, length);
+		System.arraycopy(this.masks, 0, newMasks, 0, length);
+		newListeners[length] = listener;
+		newMasks[length] = eventMask;
+		return new CommListenerList(newListeners, newMasks);
+	}
+
+	/**
+	 * Gets the index of the specified listener.
+	 * @param listener	The listener (<code>EventListener</code>) parameter.
+	 * @return	The index (<code>int</code>) value, or -1 if absent.
+	 */
+	private int indexOf(final EventListener listener) {
+		for (int i = 0; i < this.listeners.length; i++) {
+			if (this.listeners[i] == listener) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return a list without the specified listener.
+	 * @param listener	The listener (<code>EventListener</code>) parameter.
+	 * @return	The new list (<code>CommListenerList</code>) value.
+	 */
+	CommListenerList remove(final EventListener listener) {
+		final int index = indexOf(listener);
+		if (index < 0) {
+			return this;
+		}
+		final int length = this.listeners.length - 1;
+		if (length == 0) {
+			return EMPTY;
+		}
+		final EventListener[] newListeners = new EventListener[length];
+		final int[] newMasks = new int[length];
+		System.arraycopy(this.listeners, 0, newListeners, 0, index);
+		System.arraycopy(this.masks, 0, newMasks, 0, index);
+		System.arraycopy(this.listeners, index + 1, newListeners, index, length - index);
+		System.arraycopy(this.masks, index + 1, newMasks, index, length - index);
+		return new CommListenerList(newListeners, newMasks);
+	}
+
+	/**
+	 * Gets the size (int) value.
+	 * @return	The size (<code>int</code>) value.
+	 */
+	int size() {
+		return this.listeners.length;
+	}
+}
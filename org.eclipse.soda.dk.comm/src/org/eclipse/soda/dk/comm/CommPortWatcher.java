@@ -0,0 +1,147 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.util.Vector;
+
+/**
+ * Background thread that keeps the driver's ports up to date while
+ * devices are plugged in and pulled out. It spends its life in the
+ * driver's native watch, which reports each device as it comes or goes.
+ * The watchers are stopped with {@link #stopAll()} when the bundle stops,
+ * and none starts until {@link #startAll()} restarts them when the bundle
+ * starts again.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+public class CommPortWatcher extends Thread {
+	/**
+	 * Define the stop timeout (long) constant, in milliseconds; the native
+	 * watch looks at its stop flag once a second.
+	 */
+	static final long STOP_TIMEOUT = 2000;
+
+	/**
+	 * Define the watchers (Vector) field, the watchers not yet stopped.
+	 */
+	private static final Vector watchers = new Vector();
+
+	/**
+	 * Define the stopped drivers (Vector) field, the drivers whose watchers
+	 * were stopped, or not started, while the watchers were stopped;
+	 * guarded by watchers.
+	 */
+	private static final Vector stoppedDrivers = new Vector();
+
+	/**
+	 * Define the stopped (boolean) field, set from {@link #stopAll()} until
+	 * {@link #startAll()}; guarded by watchers.
+	 */
+	private static boolean stopped = false;
+
+	/**
+	 * Define the driver (NSCommDriver) field.
+	 */
+	private final NSCommDriver driver;
+
+	/**
+	 * Constructs an instance of this class from the specified driver parameter.
+	 * @param driver	The driver (<code>NSCommDriver</code>) parameter.
+	 */
+	CommPortWatcher(final NSCommDriver driver) {
+		super("CommPortWatcher"); //$NON-NLS-1$
+		this.driver = driver;
+		setDaemon(true);
+	}
+
+	/**
+	 * Start a watcher for the specified driver, unless the watchers are
+	 * stopped; the driver is then remembered and its watcher started by
+	 * {@link #startAll()}.
+	 * @param driver	The driver (<code>NSCommDriver</code>) parameter.
+	 * @return	The started watcher (<code>CommPortWatcher</code>), or <code>null</code> if the watchers are stopped.
+	 */
+	static CommPortWatcher start(final NSCommDriver driver) {
+		synchronized (watchers) {
+			if (stopped) {
+				if (!stoppedDrivers.contains(driver)) {
+					stoppedDrivers.addElement(driver);
+				}
+				return null;
+			}
+			final CommPortWatcher watcher = new CommPortWatcher(driver);
+			watchers.addElement(watcher);
+			watcher.start();
+			return watcher;
+		}
+	}
+
+	/**
+	 * Start the watchers of the drivers stopped by {@link #stopAll()}, and
+	 * let new ones start again.
+	 */
+	public static void startAll() {
+		final NSCommDriver[] starting;
+		synchronized (watchers) {
+			stopped = false;
+			starting = new NSCommDriver[stoppedDrivers.size()];
+			stoppedDrivers.copyInto(starting);
+			stoppedDrivers.removeAllElements();
+		}
+		for (int i = 0; i < starting.length; i++) {
+			starting[i].startWatcher();
+		}
+	}
+
+	/**
+	 * Stop every watcher and wait for each to leave the native watch, so
+	 * none is left running in the library once the bundle has stopped. No
+	 * watcher starts again until {@link #startAll()}.
+	 */
+	public static void stopAll() {
+		final CommPortWatcher[] stopping;
+		synchronized (watchers) {
+			stopped = true;
+			stopping = new CommPortWatcher[watchers.size()];
+			watchers.copyInto(stopping);
+			watchers.removeAllElements();
+			for (int i = 0; i < stopping.length; i++) {
+				if (!stoppedDrivers.contains(stopping[i].driver)) {
+					stoppedDrivers.addElement(stopping[i].driver);
+				}
+			}
+		}
+		for (int i = 0; i < stopping.length; i++) {
+			stopping[i].driver.stopWatcher();
+		}
+		for (int i = 0; i < stopping.length; i++) {
+			try {
+				stopping[i].join(STOP_TIMEOUT);
+			} catch (final InterruptedException e) {
+				// stop waiting; the watcher still ends by itself
+			}
+		}
+	}
+
+	/**
+	 * Run.
+	 */
+	public void run() {
+		try {
+			this.driver.watchDevices();
+		} catch (final UnsatisfiedLinkError e) {
+			// an older native library; ports stay as discovered
+		} finally {
+			watchers.removeElement(this);
+		}
+	}
+}
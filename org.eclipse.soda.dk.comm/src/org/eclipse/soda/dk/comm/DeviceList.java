@@ -19,5 +19,10 @@ public class DeviceList {
 	/**
 	 * Define the head entry (DeviceListEntry) field.
 	 */
-	DeviceListEntry headEntry = null;
+	volatile DeviceListEntry headEntry = null;
+
+	/**
+	 * Define the tail entry (DeviceListEntry) field, so an entry is appended without walking the list.
+	 */
+	DeviceListEntry tailEntry = null;
 }
@@ -42,7 +42,7 @@ public class DeviceListEntry {
 	boolean opened;
 
 	/**
-	 * Define the next (DeviceListEntry) field.
+	 * Define the next (DeviceListEntry) field; volatile, as the list is walked without a lock.
 	 */
-	DeviceListEntry next;
+	volatile DeviceListEntry next;
 }
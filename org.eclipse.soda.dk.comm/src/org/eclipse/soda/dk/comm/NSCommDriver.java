@@ -30,11 +30,38 @@ public class NSCommDriver implements CommDriver {
 		}
 	}
 
+	/**
+	 * Define the devices property (String) constant.
+	 */
+	static final String DEVICES_PROPERTY = "org.eclipse.soda.dk.comm.devices"; //$NON-NLS-1$
+
+	/**
+	 * Define the hotplug property (String) constant.
+	 */
+	static final String HOTPLUG_PROPERTY = "org.eclipse.soda.dk.comm.hotplug"; //$NON-NLS-1$
+
 	/**
 	 * Define the device list (DeviceList) field.
 	 */
 	DeviceList devicelist = new DeviceList();
 
+	/**
+	 * Define the device patterns (String) field, comma separated file name
+	 * patterns of extra devices to list, such as
+	 * <code>/dev/serial/by-id/*</code>; read by the native discovery.
+	 */
+	private final String devicePatterns = System.getProperty(DEVICES_PROPERTY);
+
+	/**
+	 * Define the stop watch flag (int) field, read by the native watch.
+	 */
+	private volatile int stopWatchFlag = 0;
+
+	/**
+	 * Define the watcher (CommPortWatcher) field.
+	 */
+	private CommPortWatcher watcher = null;
+
 	/**
 	 * Add device to list with the specified port name, port type, device name and sem id parameters.
 	 * @param portName
@@ -47,27 +74,28 @@ public class NSCommDriver implements CommDriver {
 	 *		The sem ID (<code>int</code>) parameter.
 	 */
 	protected void addDeviceToList(final String portName, final int portType, final String deviceName, final int semID) {
-		DeviceListEntry cur = this.devicelist.headEntry;
-		DeviceListEntry prev = null;
-		while (cur != null) {
-			prev = cur;
-			cur = cur.next;
-		}
-		cur = new DeviceListEntry();
+		final DeviceListEntry cur = new DeviceListEntry();
 		cur.logicalName = portName;
 		cur.physicalName = deviceName;
 		cur.portType = portType;
 		cur.semID = semID;
 		cur.next = null;
-		if (prev == null) {
-			this.devicelist.headEntry = cur;
-		} else {
-			prev.next = cur;
+		synchronized (this.devicelist) {
+			if (this.devicelist.tailEntry == null) {
+				this.devicelist.headEntry = cur;
+			} else {
+				this.devicelist.tailEntry.next = cur;
+			}
+			this.devicelist.tailEntry = cur;
 		}
 	}
 
 	/**
-	 * Discover devices nc.
+	 * Discover devices nc. On Linux this lists the devices matching the
+	 * <code>org.eclipse.soda.dk.comm.devices</code> patterns, then every
+	 * serial port in <code>/sys/class/tty</code> that has a device behind
+	 * it (ttyS&lt;n&gt; as COM&lt;n+1&gt;, others such as ttyUSB0 under their
+	 * own name), then the parallel port.
 	 */
 	private native void discoverDevicesNC();
 
@@ -112,25 +140,115 @@ public class NSCommDriver implements CommDriver {
 	 * @return Results of the get next dle (<code>DeviceListEntry</code>) value.
 	 */
 	DeviceListEntry getNextDLE(final DeviceListEntry dle) {
-		DeviceListEntry cur = this.devicelist.headEntry;
-		DeviceListEntry ndle = null;
-		while (cur != null) {
-			if (cur == dle) {
-				ndle = cur.next;
-				break;
-			}
-			cur = cur.next;
-		}
-		return ndle;
+		return dle.next;
 	}
 
 	/**
-	 * Initialize.
+	 * Initialize. Unless the <code>org.eclipse.soda.dk.comm.hotplug</code>
+	 * property is <code>false</code>, a watcher then keeps the ports up to
+	 * date as devices are plugged in and pulled out.
 	 */
 	public void initialize() {
 		discoverDevicesNC();
 		for (DeviceListEntry cur = getFirstDLE(); cur != null; cur = getNextDLE(cur)) {
 			CommPortIdentifier.addPortName(cur.logicalName, cur.portType, this);
 		}
+		if (!"false".equalsIgnoreCase(System.getProperty(HOTPLUG_PROPERTY))) { //$NON-NLS-1$
+			startWatcher();
+		}
+	}
+
+	/**
+	 * Called by the native watch when a device appears. The device is listed
+	 * and registered unless a port of that name or device is already known.
+	 * @param portName	The port name (<code>String</code>) parameter.
+	 * @param portType	The port type (<code>int</code>) parameter.
+	 * @param deviceName	The device name (<code>String</code>) parameter.
+	 * @param semID	The sem ID (<code>int</code>) parameter.
+	 */
+	private void portAdded(final String portName, final int portType, final String deviceName, final int semID) {
+		synchronized (this.devicelist) {
+			for (DeviceListEntry cur = getFirstDLE(); cur != null; cur = getNextDLE(cur)) {
+				if (cur.logicalName.equals(portName) || cur.physicalName.equals(deviceName)) {
+					return;
+				}
+			}
+			addDeviceToList(portName, portType, deviceName, semID);
+		}
+		CommPortIdentifier.addPortName(portName, portType, this);
+	}
+
+	/**
+	 * Called by the native watch when a device goes away. The entry is
+	 * unlinked but keeps its own next link, so a walk of the list that is
+	 * standing on it carries on; a port open on it keeps it until closed.
+	 * @param deviceName	The device name (<code>String</code>) parameter.
+	 */
+	private void portRemoved(final String deviceName) {
+		DeviceListEntry removed = null;
+		synchronized (this.devicelist) {
+			DeviceListEntry prev = null;
+			for (DeviceListEntry cur = getFirstDLE(); cur != null; prev = cur, cur = getNextDLE(cur)) {
+				if (cur.physicalName.equals(deviceName)) {
+					if (prev == null) {
+						this.devicelist.headEntry = cur.next;
+					} else {
+						prev.next = cur.next;
+					}
+					if (this.devicelist.tailEntry == cur) {
+						this.devicelist.tailEntry = prev;
+					}
+					removed = cur;
+					break;
+				}
+			}
+		}
+		if (removed != null) {
+			CommPortIdentifier.removePortName(removed.logicalName);
+		}
+	}
+
+	/**
+	 * Start the watcher, unless it is running or the watchers are stopped
+	 * (see {@link CommPortWatcher#stopAll()}). A watcher stopped earlier is
+	 * first let out of the native watch, as the stop flag is shared.
+	 */
+	synchronized void startWatcher() {
+		if ((this.watcher != null) && (this.stopWatchFlag == 0)) {
+			return;
+		}
+		if (this.watcher != null) {
+			try {
+				this.watcher.join(CommPortWatcher.STOP_TIMEOUT);
+			} catch (final InterruptedException e) {
+				// start anyway; the old watcher is about to leave
+			}
+		}
+		this.stopWatchFlag = 0;
+		this.watcher = CommPortWatcher.start(this);
 	}
+
+	/**
+	 * Stop the watcher; it leaves the native watch within a second. Called
+	 * by {@link CommPortWatcher#stopAll()}.
+	 */
+	synchronized void stopWatcher() {
+		this.stopWatchFlag = 1;
+	}
+
+	/**
+	 * Watch devices, returning only once the watcher is stopped.
+	 * @return	Results of the watch devices nc (<code>int</code>) value, -1 if devices cannot be watched, -2 if not supported.
+	 */
+	int watchDevices() {
+		return watchDevicesNC();
+	}
+
+	/**
+	 * Watch devices nc. On Linux this watches <code>/dev</code> with inotify
+	 * and calls <code>portAdded</code> and <code>portRemoved</code> for each
+	 * serial port that comes or goes, checking only that device.
+	 * @return	Results of the watch devices nc (<code>int</code>) value.
+	 */
+	private native int watchDevicesNC();
 }
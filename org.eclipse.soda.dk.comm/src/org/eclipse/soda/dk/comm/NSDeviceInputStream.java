@@ -12,6 +12,8 @@ package org.eclipse.soda.dk.comm;
  *******************************************************************************/
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 import javax.comm.CommPort;
 import javax.comm.CommPortIdentifier;
@@ -25,6 +27,8 @@ public class NSDeviceInputStream extends InputStream {
 // -----------------------------------------------------------------------------
 	int fd = -1;
 
+	int wakeup = 0; // the port's wakeup handle, polled by the native reads
+
 	private int bufsize = 0;
 
 	private int readCount = 0; // read by the app
@@ -43,6 +47,12 @@ public class NSDeviceInputStream extends InputStream {
 
 	private byte[] buffer = null; // size equivalent to insBufferSize
 
+	private int frameCount = -1; // frame length found by readFrameNC
+
+	SerialReceiveRing ring = null; // off-heap receive ring, when the serial port has one running
+
+	private final byte[] single = new byte[1]; // reused by read() from the ring
+
 	// of NSSerialPort or NSParallelPort
 // -----------------------------------------------------------------------------
 // Methods - constructors
@@ -70,6 +80,10 @@ public class NSDeviceInputStream extends InputStream {
 		if (this.bufferCount > this.readCount) {
 			nbc += this.bufferCount - this.readCount;
 		}
+		final SerialReceiveRing r = this.ring;
+		if (r != null) {
+			nbc += r.available();
+		}
 		// Now query the device to see if any and how much data is pending
 		// to be read.
 		rc = getReadCountNC();
@@ -85,19 +99,48 @@ public class NSDeviceInputStream extends InputStream {
 		int rc;
 		// If there is data already read from the device and buffered up,
 		// pick up one byte from it. If not, read it from the device.
-		if (this.bufferCount > this.readCount) {
-			rc = this.buffer[this.readCount++];
-			if (this.readCount == this.bufferCount) {
-				this.readCount = this.bufferCount = 0;
-			}
-		} else {
-			// Obtain the timeout trigger value.
+		if (this.bufferCount == this.readCount) {
+			// Obtain the threshold and timeout trigger values.
 			if (this.pp != null) {
+				this.thc = this.pp.rcvThreshold;
 				this.tmo = this.pp.rcvTimeout;
 			} else if (this.sp != null) {
+				this.thc = this.sp.rcvThreshold;
 				this.tmo = this.sp.rcvTimeout;
 			}
-			rc = readDeviceOneByteNC(); // throws IOException
+			final SerialReceiveRing r = this.ring;
+			if (r != null) {
+				rc = r.read(this.single, 0, 1, 1, this.tmo);
+				if (rc >= 0) {
+					if (rc > 0) {
+						this.sp.dataConsumed();
+					}
+					return rc > 0 ? this.single[0] & 0xFF : -1;
+				}
+				// The pump has stopped; read the device directly.
+			}
+			if (this.bufsize == 0) {
+				rc = readDeviceOneByteNC(); // throws IOException
+				if ((rc >= 0) && (this.sp != null)) {
+					this.sp.dataConsumed();
+				}
+				return rc;
+			}
+			// Read ahead: one device read fills the buffer for the
+			// following single byte and small reads. A device error is
+			// reported as readDeviceOneByteNC would; only a timeout with
+			// no data ends the read with -1.
+			rc = fill(1);
+			if (rc < 0) {
+				throw new IOException();
+			}
+			if (rc == 0) {
+				return -1;
+			}
+		}
+		rc = this.buffer[this.readCount++] & 0xFF;
+		if (this.readCount == this.bufferCount) {
+			this.readCount = this.bufferCount = 0;
 		}
 		return rc;
 	}
@@ -106,9 +149,61 @@ public class NSDeviceInputStream extends InputStream {
 		return read(b, 0, b.length); // throws IOException
 	}
 
-// -----------------------------------------------------------------------------
-// Methods - private
-// -----------------------------------------------------------------------------
+	/**
+	 * Read into the specified buffer, advancing its position. Direct buffers
+	 * are filled by the device read itself with no intermediate copy; heap
+	 * buffers go through {@link #read(byte[], int, int)} on their backing
+	 * array. Bytes already held in the read-ahead buffer are returned first.
+	 * @param dst The dst (<code>ByteBuffer</code>) parameter.
+	 * @return The number of bytes read (<code>int</code>).
+	 * @throws IOException IOException.
+	 */
+	public int read(final ByteBuffer dst) throws IOException {
+		if (dst.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
+		final int len = dst.remaining();
+		if (dst.hasArray()) {
+			final int rc = read(dst.array(), dst.arrayOffset() + dst.position(), len);
+			dst.position(dst.position() + rc);
+			return rc;
+		}
+		int cc = this.bufferCount - this.readCount;
+		if ((cc > 0) || (len == 0) || !dst.isDirect() || (this.ring != null) || ((this.sp != null) && this.sp.rcvFraming)) {
+			if (cc == 0) {
+				cc = len;
+			}
+			final byte[] b = new byte[cc < len ? cc : len];
+			final int rc = read(b, 0, b.length);
+			dst.put(b, 0, rc);
+			return rc;
+		}
+		if (this.pp != null) {
+			this.thc = this.pp.rcvThreshold;
+			this.tmo = this.pp.rcvTimeout;
+		} else if (this.sp != null) {
+			this.thc = this.sp.rcvThreshold;
+			this.tmo = this.sp.rcvTimeout;
+		}
+		this.tmoDone = false;
+		final int rc = readDirectNC(dst, dst.position(), len);
+		if (rc == -2) {
+			// No native direct buffer support; copy through the heap.
+			final byte[] b = new byte[len];
+			final int hc = read(b, 0, len);
+			dst.put(b, 0, hc);
+			return hc;
+		}
+		if (rc < 0) {
+			throw new IOException();
+		}
+		dst.position(dst.position() + rc);
+		if ((rc > 0) && (this.sp != null)) {
+			this.sp.dataConsumed();
+		}
+		return rc;
+	}
+
 	public int read(final byte b[], final int off, final int len) throws IOException {
 		int toff = off;
 		int tlen = len;
@@ -126,84 +221,291 @@ public class NSDeviceInputStream extends InputStream {
 		if ((this.thc > 0) && (this.thc < tlen)) {
 			tlen = this.thc;
 		}
-		// If buffer size is 0, then no buffering is to be done.
-		if (this.bufsize == 0) {
-			this.readCount = this.bufferCount = 0;
-			while (tlen != 0) {
-				this.tmoDone = false;
+		// With receive framing, return exactly one frame.
+		if ((this.sp != null) && this.sp.rcvFraming) {
+			rdc = readFrame(b, toff, tlen, this.sp.rcvFramingByte);
+			if (rdc > 0) {
+				this.sp.dataConsumed();
+			}
+			return rdc;
+		}
+		// Hand out what is already buffered before going to the device.
+		rdc = drain(b, toff, tlen);
+		toff += rdc;
+		tlen -= rdc;
+		// If threshold is never set, we're done with whatever we got.
+		if ((rdc > 0) && (this.thc < 0)) {
+			tlen = 0;
+		}
+		final SerialReceiveRing r = this.ring;
+		if ((r != null) && (tlen != 0)) {
+			rc = r.read(b, toff, tlen, this.thc > 0 ? tlen : 1, this.tmo);
+			if (rc >= 0) {
+				rdc += rc;
+				tlen = 0;
+			}
+			// Otherwise the pump has stopped; read the device directly.
+		}
+		while (tlen != 0) {
+			this.tmoDone = false;
+			if (tlen >= this.bufsize) {
+				// Large reads (and unbuffered streams) go straight into
+				// the caller's array.
 				rc = readDeviceNC(b, toff, tlen);
 				if (rc < 0) {
 					excflag = true;
 					break;
 				}
-				toff += rc;
-				tlen -= rc;
-				rdc += rc;
-				// If no data had been received this time, discontinue.
-				if (rc == 0) {
-					break;
-				}
-				// If threshold is never set, we're done with whatever
-				// we got so far.
-				if (this.thc < 0) {
-					break;
-				}
-				// If timeout is enabled and timeout occurred,
-				// discontinue.
-				if ((this.tmo > 0) && this.tmoDone) {
+			} else {
+				// Small reads refill the buffer with one device read.
+				rc = fill(tlen);
+				if (rc < 0) {
+					excflag = true;
 					break;
 				}
-			} // end of while
-		} else {
-			while (tlen != 0) {
-				int cc;
+				rc = drain(b, toff, tlen);
+			}
+			toff += rc;
+			tlen -= rc;
+			rdc += rc;
+			// If no data had been received this time, discontinue.
+			if (rc == 0) {
+				break;
+			}
+			// If threshold is never set, we're done with whatever
+			// we got so far.
+			if (this.thc < 0) {
+				break;
+			}
+			// If timeout is enabled and timeout occurred,
+			// discontinue.
+			if ((this.tmo > 0) && this.tmoDone) {
+				break;
+			}
+		} // end of while
+		if ((rdc > 0) && (this.sp != null)) {
+			this.sp.dataConsumed();
+		}
+		if (excflag) {
+			final IOException e = new IOException();
+			throw e;
+		}
+		return rdc;
+	}
+
+// -----------------------------------------------------------------------------
+// Methods - package
+// -----------------------------------------------------------------------------
+	/**
+	 * Read only what can be had without waiting, ignoring the receive
+	 * threshold; used to push data to a listener.
+	 * @param b The b (<code>byte[]</code>) parameter.
+	 * @param off The off (<code>int</code>) parameter.
+	 * @param len The len (<code>int</code>) parameter.
+	 * @return The number of bytes read (<code>int</code>).
+	 * @throws IOException IOException.
+	 */
+	int readAvailable(final byte b[], final int off, final int len) throws IOException {
+		int rdc = drain(b, off, len);
+		final SerialReceiveRing r = this.ring;
+		if ((rdc < len) && (r != null)) {
+			final int rc = r.read(b, off + rdc, len - rdc, 0, 0);
+			if ((rc != -1) || (rdc > 0)) {
+				return rc > 0 ? rdc + rc : rdc;
+			}
+		}
+		if (rdc < len) {
+			int pending = getReadCountNC();
+			if (pending > len - rdc) {
+				pending = len - rdc;
+			}
+			if (pending > 0) {
 				this.tmoDone = false;
-				// if no data in the buffer, get some data.
-				if (this.bufferCount == 0) {
-					this.readCount = 0;
-					rc = readDeviceNC(this.buffer, 0, this.bufsize);
-					if (rc < 0) {
-						excflag = true;
-						break;
-					}
-					this.bufferCount = rc;
-					// If no data had been received this time,
-					// discontinue.
-					if (rc == 0) {
-						break;
-					}
-				}
-				// Copy the buffered up data.
-				cc = tlen <= this.bufferCount - this.readCount ? tlen : this.bufferCount - this.readCount;
-				System.arraycopy(this.buffer, this.readCount, b, toff, cc);
-				toff += cc;
-				tlen -= cc;
-				this.readCount += cc;
-				rdc += cc;
-				if (this.readCount == this.bufferCount) {
-					this.readCount = this.bufferCount = 0;
+				final int rc = readDeviceNC(b, off + rdc, pending);
+				if (rc < 0) {
+					throw new IOException();
 				}
-				// If threshold is never set, we're done with whatever
-				// we got so far.
-				if (this.thc < 0) {
+				rdc += rc;
+			}
+		}
+		return rdc;
+	}
+
+	/**
+	 * Let go of the stopped receive ring. The bytes still unread in it are
+	 * moved behind those in the read-ahead buffer, so they are read first
+	 * and the ring's direct buffer can be freed.
+	 */
+	void releaseRing() {
+		final SerialReceiveRing r = this.ring;
+		this.ring = null;
+		if (r == null) {
+			return;
+		}
+		final int n = r.available();
+		if (n <= 0) {
+			return;
+		}
+		final int pending = this.bufferCount - this.readCount;
+		byte[] target = this.buffer;
+		if (target.length < pending + n) {
+			target = new byte[pending + n];
+		}
+		System.arraycopy(this.buffer, this.readCount, target, 0, pending);
+		final int rc = r.read(target, pending, n, 0, 0);
+		this.buffer = target;
+		this.readCount = 0;
+		this.bufferCount = pending + (rc > 0 ? rc : 0);
+	}
+
+	/**
+	 * Read only what the read-ahead buffer holds, never the device.
+	 * @param b The b (<code>byte[]</code>) parameter.
+	 * @param off The off (<code>int</code>) parameter.
+	 * @param len The len (<code>int</code>) parameter.
+	 * @return The number of bytes read (<code>int</code>).
+	 */
+	int readBuffered(final byte b[], final int off, final int len) {
+		return drain(b, off, len);
+	}
+
+	/**
+	 * Resize the read-ahead buffer. Bytes already buffered are kept, so the
+	 * buffer never shrinks below what is still unread.
+	 * @param size The size (<code>int</code>) parameter, 0 disables read-ahead.
+	 */
+	void setBufferSize(final int size) {
+		final int pending = this.bufferCount - this.readCount;
+		final byte[] resized = new byte[size > pending ? size : pending];
+		System.arraycopy(this.buffer, this.readCount, resized, 0, pending);
+		this.buffer = resized;
+		this.readCount = 0;
+		this.bufferCount = pending;
+		this.bufsize = size;
+	}
+
+// -----------------------------------------------------------------------------
+// Methods - private
+// -----------------------------------------------------------------------------
+	/**
+	 * Copy up to the specified number of buffered bytes into the caller's array.
+	 * @return The number of bytes copied (<code>int</code>).
+	 */
+	private int drain(final byte b[], final int off, final int len) {
+		int cc = this.bufferCount - this.readCount;
+		if (cc > len) {
+			cc = len;
+		}
+		if (cc > 0) {
+			System.arraycopy(this.buffer, this.readCount, b, off, cc);
+			this.readCount += cc;
+			if (this.readCount == this.bufferCount) {
+				this.readCount = this.bufferCount = 0;
+			}
+		}
+		return cc;
+	}
+
+	/**
+	 * Read up to and including the framing byte. A frame already waiting in
+	 * the buffer is returned without touching the device; otherwise one
+	 * readFrameNC call collects the rest of the frame and any bytes that
+	 * arrived after the framing byte are kept in the buffer.
+	 * @return The number of bytes read (<code>int</code>).
+	 */
+	private int readFrame(final byte b[], final int off, final int len, final int delim) throws IOException {
+		int cc = this.bufferCount - this.readCount;
+		int end = scan(this.buffer, this.readCount, cc < len ? cc : len, delim);
+		if ((end > 0) || (cc >= len)) {
+			this.sp.rcvFramingByteReceived = end > 0;
+			return drain(b, off, end > 0 ? end : len);
+		}
+		int rdc = drain(b, off, cc);
+		final SerialReceiveRing r = this.ring;
+		if (r != null) {
+			// Take one byte at a time so nothing past the framing byte leaves the ring.
+			while (rdc < len) {
+				if (r.read(b, off + rdc, 1, 1, this.tmo) <= 0) {
 					break;
 				}
-				// If timeout is enabled and timeout occurred,
-				// discontinue.
-				if ((this.tmo > 0) && this.tmoDone) {
-					break;
+				if ((b[off + rdc++] & 0xFF) == delim) {
+					this.sp.rcvFramingByteReceived = true;
+					return rdc;
 				}
-			} // end of while
+			}
+			if (r.isRunning() || (rdc == len)) {
+				this.sp.rcvFramingByteReceived = false;
+				return rdc;
+			}
+			// The pump has stopped; finish the frame from the device.
 		}
-		if (excflag) {
-			final IOException e = new IOException();
-			throw e;
+		this.tmoDone = false;
+		this.frameCount = -1;
+		int rc = readFrameNC(b, off + rdc, len - rdc, delim);
+		if (rc < 0) {
+			if (rdc > 0) {
+				return rdc;
+			}
+			throw new IOException();
 		}
-		return rdc;
+		if (this.frameCount == -1) {
+			// The native layer did not scan; do it here.
+			this.frameCount = scan(b, off + rdc, rc, delim);
+		}
+		if ((this.frameCount > 0) && (this.frameCount < rc)) {
+			// Keep the start of the next frame for the following read.
+			final int extra = rc - this.frameCount;
+			if (this.buffer.length < extra) {
+				this.buffer = new byte[extra];
+			}
+			System.arraycopy(b, off + rdc + this.frameCount, this.buffer, 0, extra);
+			this.readCount = 0;
+			this.bufferCount = extra;
+			rc = this.frameCount;
+		}
+		this.sp.rcvFramingByteReceived = this.frameCount > 0;
+		return rdc + rc;
+	}
+
+	/**
+	 * Find the framing byte in the specified region.
+	 * @return The length up to and including the framing byte (<code>int</code>), or 0 if absent.
+	 */
+	private static int scan(final byte b[], final int off, final int len, final int delim) {
+		for (int i = 0; i < len; i++) {
+			if ((b[off + i] & 0xFF) == delim) {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Refill the empty buffer with a single device read. While a receive
+	 * threshold is set the device read waits for as many bytes as it asks
+	 * for, up to the threshold, so it only asks for what the caller
+	 * needs.
+	 * @param need The need (<code>int</code>) parameter, the bytes the caller asked for.
+	 * @return The number of bytes read (<code>int</code>), or -1 on error.
+	 */
+	private int fill(final int need) {
+		this.tmoDone = false;
+		final int size = (this.thc > 0) && (need < this.bufsize) ? need : this.bufsize;
+		final int rc = readDeviceNC(this.buffer, 0, size);
+		this.readCount = 0;
+		this.bufferCount = rc > 0 ? rc : 0;
+		if ((rc > 0) && (this.sp != null)) {
+			this.sp.dataConsumed();
+		}
+		return rc;
 	}
 
 	private native int readDeviceNC(byte buf[], int offset, int nBytes);
 
+	private native int readDirectNC(ByteBuffer dst, int position, int nBytes);
+
+	private native int readFrameNC(byte buf[], int offset, int nBytes, int framingByte);
+
 	// private native int setFDNC();
 	private native int readDeviceOneByteNC() throws IOException;
 }
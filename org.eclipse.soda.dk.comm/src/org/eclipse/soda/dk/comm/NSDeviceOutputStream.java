@@ -11,12 +11,13 @@ package org.eclipse.soda.dk.comm;
  *     IBM Corporation - initial API and implementation
  *******************************************************************************/
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import javax.comm.CommPort;
 import javax.comm.CommPortIdentifier;
 import javax.comm.ParallelPortEvent;
-import javax.comm.SerialPortEvent;
 
 /**
  * @author IBM
@@ -27,6 +28,12 @@ public class NSDeviceOutputStream extends OutputStream {
 // -----------------------------------------------------------------------------
 	int fd = -1;
 
+	int tmo = -1; // send timeout from the serial port, in milliseconds
+
+	private boolean tmoDone = false; // set by the natives when the send timeout cut a write short
+
+	private int sendFd = -1; // non-blocking descriptor the natives open for timed writes; -2 = unavailable
+
 	private int pt; // determines whether to use sp or pp; 1 = p, 2 = s
 
 	private int bufsize;
@@ -37,6 +44,14 @@ public class NSDeviceOutputStream extends OutputStream {
 
 	private byte[] buffer = null; // size equivalent to insBufferSize
 
+	private final byte[] single = new byte[1]; // reused by write(int)
+
+	private volatile long lingerDeadline = 0; // when buffered data must go out; 0 = not armed
+
+	private IOException lingerFailure = null; // a failed timer flush, thrown by the next write or flush
+
+	private final OutputLingerFlush lingerFlush = new OutputLingerFlush(this); // the timer's flush task
+
 	// of NSSerialPort or NSParallelPort
 // -----------------------------------------------------------------------------
 // Methods - constructors
@@ -57,21 +72,28 @@ public class NSDeviceOutputStream extends OutputStream {
 // -----------------------------------------------------------------------------
 // Methods - public
 // -----------------------------------------------------------------------------
-	public void flush() throws IOException {
+	public synchronized void flush() throws IOException {
 		int rc;
 		int obc = 0;
+		throwLingerFailure();
 		if (this.pp != null) {
 			obc = this.pp.outsBufferCount;
+			this.pp.outsBufferCount = 0;
 		} else if (this.sp != null) {
 			obc = this.sp.outsBufferCount;
+			this.sp.outsBufferCount = 0;
+		}
+		this.lingerDeadline = 0;
+		if (obc == 0) {
+			return;
 		}
 		rc = writeDeviceNC(this.buffer, 0, obc);
 		// If any errors were encountered during writes to the device, throw
 		// an exception.
 		if (rc != obc) {
-			final IOException e = new IOException();
-			throw e;
+			throw writeFailure(rc);
 		}
+		reportBufferEmpty();
 	}
 
 	/**
@@ -85,15 +107,16 @@ public class NSDeviceOutputStream extends OutputStream {
 		write(b, 0, b.length);
 	}
 
-	public void write(final byte b[], final int off, final int len) throws IOException {
+	public synchronized void write(final byte b[], final int off, final int len) throws IOException {
 		// ???? How about if data is to be suspended for the parallel port ????
+		throwLingerFailure();
 		int toff = off;
 		int tlen = len;
 		int rc;
 		boolean excflag = false;
+		int sent = 0;
 		int obc = 0;
 		final int oldbufsize = this.bufsize;
-		boolean notify = false;
 		this.bufsize = 0;
 		// If buffer size has been changed since the last time, flush out the
 		// current data in the internal buffer.
@@ -114,6 +137,7 @@ public class NSDeviceOutputStream extends OutputStream {
 				}
 				if (rc != obc) {
 					excflag = true;
+					sent = rc;
 				}
 			}
 			this.buffer = null; // hopefully this is freed now
@@ -129,6 +153,7 @@ public class NSDeviceOutputStream extends OutputStream {
 			rc = writeDeviceNC(b, toff, tlen);
 			if (rc != tlen) {
 				excflag = true;
+				sent = rc;
 			}
 		} else { // save the data internally, and if full, write it out
 			while (tlen != 0) {
@@ -150,6 +175,7 @@ public class NSDeviceOutputStream extends OutputStream {
 					}
 					if (rc != this.bufsize) {
 						excflag = true;
+						sent = rc;
 						break;
 					}
 				} else {
@@ -169,11 +195,207 @@ public class NSDeviceOutputStream extends OutputStream {
 		// If any errors were encountered during writes to the device, throw
 		// an exception.
 		if (excflag) {
-			final IOException e = new IOException();
+			throw writeFailure(sent);
+		}
+		reportBufferEmpty();
+		linger();
+	}
+
+	/**
+	 * Write the remaining bytes of the specified buffer, advancing its
+	 * position. A direct buffer is written by the device write itself with
+	 * no copy when nothing is buffered ahead of it; other buffers go through
+	 * {@link #write(byte[], int, int)}.
+	 * @param src The src (<code>ByteBuffer</code>) parameter.
+	 * @throws IOException IOException.
+	 */
+	public synchronized void write(final ByteBuffer src) throws IOException {
+		throwLingerFailure();
+		final int len = src.remaining();
+		if (src.hasArray()) {
+			write(src.array(), src.arrayOffset() + src.position(), len);
+			src.position(src.position() + len);
+			return;
+		}
+		int obc = 0;
+		int size = 0;
+		if (this.pp != null) {
+			obc = this.pp.outsBufferCount;
+			size = this.pp.outsBufferSize;
+		} else if (this.sp != null) {
+			obc = this.sp.outsBufferCount;
+			size = this.sp.outsBufferSize;
+		}
+		if (src.isDirect() && (obc == 0) && (size == this.bufsize) && (len >= size)) {
+			final int rc = writeDirectNC(src, src.position(), len);
+			if (rc != -2) {
+				if (rc > 0) {
+					src.position(src.position() + rc);
+				}
+				if (rc != len) {
+					throw writeFailure(rc);
+				}
+				reportBufferEmpty();
+				return;
+			}
+		}
+		final byte[] b = new byte[len];
+		src.get(b);
+		write(b, 0, len);
+	}
+
+	/**
+	 * Write one byte. While the byte fits in the output buffer without
+	 * filling it, it is stored directly with no allocation and no native
+	 * call; otherwise it goes through {@link #write(byte[], int, int)} in a
+	 * reused one byte array.
+	 * @param i The byte (<code>int</code>) parameter.
+	 * @throws IOException IOException.
+	 */
+	public synchronized void write(final int i) throws IOException {
+		int obc;
+		int size;
+		throwLingerFailure();
+		if (this.sp != null) {
+			obc = this.sp.outsBufferCount;
+			size = this.sp.outsBufferSize;
+		} else {
+			obc = this.pp.outsBufferCount;
+			size = this.pp.outsBufferSize;
+		}
+		if ((size == this.bufsize) && (obc + 1 < size)) {
+			this.buffer[obc] = (byte) i;
+			if (this.sp != null) {
+				this.sp.outsBufferCount = obc + 1;
+			} else {
+				this.pp.outsBufferCount = obc + 1;
+			}
+			if (obc == 0) {
+				linger();
+			}
+			return;
+		}
+		this.single[0] = (byte) i;
+		write(this.single, 0, 1);
+	}
+
+// -----------------------------------------------------------------------------
+// Methods - package
+// -----------------------------------------------------------------------------
+	/**
+	 * Gets the linger deadline (long) value.
+	 * @return The time, on the <code>OutputLingerFlusher.currentTime()</code> clock, at which buffered data must be flushed (<code>long</code>), or 0 if none is pending.
+	 */
+	long getLingerDeadline() {
+		return this.lingerDeadline;
+	}
+
+	/**
+	 * Gets the task that flushes this stream once its linger deadline has
+	 * passed. While one is outstanding the deadline stays armed, so the
+	 * stream is not scheduled again and at most one runs at a time. Not
+	 * synchronized, as the timer must not wait for a busy stream.
+	 * @return The linger flush (<code>OutputLingerFlush</code>) value.
+	 */
+	OutputLingerFlush getLingerFlush() {
+		return this.lingerFlush;
+	}
+
+	/**
+	 * Arm the linger timer once data is left in the buffer. The deadline is
+	 * set by the first byte to enter an empty buffer and later writes do not
+	 * push it back, so a steady trickle of writes still goes out on time.
+	 * @throws IOException IOException.
+	 */
+	private void linger() throws IOException {
+		int obc = 0;
+		int linger = -1;
+		if (this.pp != null) {
+			obc = this.pp.outsBufferCount;
+			linger = this.pp.outsLinger;
+		} else if (this.sp != null) {
+			obc = this.sp.outsBufferCount;
+			linger = this.sp.outsLinger;
+		}
+		if (obc == 0) {
+			this.lingerDeadline = 0;
+		} else if (linger == 0) {
+			flush();
+		} else if ((linger > 0) && (this.lingerDeadline == 0)) {
+			final long deadline = OutputLingerFlusher.currentTime() + (linger + 999) / 1000;
+			this.lingerDeadline = deadline != 0 ? deadline : 1; // 0 means not armed
+			OutputLingerFlusher.schedule(this);
+		}
+	}
+
+	/**
+	 * Flush the buffer if its linger deadline has passed; called by the
+	 * linger timer's task. The timer has nobody to report a failure to, so
+	 * it is kept and thrown by the next write or flush on this stream.
+	 */
+	synchronized void lingerExpired() {
+		final long deadline = this.lingerDeadline;
+		if (deadline == 0) {
+			return;
+		}
+		if (deadline <= OutputLingerFlusher.currentTime()) {
+			try {
+				flush();
+			} catch (final IOException e) {
+				this.lingerFailure = e;
+			}
+		} else {
+			OutputLingerFlusher.schedule(this);
+		}
+	}
+
+	/**
+	 * Throw the failure of the last timer flush, if any, once.
+	 * @throws IOException IOException.
+	 */
+	private void throwLingerFailure() throws IOException {
+		final IOException e = this.lingerFailure;
+		if (e != null) {
+			this.lingerFailure = null;
 			throw e;
 		}
-		// If the internal buffer has been drained out to the device, send
-		// a corresponding event, if notification is set.
+	}
+
+	/**
+	 * Write one frame straight to the device in a single call, after any
+	 * data still held in the internal buffer.
+	 * @param b The frame (<code>byte[]</code>) parameter.
+	 * @param off The offset (<code>int</code>) parameter.
+	 * @param len The length (<code>int</code>) parameter.
+	 * @throws IOException IOException.
+	 */
+	synchronized void writeFrame(final byte b[], final int off, final int len) throws IOException {
+		int obc = 0;
+		throwLingerFailure();
+		if (this.pp != null) {
+			obc = this.pp.outsBufferCount;
+			this.pp.outsBufferCount = 0;
+		} else if (this.sp != null) {
+			obc = this.sp.outsBufferCount;
+			this.sp.outsBufferCount = 0;
+		}
+		int rc;
+		if ((obc != 0) && ((rc = writeDeviceNC(this.buffer, 0, obc)) != obc)) {
+			throw writeFailure(rc);
+		}
+		if ((rc = writeDeviceNC(b, off, len)) != len) {
+			throw writeFailure(rc);
+		}
+		reportBufferEmpty();
+	}
+
+	/**
+	 * If the internal buffer has been drained out to the device, send a
+	 * corresponding event, if notification is set.
+	 */
+	void reportBufferEmpty() {
+		int obc = 0;
+		boolean notify = false;
 		if (this.pp != null) {
 			obc = this.pp.outsBufferCount;
 			notify = this.pp.notifyOnBufferFlag;
@@ -185,19 +407,45 @@ public class NSDeviceOutputStream extends OutputStream {
 			if (this.pp != null) {
 				this.pp.reportParallelEvent(ParallelPortEvent.PAR_EV_BUFFER, false, true);
 			} else if (this.sp != null) {
-				this.sp.reportSerialEvent(SerialPortEvent.OUTPUT_BUFFER_EMPTY, false, true);
+				this.sp.reportOutputWritten();
 			}
 		}
 	}
 
-	public void write(final int i) throws IOException {
-		final byte b[] = new byte[1];
-		b[0] = (byte) (i & 0xff);
-		write(b, 0, 1);
+	/**
+	 * Close the descriptor opened for timed writes, if any, and detach the
+	 * stream from the device so later writes fail at once. Called by the
+	 * port when it closes.
+	 */
+	synchronized void closeSend() {
+		if (this.sendFd >= 0) {
+			closeSendNC(this.sendFd);
+		}
+		this.sendFd = -2;
+		this.fd = -1;
+		this.tmoDone = false;
+	}
+
+	/**
+	 * Build the exception for a device write that stopped after the
+	 * specified number of bytes. If the send timeout expired the result is
+	 * an <code>InterruptedIOException</code> whose
+	 * <code>bytesTransferred</code> is that count.
+	 * @param written The written (<code>int</code>) parameter.
+	 * @return The failure (<code>IOException</code>) value.
+	 */
+	private IOException writeFailure(final int written) {
+		if (this.tmoDone) {
+			final InterruptedIOException e = new InterruptedIOException("send timed out"); //$NON-NLS-1$
+			e.bytesTransferred = written < 0 ? 0 : written;
+			return e;
+		}
+		return new IOException();
 	}
 
-// -----------------------------------------------------------------------------
-// Methods - private
-// -----------------------------------------------------------------------------
 	private native int writeDeviceNC(byte buf[], int offset, int nBytes);
+
+	private native int writeDirectNC(ByteBuffer src, int position, int nBytes);
+
+	private native int closeSendNC(int sfd);
 }
@@ -50,6 +50,12 @@ public class NSParallelPort extends ParallelPort {
 	 */
 	public static final int LPT_MODE_NIBBLE = 5;
 
+	/**
+	 * Define the event mask all (int) constant; an event mask has bit
+	 * <code>1 &lt;&lt; eventType</code> set for each wanted event type.
+	 */
+	public static final int EVENT_MASK_ALL = -1;
+
 	/**
 	 * Define the mode (int) field.
 	 */
@@ -60,6 +66,13 @@ public class NSParallelPort extends ParallelPort {
 	 */
 	int fd = -1; // file descriptor for the open device
 
+	/**
+	 * Define the wakeup (int) field, the handle of the native wakeup
+	 * descriptor that every wait on the port also polls; set by
+	 * openDeviceNC, 0 if there is none.
+	 */
+	int wakeup = 0;
+
 	/**
 	 * Define the fd (FileDescriptor) field.
 	 */
@@ -101,7 +114,8 @@ public class NSParallelPort extends ParallelPort {
 	boolean rcvFramingByteReceived;
 
 	/**
-	 * Disable read buffering for now
+	 * Define the ins buffer size (int) field, the size of the input stream's
+	 * read-ahead buffer; 0, the default, disables read-ahead.
 	 */
 	int insBufferSize = 0;
 
@@ -126,9 +140,21 @@ public class NSParallelPort extends ParallelPort {
 	int outsBufferCount = 0;
 
 	/**
-	 * Define the listener (ParallelPortEventListener) field.
+	 * Define the outs linger (int) field, the microseconds a partly filled
+	 * output buffer may wait before it is flushed; -1 waits for a full
+	 * buffer or an explicit flush, 0 flushes after every write.
 	 */
-	private ParallelPortEventListener listener = null;
+	int outsLinger = -1;
+
+	/**
+	 * Define the listeners (CommListenerList) field, replaced as a whole when a listener is added or removed.
+	 */
+	private volatile CommListenerList listeners = CommListenerList.EMPTY;
+
+	/**
+	 * Define the events (ParallelPortEvent[]) field, one event per type and value pair once reported.
+	 */
+	private final ParallelPortEvent[] events = new ParallelPortEvent[12];
 
 	/**
 	 * Define the notify on error flag (boolean) field.
@@ -190,16 +216,27 @@ public class NSParallelPort extends ParallelPort {
 	}
 
 	/**
-	 * Add event listener with the specified lst parameter.
+	 * Add event listener with the specified lst parameter. Any number of
+	 * listeners may be added; each receives every event type.
 	 * @param lst The lst (<code>ParallelPortEventListener</code>) parameter.
 	 * @throws TooManyListenersException Too Many Listeners Exception.
 	 * @see #removeEventListener()
 	 */
-	public synchronized void addEventListener(final ParallelPortEventListener lst) throws TooManyListenersException {
-		if (this.listener != null) {
-			throw new TooManyListenersException();
-		}
-		this.listener = lst;
+	public void addEventListener(final ParallelPortEventListener lst) throws TooManyListenersException {
+		addEventListener(lst, EVENT_MASK_ALL);
+	}
+
+	/**
+	 * Add event listener with the specified lst and event mask parameters.
+	 * The listener only receives the event types whose bit
+	 * <code>1 &lt;&lt; eventType</code> is set in the mask. Adding a listener
+	 * again replaces its mask.
+	 * @param lst The lst (<code>ParallelPortEventListener</code>) parameter.
+	 * @param eventMask The event mask (<code>int</code>) parameter.
+	 * @see #removeEventListener(ParallelPortEventListener)
+	 */
+	public synchronized void addEventListener(final ParallelPortEventListener lst, final int eventMask) {
+		this.listeners = this.listeners.add(lst, eventMask);
 		if (this.notifyOnErrorFlag && (this.errorThread == null)) {
 			this.errorThread = new ParallelErrorEventThread(this.fd, this);
 			// errorThread.setDaemon( true ); // check it out
@@ -208,7 +245,10 @@ public class NSParallelPort extends ParallelPort {
 	}
 
 	/**
-	 * Close.
+	 * Close. The error monitor and every reader blocked on the port are
+	 * woken at once; the monitor is joined for up to
+	 * <code>org.eclipse.soda.dk.comm.close.timeout</code> milliseconds
+	 * (1000 by default) before the device is closed.
 	 */
 	public void close() {
 		// check if either fd or opened is not valid
@@ -216,12 +256,29 @@ public class NSParallelPort extends ParallelPort {
 		if (this.fd == -1) {
 			return;
 		}
+		final long deadline = System.currentTimeMillis() + Integer.getInteger(NSSerialPort.CLOSE_TIMEOUT_PROPERTY, 1000).intValue();
+		try {
+			wakeupNC(this.fd);
+		} catch (final UnsatisfiedLinkError e) {
+			// older natives: the monitor sees its stop flag on the next timeout
+		}
+		final Thread error = this.errorThread;
 		// if the error thread is alive, kill it
 		if (this.errorThread != null) {
 			this.errorThread.setStopThreadFlag(1);
 			this.errorThread = null;
 			this.notifyOnErrorFlag = false;
 		}
+		if ((error != null) && (error != Thread.currentThread())) {
+			final long left = deadline - System.currentTimeMillis();
+			if (left > 0) {
+				try {
+					error.join(left);
+				} catch (final InterruptedException e) {
+					// close without waiting
+				}
+			}
+		}
 		// check ins and outs
 		if (this.outs != null) {
 			try {
@@ -232,6 +289,8 @@ public class NSParallelPort extends ParallelPort {
 			this.outs = null;
 		}
 		if (this.ins != null) {
+			// Later reads fail at once instead of touching a closed fd.
+			this.ins.fd = -1;
 			this.ins = null;
 		}
 		/* close the device. */
@@ -343,6 +402,7 @@ public class NSParallelPort extends ParallelPort {
 				throw new IOException();
 			}
 			this.ins.fd = this.fd;
+			this.ins.wakeup = this.wakeup;
 		}
 		return this.ins;
 	}
@@ -364,6 +424,15 @@ public class NSParallelPort extends ParallelPort {
 		return (this.outsBufferSize > this.outsBufferCount ? this.outsBufferSize - this.outsBufferCount : 0);
 	}
 
+	/**
+	 * Gets the output buffer linger (int) value.
+	 * @return The output buffer linger (<code>int</code>) value in microseconds, or -1 if disabled.
+	 * @see #setOutputBufferLinger(int)
+	 */
+	public int getOutputBufferLinger() {
+		return this.outsLinger;
+	}
+
 	/**
 	 * Gets the output buffer size (int) value.
 	 * @return The output buffer size (<code>int</code>) value.
@@ -531,7 +600,7 @@ public class NSParallelPort extends ParallelPort {
 		if (notify) {
 			if (!this.notifyOnErrorFlag) {
 				// instantiate ParallelErrorEventThread
-				if ((this.errorThread == null) && (this.listener != null)) {
+				if ((this.errorThread == null) && (this.listeners.size() != 0)) {
 					this.errorThread = new ParallelErrorEventThread(this.fd, this);
 					this.errorThread.start();
 				}
@@ -558,29 +627,63 @@ public class NSParallelPort extends ParallelPort {
 	private native int openDeviceNC(final String deviceName, final int semID);
 
 	/**
-	 * Remove event listener.
+	 * Remove all event listeners.
 	 * @see #addEventListener(ParallelPortEventListener)
 	 */
 	public synchronized void removeEventListener() {
-		if (this.listener != null) {
+		if (this.listeners.size() != 0) {
 			if (this.errorThread != null) {
 				this.errorThread.setStopThreadFlag(1);
 			}
 			this.errorThread = null;
-			this.listener = null;
+			this.listeners = CommListenerList.EMPTY;
+		}
+	}
+
+	/**
+	 * Remove the specified event listener. The error monitor stops with the last listener.
+	 * @param lst The lst (<code>ParallelPortEventListener</code>) parameter.
+	 * @see #addEventListener(ParallelPortEventListener, int)
+	 */
+	public synchronized void removeEventListener(final ParallelPortEventListener lst) {
+		final CommListenerList list = this.listeners.remove(lst);
+		if (list.size() == 0) {
+			removeEventListener();
+		} else {
+			this.listeners = list;
 		}
 	}
 
 	/**
 	 * Report parallel event with the specified event type, oldvalue and newvalue parameters.
+	 * Called from the error monitor; takes no lock, and allocates nothing
+	 * once each event type and value pair has been reported.
 	 * @param eventType The event type (<code>int</code>) parameter.
 	 * @param oldvalue The oldvalue (<code>boolean</code>) parameter.
 	 * @param newvalue The newvalue (<code>boolean</code>) parameter.
 	 */
-	synchronized void reportParallelEvent(final int eventType, final boolean oldvalue, final boolean newvalue) {
-		if (this.listener != null) {
-			final ParallelPortEvent pe = new ParallelPortEvent(this, eventType, oldvalue, newvalue);
-			this.listener.parallelEvent(pe);
+	void reportParallelEvent(final int eventType, final boolean oldvalue, final boolean newvalue) {
+		final CommListenerList list = this.listeners;
+		if (!list.accepts(eventType)) {
+			return;
+		}
+		final int kind = (eventType << 2) | (oldvalue ? 2 : 0) | (newvalue ? 1 : 0);
+		ParallelPortEvent pe = kind < this.events.length ? this.events[kind] : null;
+		if (pe == null) {
+			pe = new ParallelPortEvent(this, eventType, oldvalue, newvalue);
+			if (kind < this.events.length) {
+				this.events[kind] = pe;
+			}
+		}
+		final int bit = 1 << eventType;
+		for (int i = 0; i < list.masks.length; i++) {
+			if ((list.masks[i] & bit) != 0) {
+				try {
+					((ParallelPortEventListener) list.listeners[i]).parallelEvent(pe);
+				} catch (final RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
 		}
 	}
 
@@ -592,12 +695,20 @@ public class NSParallelPort extends ParallelPort {
 	}
 
 	/**
-	 * Sets the input buffer size value.
+	 * Sets the input buffer size value. A positive size turns on read-ahead:
+	 * single byte and small reads are then served from a buffer of this
+	 * many bytes, refilled with one device read. 0, the default, reads the
+	 * device for every call.
 	 * @param size The size (<code>int</code>) parameter.
 	 * @see #getInputBufferSize()
 	 */
 	public void setInputBufferSize(final int size) {
-		/* do nothing */
+		if (size >= 0) {
+			this.insBufferSize = size;
+			if (this.ins != null) {
+				this.ins.setBufferSize(size);
+			}
+		}
 	}
 
 	/**
@@ -611,6 +722,23 @@ public class NSParallelPort extends ParallelPort {
 		throw new UnsupportedCommOperationException();
 	}
 
+	/**
+	 * Sets the output buffer linger value. Once the first byte lands in an
+	 * empty output buffer, the buffer is flushed after at most this many
+	 * microseconds even if it is not full, so small writes are coalesced
+	 * without the caller having to flush. The timer has millisecond
+	 * resolution. 0 flushes at the end of every write; -1, the default,
+	 * disables the timer.
+	 * @param micros The micros (<code>int</code>) parameter.
+	 * @see #getOutputBufferLinger()
+	 * @see #setOutputBufferSize(int)
+	 */
+	public void setOutputBufferLinger(final int micros) {
+		if (micros >= -1) {
+			this.outsLinger = micros;
+		}
+	}
+
 	/**
 	 * Sets the output buffer size value.
 	 * @param size The size (<code>int</code>) parameter.
@@ -628,4 +756,13 @@ public class NSParallelPort extends ParallelPort {
 	public void suspend() {
 		this.outsSuspended = true;
 	}
+
+	/**
+	 * Wakeup nc with the specified fd parameter and return the int result.
+	 * Signals the port's wakeup descriptor, which every native wait on the
+	 * port also polls.
+	 * @param fd The fd (<code>int</code>) parameter.
+	 * @return Results of the wakeup nc (<code>int</code>) value, -2 if not supported.
+	 */
+	private native int wakeupNC(final int fd);
 }
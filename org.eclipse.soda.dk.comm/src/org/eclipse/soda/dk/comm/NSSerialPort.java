@@ -12,6 +12,7 @@ package org.eclipse.soda.dk.comm;
  ************************************************************************/
 import javax.comm.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -23,7 +24,7 @@ import java.util.*;
  * @version 1.2.0
  * @since 1.0
  */
-class NSSerialPort extends SerialPort {
+public class NSSerialPort extends SerialPort {
 	/**
 	 * Define the databits5 (int) constant.
 	 */
@@ -109,6 +110,44 @@ class NSSerialPort extends SerialPort {
 	 */
 	public static final int FLOWCONTROL_XONXOFF_OUT = 8;
 
+	/**
+	 * Define the error count overrun (int) constant; index into the
+	 * counts filled in by {@link #getErrorCounts(int[])}.
+	 */
+	public static final int ERROR_COUNT_OVERRUN = 0;
+
+	/**
+	 * Define the error count parity (int) constant.
+	 */
+	public static final int ERROR_COUNT_PARITY = 1;
+
+	/**
+	 * Define the error count framing (int) constant.
+	 */
+	public static final int ERROR_COUNT_FRAMING = 2;
+
+	/**
+	 * Define the error count break (int) constant.
+	 */
+	public static final int ERROR_COUNT_BREAK = 3;
+
+	/**
+	 * Define the error count buffer overrun (int) constant; characters
+	 * dropped because the tty buffer was full.
+	 */
+	public static final int ERROR_COUNT_BUFFER_OVERRUN = 4;
+
+	/**
+	 * Define the error counts (int) constant; the number of counters.
+	 */
+	public static final int ERROR_COUNTS = 5;
+
+	/**
+	 * Define the event mask all (int) constant; an event mask has bit
+	 * <code>1 &lt;&lt; eventType</code> set for each wanted event type.
+	 */
+	public static final int EVENT_MASK_ALL = -1;
+
 	/**
 	 * Define the flowcontrol (int) field.
 	 */
@@ -159,6 +198,13 @@ class NSSerialPort extends SerialPort {
 	 */
 	int fd = -1; // file descriptor for the open device
 
+	/**
+	 * Define the wakeup (int) field, the handle of the native wakeup
+	 * descriptor that every wait on the port also polls; set by
+	 * openDeviceNC, 0 if there is none.
+	 */
+	int wakeup = 0;
+
 	/**
 	 * Define the fd (FileDescriptor) field.
 	 */
@@ -170,10 +216,40 @@ class NSSerialPort extends SerialPort {
 	private NSDeviceInputStream ins = null;
 
 	/**
-	 * Define the outs (NSDeviceOutputStream) field.
+	 * Define the outs (NSDeviceOutputStream) field, guarded by this port's monitor.
 	 */
 	private NSDeviceOutputStream outs = null;
 
+	/**
+	 * Define the closed (boolean) field, set once close has begun; guarded by this port's monitor.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Define the channel (SerialChannel) field.
+	 */
+	private SerialChannel channel = null;
+
+	/**
+	 * Define the write queue (SerialWriteQueue) field.
+	 */
+	private SerialWriteQueue writeQueue = null;
+
+	/**
+	 * Define the output empty on drain (boolean) field.
+	 */
+	private boolean outputEmptyOnDrain = false;
+
+	/**
+	 * Define the drain thread (SerialDrainThread) field.
+	 */
+	private SerialDrainThread drainThread = null;
+
+	/**
+	 * Define the receive ring (SerialReceiveRing) field.
+	 */
+	private SerialReceiveRing receiveRing = null;
+
 	/**
 	 * Define the rcv threshold (int) field.
 	 */
@@ -184,6 +260,16 @@ class NSSerialPort extends SerialPort {
 	 */
 	int rcvTimeout = -1;
 
+	/**
+	 * Define the snd timeout (int) field, in milliseconds; -1 lets writes block.
+	 */
+	int sndTimeout = -1;
+
+	/**
+	 * Define the close timeout property (String) constant.
+	 */
+	static final String CLOSE_TIMEOUT_PROPERTY = "org.eclipse.soda.dk.comm.close.timeout"; //$NON-NLS-1$
+
 	/**
 	 * Define the rcv framing (boolean) field.
 	 */
@@ -200,7 +286,8 @@ class NSSerialPort extends SerialPort {
 	boolean rcvFramingByteReceived;
 
 	/**
-	 * Disable read buffering for now
+	 * Define the ins buffer size (int) field, the size of the input stream's
+	 * read-ahead buffer; 0, the default, disables read-ahead.
 	 */
 	int insBufferSize = 0;
 
@@ -220,9 +307,26 @@ class NSSerialPort extends SerialPort {
 	int outsBufferCount = 0;
 
 	/**
-	 * Define the listener (SerialPortEventListener) field.
+	 * Define the outs linger (int) field, the microseconds a partly filled
+	 * output buffer may wait before it is flushed; -1 waits for a full
+	 * buffer or an explicit flush, 0 flushes after every write.
+	 */
+	int outsLinger = -1;
+
+	/**
+	 * Define the listeners (CommListenerList) field, replaced as a whole when a listener is added or removed.
+	 */
+	private volatile CommListenerList listeners = CommListenerList.EMPTY;
+
+	/**
+	 * Define the dispatcher (SerialEventDispatcher) field.
+	 */
+	private final SerialEventDispatcher dispatcher = new SerialEventDispatcher(this);
+
+	/**
+	 * Define the pusher (SerialDataPusher) field, which calls the data listener on the event executor.
 	 */
-	private SerialPortEventListener listener = null;
+	private final SerialDataPusher pusher = new SerialDataPusher(this, this.dispatcher);
 
 	/**
 	 * Define the notify on ctsflag (boolean) field.
@@ -274,6 +378,21 @@ class NSSerialPort extends SerialPort {
 	 */
 	private boolean notifyOnDataFlag = false;
 
+	/**
+	 * Define the push data (boolean) field, set while a data listener is registered.
+	 */
+	volatile boolean pushData = false;
+
+	/**
+	 * Define the data listener (SerialDataListener) field.
+	 */
+	private volatile SerialDataListener dataListener = null;
+
+	/**
+	 * Define the push size (int) constant, the most bytes delivered at once.
+	 */
+	static final int PUSH_SIZE = 4096;
+
 	/**
 	 * Define the status thread (SerialStatusEventThread) field.
 	 */
@@ -282,15 +401,38 @@ class NSSerialPort extends SerialPort {
 	/**
 	 * Define the data thread (SerialDataEventThread) field.
 	 */
-	private SerialDataEventThread dataThread = null;
+	private volatile SerialDataEventThread dataThread = null;
+
+	/**
+	 * Define the data reactor (SerialDataReactor) field.
+	 */
+	private SerialDataReactor dataReactor = null;
 
 	/**
-	 * Constructor
+	 * Define the data slot (int) field, the port's slot in its data reactor.
+	 */
+	int dataSlot = -1;
+
+	/**
+	 * Define the data event armed (boolean) field. Cleared when a
+	 * DATA_AVAILABLE event is delivered and set again once the application
+	 * has read from the port, so a burst of input produces a single event.
+	 */
+	private volatile boolean dataEventArmed = true;
+
+	/**
+	 * Define the data available threshold (int) field.
+	 */
+	private int dataAvailableThreshold = 1;
+
+	/**
+	 * Constructor. Only the driver opens ports, on behalf of
+	 * <code>CommPortIdentifier.open</code>, so ownership is always tracked.
 	 * @param portName The port name (<code>String</code>) parameter.
 	 * @param driver The driver (<code>NSCommDriver</code>) parameter.
 	 * @throws IOException IOException.
 	 */
-	public NSSerialPort(final String portName, final NSCommDriver driver) throws IOException {
+	NSSerialPort(final String portName, final NSCommDriver driver) throws IOException {
 		/* caller wants port portName */
 		/* NSSerialPort-extends-SerialPort-extends-CommPort->name */
 		this.name = portName;
@@ -320,36 +462,111 @@ class NSSerialPort extends SerialPort {
 	}
 
 	/**
-	 * Add event listener with the specified lstnr parameter.
+	 * Add event listener with the specified lstnr parameter. Any number of
+	 * listeners may be added; each receives every event type.
 	 * @param lstnr The lstnr (<code>SerialPortEventListener</code>) parameter.
 	 * @throws TooManyListenersException Too Many Listeners Exception.
 	 * @see #removeEventListener()
 	 */
-	public synchronized void addEventListener(final SerialPortEventListener lstnr) throws TooManyListenersException {
-		if (this.listener != null) {
-			throw new TooManyListenersException();
-		}
-		this.listener = lstnr;
+	public void addEventListener(final SerialPortEventListener lstnr) throws TooManyListenersException {
+		addEventListener(lstnr, EVENT_MASK_ALL);
+	}
+
+	/**
+	 * Add event listener with the specified lstnr and event mask parameters.
+	 * The listener only receives the event types whose bit
+	 * <code>1 &lt;&lt; eventType</code> is set in the mask. Adding a listener
+	 * again replaces its mask. The notifyOn methods still decide which
+	 * events the port monitors at all.
+	 * @param lstnr The lstnr (<code>SerialPortEventListener</code>) parameter.
+	 * @param eventMask The event mask (<code>int</code>) parameter.
+	 * @see #removeEventListener(SerialPortEventListener)
+	 */
+	public synchronized void addEventListener(final SerialPortEventListener lstnr, final int eventMask) {
+		this.listeners = this.listeners.add(lstnr, eventMask);
 		// check all other related flags, all must be false
 		if ((this.notifyOnDSRFlag || this.notifyOnRIFlag || this.notifyOnCDFlag || this.notifyOnORFlag || this.notifyOnPEFlag || this.notifyOnFEFlag || this.notifyOnCTSFlag || this.notifyOnBIFlag) && (this.statusThread == null)) {
 			this.statusThread = new SerialStatusEventThread(this.fd, this);
 			// statusThread.setDaemon( true ); // check it out ???
 			this.statusThread.start();
 		}
-		if (this.notifyOnDataFlag && (this.dataThread == null)) {
-			this.dataThread = new SerialDataEventThread(this.fd, this);
-			// dataThread.setDaemon( true ); // check it out ???
-			this.dataThread.start();
+		if (this.notifyOnDataFlag) {
+			startDataMonitor();
 		}
 	}
 
 	/**
-	 * Close.
+	 * Push a receive timeout set on its own down to the line discipline,
+	 * as VTIME (tenths of a second, rounded up, at most 25.5 s) with VMIN=0.
+	 * A receive threshold never goes to VMIN: the kernel then only reports
+	 * the port readable once VMIN bytes are queued, so a read for fewer
+	 * bytes would wait for the whole threshold, and VTIME would only time
+	 * the gaps between bytes. The native read collects the threshold
+	 * instead, in one call, against the timeout's deadline if one is set.
+	 */
+	private void applyReceiveMode() {
+		if (this.fd == -1) {
+			return;
+		}
+		int vmin = 1;
+		int vtime = 0;
+		// The receive ring applies the timeout itself, and pushed reads
+		// must never wait for more than is pending.
+		if ((this.rcvTimeout > 0) && (this.rcvThreshold <= 0) && (this.receiveRing == null) && !this.pushData) {
+			vtime = (this.rcvTimeout + 99) / 100;
+			if (vtime > 255) {
+				vtime = 255;
+			}
+			vmin = 0;
+		}
+		try {
+			setReceiveModeNC(this.fd, vmin, vtime);
+		} catch (final UnsatisfiedLinkError e) {
+			// an older native library; the input stream keeps the timeout
+		}
+	}
+
+	/**
+	 * Wait until everything written has been transmitted.
+	 * @return <code>true</code> if the driver confirmed the drain.
+	 */
+	boolean drain() {
+		final int dfd = this.fd;
+		if (dfd == -1) {
+			return false;
+		}
+		try {
+			return drainNC(dfd) != -1;
+		} catch (final UnsatisfiedLinkError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Drain nc with the specified fd parameter and return the int result.
+	 * @param fd The fd (<code>int</code>) parameter.
+	 * @return Results of the drain nc (<code>int</code>) value.
+	 */
+	private native int drainNC(final int fd);
+
+	/**
+	 * Close. Every monitor thread and every reader blocked on the port is
+	 * woken at once; blocked reads fail with an IOException. The monitors
+	 * are then joined for up to <code>org.eclipse.soda.dk.comm.close.timeout</code>
+	 * milliseconds in all (1000 by default) before the device is closed.
 	 */
 	public void close() {
 		if (this.fd == -1) {
 			return;
 		}
+		final long deadline = System.currentTimeMillis() + Integer.getInteger(CLOSE_TIMEOUT_PROPERTY, 1000).intValue();
+		try {
+			wakeupNC(this.fd);
+		} catch (final UnsatisfiedLinkError e) {
+			// older natives: the monitors see their stop flags on the next timeout
+		}
+		final Thread status = this.statusThread;
+		final Thread data = this.dataThread;
 		// if thread are alive, kill them
 		if (this.statusThread != null) {
 			this.statusThread.setStopThreadFlag(1);
@@ -362,22 +579,59 @@ class NSSerialPort extends SerialPort {
 			this.notifyOnFEFlag = false;
 			this.notifyOnBIFlag = false;
 		}
-		if (this.dataThread != null) {
-			this.dataThread.setStopThreadFlag(1);
+		this.pusher.shutdown();
+		if ((this.dataThread != null) || (this.dataReactor != null)) {
+			stopDataMonitor();
 			this.notifyOnDataFlag = false;
 		}
+		this.dataListener = null;
+		this.pushData = false;
+		final SerialWriteQueue queue;
+		synchronized (this) {
+			this.closed = true;
+			queue = this.writeQueue;
+			this.writeQueue = null;
+		}
+		if (queue != null) {
+			queue.shutdown();
+		}
+		if (this.drainThread != null) {
+			this.drainThread.shutdown();
+			this.drainThread = null;
+		}
+		if (this.receiveRing != null) {
+			this.receiveRing.shutdown(Math.max(1, deadline - System.currentTimeMillis()));
+			this.receiveRing = null;
+			if (this.ins != null) {
+				this.ins.ring = null;
+			}
+		}
+		this.dispatcher.shutdown();
+		joinMonitor(status, deadline);
+		joinMonitor(data, deadline);
 		// check ins and outs
-		if (this.outs != null) {
+		final NSDeviceOutputStream out;
+		synchronized (this) {
+			out = this.outs;
+			this.outs = null;
+		}
+		if (out != null) {
 			try {
-				this.outs.flush();
+				out.flush();
 			} catch (final IOException e) {
 				e.printStackTrace();
 			}
-			this.outs = null;
+			out.closeSend();
 		}
 		if (this.ins != null) {
+			// Later reads fail at once instead of touching a closed fd.
+			this.ins.fd = -1;
 			this.ins = null;
 		}
+		if (this.channel != null) {
+			this.channel.close();
+			this.channel = null;
+		}
 		/* close the device. */
 		closeDeviceNC(this.fd, this.dle.semID);
 		/* reset fd and opened. */
@@ -401,6 +655,26 @@ class NSSerialPort extends SerialPort {
 	 */
 	public void disableReceiveFraming() {
 		this.rcvFraming = false;
+		applyReceiveMode();
+	}
+
+	/**
+	 * Disable the receive ring. Bytes still in the ring move to the input
+	 * stream's buffer and are read first; after that the input stream reads
+	 * the device directly again.
+	 * @see #enableReceiveRing(int)
+	 */
+	public synchronized void disableReceiveRing() {
+		final SerialReceiveRing ring = this.receiveRing;
+		if (ring != null) {
+			this.receiveRing = null;
+			ring.shutdown(1000);
+			if (this.ins != null) {
+				this.ins.releaseRing();
+			}
+			applyReceiveMode();
+			rearmDataMonitor();
+		}
 	}
 
 	/**
@@ -410,6 +684,7 @@ class NSSerialPort extends SerialPort {
 	 */
 	public void disableReceiveThreshold() {
 		this.rcvThreshold = -1;
+		applyReceiveMode();
 	}
 
 	/**
@@ -419,16 +694,62 @@ class NSSerialPort extends SerialPort {
 	 */
 	public void disableReceiveTimeout() {
 		this.rcvTimeout = -1;
+		applyReceiveMode();
+	}
+
+	/**
+	 * Disable send timeout.
+	 * @see #enableSendTimeout(int)
+	 * @see #getSendTimeout()
+	 */
+	public void disableSendTimeout() {
+		setSendTimeout(-1);
 	}
 
 	/**
 	 * Enable receive framing with the specified rcv framing byte parameter.
+	 * Once enabled, a read returns as soon as the framing byte (low 8 bits of
+	 * the parameter) has been received, with the framing byte as its last byte.
 	 * @param rcvFramingByte The rcv framing byte (<code>int</code>) parameter.
 	 * @throws UnsupportedCommOperationException Unsupported Comm Operation Exception.
 	 * @see #disableReceiveFraming()
 	 */
 	public void enableReceiveFraming(final int rcvFramingByte) throws UnsupportedCommOperationException {
-		throw new UnsupportedCommOperationException();
+		this.rcvFramingByte = rcvFramingByte & 0xFF;
+		this.rcvFramingByteReceived = false;
+		this.rcvFraming = true;
+		applyReceiveMode();
+	}
+
+	/**
+	 * Enable the receive ring with the specified size parameter. A native
+	 * thread then reads the port continuously into an off-heap ring of at
+	 * least this many bytes, rounded up to a power of two. The kernel's tty
+	 * buffer keeps draining while the JVM is paused, and input stream reads
+	 * copy from the ring without calling into native code. Receive
+	 * threshold, timeout and framing keep their meaning. A ring already
+	 * enabled is replaced; the bytes unread in it are kept, as by
+	 * {@link #disableReceiveRing()}. Where the natives
+	 * cannot run a ring, the stream keeps reading the device directly.
+	 * @param size The size (<code>int</code>) parameter, in bytes.
+	 * @throws UnsupportedCommOperationException If the port is not open.
+	 * @see #disableReceiveRing()
+	 * @see #getReceiveRingHighWater()
+	 */
+	public synchronized void enableReceiveRing(final int size) throws UnsupportedCommOperationException {
+		if (this.fd == -1) {
+			throw new UnsupportedCommOperationException();
+		}
+		disableReceiveRing();
+		final SerialReceiveRing ring = new SerialReceiveRing(this.fd, size, this);
+		ring.setNotifyOnData(this.notifyOnDataFlag || this.pushData);
+		this.receiveRing = ring;
+		applyReceiveMode();
+		if (this.ins != null) {
+			this.ins.ring = ring;
+		}
+		ring.start();
+		rearmDataMonitor();
 	}
 
 	/**
@@ -441,6 +762,7 @@ class NSSerialPort extends SerialPort {
 	public void enableReceiveThreshold(final int thresh) throws UnsupportedCommOperationException {
 		if (thresh > 0) {
 			this.rcvThreshold = thresh;
+			applyReceiveMode();
 		}
 	}
 
@@ -457,6 +779,25 @@ class NSSerialPort extends SerialPort {
 		} else if (rt == 0) {
 			this.rcvTimeout = -1;
 		}
+		applyReceiveMode();
+	}
+
+	/**
+	 * Enable send timeout with the specified st parameter. A write that
+	 * cannot hand all of its data to the driver within this many
+	 * milliseconds, for example because CTS stays low, stops and throws an
+	 * <code>InterruptedIOException</code> whose <code>bytesTransferred</code>
+	 * is the number of bytes that did go out. 0 disables the timeout.
+	 * @param st The st (<code>int</code>) parameter.
+	 * @see #disableSendTimeout()
+	 * @see #getSendTimeout()
+	 */
+	public void enableSendTimeout(final int st) {
+		if (st > 0) {
+			setSendTimeout(st);
+		} else if (st == 0) {
+			setSendTimeout(-1);
+		}
 	}
 
 	/**
@@ -500,6 +841,22 @@ class NSSerialPort extends SerialPort {
 		return this.baudrate;
 	}
 
+	/**
+	 * Gets the channel value, a byte channel with scatter/gather support over
+	 * this port's input and output streams.
+	 * @return The channel (<code>SerialChannel</code>) value.
+	 * @throws IOException IOException.
+	 */
+	public synchronized SerialChannel getChannel() throws IOException {
+		if (this.fd == -1) {
+			throw new IOException();
+		}
+		if (this.channel == null) {
+			this.channel = new SerialChannel(this);
+		}
+		return this.channel;
+	}
+
 	/**
 	 * Gets the data bits (int) value.
 	 * @return The data bits (<code>int</code>) value.
@@ -535,6 +892,48 @@ class NSSerialPort extends SerialPort {
 	 */
 	private native int getDataBitsNC(final int fd);
 
+	/**
+	 * Gets the number of events dropped because the listener fell so far
+	 * behind that the event ring was full. The ring size is set with the
+	 * <code>org.eclipse.soda.dk.comm.event.ring</code> system property.
+	 * @return The dropped event count (<code>long</code>) value.
+	 */
+	public long getDroppedEventCount() {
+		return this.dispatcher.getDropped();
+	}
+
+	/**
+	 * Gets the cumulative line error counters kept by the driver, indexed by
+	 * the <code>ERROR_COUNT_</code> constants. The driver counts from when it
+	 * initialised the device, not from when this port was opened, so take a
+	 * reading at open and subtract it to get the errors seen since. This is
+	 * a single query of the driver and needs no monitor thread.
+	 * @param counts The counts (<code>int[]</code>) parameter, filled in with up to {@link #ERROR_COUNTS} values.
+	 * @return The number of counters filled in, or -1 if the driver does not keep them.
+	 * @throws NullPointerException If counts is <code>null</code>.
+	 */
+	public int getErrorCounts(final int[] counts) {
+		if (counts == null) {
+			throw new NullPointerException();
+		}
+		if (this.fd == -1) {
+			return -1;
+		}
+		try {
+			return getErrorCountsNC(this.fd, counts);
+		} catch (final UnsatisfiedLinkError e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Get error counts nc with the specified fd and counts parameters and return the int result.
+	 * @param fd The fd (<code>int</code>) parameter.
+	 * @param counts The counts (<code>int[]</code>) parameter.
+	 * @return Results of the get error counts nc (<code>int</code>) value.
+	 */
+	private native int getErrorCountsNC(final int fd, final int[] counts);
+
 	/**
 	 * Gets the currently configured flow control mode.
 	 * Returns:
@@ -605,9 +1004,20 @@ class NSSerialPort extends SerialPort {
 			throw new IOException();
 		}
 		this.ins.fd = this.fd;
+		this.ins.wakeup = this.wakeup;
+		this.ins.ring = this.receiveRing;
 		return this.ins;
 	}
 
+	/**
+	 * Gets the output buffer linger (int) value.
+	 * @return The output buffer linger (<code>int</code>) value in microseconds, or -1 if disabled.
+	 * @see #setOutputBufferLinger(int)
+	 */
+	public int getOutputBufferLinger() {
+		return this.outsLinger;
+	}
+
 	/**
 	 * Gets the output buffer size (int) value.
 	 * @return The output buffer size (<code>int</code>) value.
@@ -618,20 +1028,53 @@ class NSSerialPort extends SerialPort {
 	}
 
 	/**
-	 * Gets the output stream value.
+	 * Gets the output queue depth (int) value: the bytes written to this port
+	 * that have not been transmitted yet, counting both the output stream's
+	 * buffer and the driver's transmit queue (TIOCOUTQ). Senders can use it
+	 * for backpressure.
+	 * @return The output queue depth (<code>int</code>) value, or -1 if the driver cannot report it.
+	 */
+	public int getOutputQueueDepth() {
+		if (this.fd == -1) {
+			return -1;
+		}
+		int queued;
+		try {
+			queued = getOutputQueueNC(this.fd);
+		} catch (final UnsatisfiedLinkError e) {
+			queued = -1;
+		}
+		return queued == -1 ? -1 : queued + this.outsBufferCount;
+	}
+
+	/**
+	 * Get output queue nc with the specified fd parameter and return the int result.
+	 * @param fd The fd (<code>int</code>) parameter.
+	 * @return Results of the get output queue nc (<code>int</code>) value.
+	 */
+	private native int getOutputQueueNC(final int fd);
+
+	/**
+	 * Gets the output stream value. The stream is created on first use;
+	 * the write queue's drainer and the application may ask at once, so
+	 * this is synchronized and both get the same stream.
 	 * @return The output stream (<code>OutputStream</code>) value.
-	 * @throws IOException IOException.
+	 * @throws IOException If the port has been closed.
 	 */
-	public OutputStream getOutputStream() throws IOException {
+	public synchronized OutputStream getOutputStream() throws IOException {
 		if (this.outs != null) {
 			return this.outs;
 		}
+		if (this.closed || (this.fd == -1)) {
+			throw new IOException("port closed"); //$NON-NLS-1$
+		}
 		/* Y: get a new DeviceOutputStream */
 		if ((this.outs = new NSDeviceOutputStream(this, this.dle.portType)) == null) {
 			throw new IOException();
 		}
 		// what do I do here
 		this.outs.fd = this.fd;
+		this.outs.tmo = this.sndTimeout;
 		return this.outs;
 	}
 
@@ -681,6 +1124,37 @@ class NSSerialPort extends SerialPort {
 		return this.rcvFramingByte;
 	}
 
+	/**
+	 * Gets the receive ring full count (long) value. While the ring is full
+	 * the kernel buffer takes the incoming bytes, and data is lost only if
+	 * that overflows too.
+	 * @return The number of times the ring was found full (<code>long</code>), 0 if no ring is enabled.
+	 */
+	public long getReceiveRingFullCount() {
+		final SerialReceiveRing ring = this.receiveRing;
+		return ring == null ? 0 : ring.getFullCount();
+	}
+
+	/**
+	 * Gets the receive ring high water (long) value.
+	 * @return The most bytes the ring has held at once (<code>long</code>), 0 if no ring is enabled.
+	 * @see #getReceiveRingSize()
+	 */
+	public long getReceiveRingHighWater() {
+		final SerialReceiveRing ring = this.receiveRing;
+		return ring == null ? 0 : ring.getHighWater();
+	}
+
+	/**
+	 * Gets the receive ring size (int) value.
+	 * @return The receive ring size (<code>int</code>) value, 0 if no ring is enabled.
+	 * @see #enableReceiveRing(int)
+	 */
+	public int getReceiveRingSize() {
+		final SerialReceiveRing ring = this.receiveRing;
+		return ring == null ? 0 : ring.getCapacity();
+	}
+
 	/**
 	 * Gets the receive threshold (int) value.
 	 * @return The receive threshold (<code>int</code>) value.
@@ -701,6 +1175,16 @@ class NSSerialPort extends SerialPort {
 		return this.rcvTimeout;
 	}
 
+	/**
+	 * Gets the send timeout (int) value.
+	 * @return The send timeout (<code>int</code>) value in milliseconds, or -1 if disabled.
+	 * @see #disableSendTimeout()
+	 * @see #enableSendTimeout(int)
+	 */
+	public int getSendTimeout() {
+		return this.sndTimeout;
+	}
+
 	/**
 	 * Gets the stop bits (int) value.
 	 * @return The stop bits (<code>int</code>) value.
@@ -859,6 +1343,14 @@ class NSSerialPort extends SerialPort {
 		return true;
 	}
 
+	/**
+	 * Gets the send timeout enabled (boolean) value.
+	 * @return The send timeout enabled (<code>boolean</code>) value.
+	 */
+	public boolean isSendTimeoutEnabled() {
+		return this.sndTimeout != -1;
+	}
+
 	/**
 	 * Gets the rts (boolean) value.
 	 * @return The rts (<code>boolean</code>) value.
@@ -867,6 +1359,51 @@ class NSSerialPort extends SerialPort {
 		return this.rts;
 	}
 
+	/**
+	 * Re-arm DATA_AVAILABLE notification after the application read from
+	 * the port. If data is still pending a new event is raised for it.
+	 */
+	void dataConsumed() {
+		if (!this.dataEventArmed) {
+			this.dataEventArmed = true;
+			rearmDataMonitor();
+		}
+	}
+
+	/**
+	 * Gets the data available threshold (int) value.
+	 * @return The data available threshold (<code>int</code>) value.
+	 * @see #setDataAvailableThreshold(int)
+	 */
+	public int getDataAvailableThreshold() {
+		return this.dataAvailableThreshold;
+	}
+
+	/**
+	 * Gets the data report wanted (boolean) value, whether the data monitor
+	 * should report pending bytes again.
+	 * @return <code>true</code> unless a DATA_AVAILABLE event has not yet been followed by a read, or a push is still outstanding.
+	 */
+	boolean isDataReportWanted() {
+		return this.pushData ? this.pusher.isIdle() : this.dataEventArmed;
+	}
+
+	/**
+	 * Gets the notify on data available (boolean) value.
+	 * @return The notify on data available (<code>boolean</code>) value.
+	 */
+	boolean isNotifyOnDataAvailable() {
+		return this.notifyOnDataFlag;
+	}
+
+	/**
+	 * Gets the push direct (boolean) value.
+	 * @return <code>true</code> if the data monitor itself should read the port for the data listener.
+	 */
+	boolean isPushDirect() {
+		return this.pushData && (this.receiveRing == null);
+	}
+
 	/**
 	 * Notify on break interrupt with the specified notify parameter.
 	 * @param notify The notify (<code>boolean</code>) parameter.
@@ -883,6 +1420,8 @@ class NSSerialPort extends SerialPort {
 				this.statusThread.start();
 			}
 			this.notifyOnBIFlag = true;
+			// Let a running monitor switch to sampling the error counters.
+			this.statusThread.wakeup();
 		} else {
 			// check all other related flags, all must be false
 			if (!this.notifyOnCTSFlag && !this.notifyOnDSRFlag && !this.notifyOnRIFlag && !this.notifyOnCDFlag && !this.notifyOnORFlag && !this.notifyOnPEFlag && !this.notifyOnFEFlag) {
@@ -981,24 +1520,20 @@ class NSSerialPort extends SerialPort {
 	 * @param notify The notify (<code>boolean</code>) parameter.
 	 */
 	public synchronized void notifyOnDataAvailable(final boolean notify) {
+		if (this.receiveRing != null) {
+			this.receiveRing.setNotifyOnData(notify || this.pushData);
+		}
 		if (notify) {
 			if (!this.notifyOnDataFlag) {
-				// instantiate SerialDataEventThread
-				if (this.dataThread == null) {
-					this.dataThread = new SerialDataEventThread(this.fd, this);
-					// dataThread.setDaemon( true ); // check it out
-					this.dataThread.start();
-				}
 				this.notifyOnDataFlag = true;
+				startDataMonitor();
 			}
 		} else {
 			if (this.notifyOnDataFlag) {
-				/* Stop SerialDataEventThread */
-				if (this.dataThread != null) {
-					this.dataThread.setStopThreadFlag(1);
-				}
 				this.notifyOnDataFlag = false;
-				this.dataThread = null;
+				if (!this.pushData) {
+					stopDataMonitor();
+				}
 			}
 		}
 	}
@@ -1018,6 +1553,8 @@ class NSSerialPort extends SerialPort {
 				this.statusThread.start();
 			}
 			this.notifyOnFEFlag = true;
+			// Let a running monitor switch to sampling the error counters.
+			this.statusThread.wakeup();
 		} else {
 			// check all other related flags, all must be false
 			if (!this.notifyOnCTSFlag && !this.notifyOnDSRFlag && !this.notifyOnRIFlag && !this.notifyOnCDFlag && !this.notifyOnORFlag && !this.notifyOnPEFlag && !this.notifyOnBIFlag) {
@@ -1038,6 +1575,19 @@ class NSSerialPort extends SerialPort {
 		this.notifyOnBufferFlag = notify;
 	}
 
+	/**
+	 * Sets whether OUTPUT_BUFFER_EMPTY waits for the hardware. By default the
+	 * event fires as soon as the output stream's buffer has been written to
+	 * the driver. When enabled it fires only once the driver has transmitted
+	 * everything (tcdrain), as needed for RS-485 direction switching or
+	 * half-duplex turnaround. The wait happens on a separate thread, so
+	 * writers are never blocked by it.
+	 * @param onDrain The on drain (<code>boolean</code>) parameter.
+	 */
+	public synchronized void notifyOnOutputEmptyDrained(final boolean onDrain) {
+		this.outputEmptyOnDrain = onDrain;
+	}
+
 	/**
 	 * Notify on overrun error with the specified notify parameter.
 	 * @param notify The notify (<code>boolean</code>) parameter.
@@ -1054,6 +1604,8 @@ class NSSerialPort extends SerialPort {
 				this.statusThread.start();
 			}
 			this.notifyOnORFlag = true;
+			// Let a running monitor switch to sampling the error counters.
+			this.statusThread.wakeup();
 		} else {
 			// check all other related flags, all must be false
 			if (!this.notifyOnCTSFlag && !this.notifyOnDSRFlag && !this.notifyOnRIFlag && !this.notifyOnCDFlag && !this.notifyOnPEFlag && !this.notifyOnFEFlag && !this.notifyOnBIFlag) {
@@ -1082,6 +1634,8 @@ class NSSerialPort extends SerialPort {
 				this.statusThread.start();
 			}
 			this.notifyOnPEFlag = true;
+			// Let a running monitor switch to sampling the error counters.
+			this.statusThread.wakeup();
 		} else {
 			// check all other related flags, all must be false
 			if (!this.notifyOnCTSFlag && !this.notifyOnDSRFlag && !this.notifyOnRIFlag && !this.notifyOnCDFlag && !this.notifyOnORFlag && !this.notifyOnFEFlag && !this.notifyOnBIFlag) {
@@ -1130,33 +1684,178 @@ class NSSerialPort extends SerialPort {
 	private native int openDeviceNC(final String deviceName, final int semID);
 
 	/**
-	 * Remove event listener.
+	 * Remove all event listeners.
 	 * @see #addEventListener(SerialPortEventListener)
 	 */
 	public synchronized void removeEventListener() {
-		if (this.listener != null) {
+		if (this.listeners.size() != 0) {
 			if (this.statusThread != null) {
 				this.statusThread.setStopThreadFlag(1);
 			}
 			this.statusThread = null;
-			if (this.dataThread != null) {
-				this.dataThread.setStopThreadFlag(1);
+			if (!this.pushData) {
+				stopDataMonitor();
 			}
-			this.dataThread = null;
-			this.listener = null;
+			this.listeners = CommListenerList.EMPTY;
+		}
+	}
+
+	/**
+	 * Remove the specified event listener. The monitors stop with the last listener.
+	 * @param lstnr The lstnr (<code>SerialPortEventListener</code>) parameter.
+	 * @see #addEventListener(SerialPortEventListener, int)
+	 */
+	public synchronized void removeEventListener(final SerialPortEventListener lstnr) {
+		final CommListenerList list = this.listeners.remove(lstnr);
+		if (list.size() == 0) {
+			removeEventListener();
+		} else {
+			this.listeners = list;
+		}
+	}
+
+	/**
+	 * Deliver the specified event to the listeners that want it. Called on
+	 * the event executor; takes no lock and allocates nothing. A listener
+	 * that throws does not keep the event from the others.
+	 * @param se The se (<code>SerialPortEvent</code>) parameter.
+	 */
+	void deliverSerialEvent(final SerialPortEvent se) {
+		final CommListenerList list = this.listeners;
+		final int bit = 1 << se.eventType;
+		for (int i = 0; i < list.masks.length; i++) {
+			if ((list.masks[i] & bit) != 0) {
+				try {
+					((SerialPortEventListener) list.listeners[i]).serialEvent(se);
+				} catch (final RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hand the specified bytes to the data listener. Called on the event
+	 * executor.
+	 * @param data The data (<code>ByteBuffer</code>) parameter.
+	 * @param timestamp The timestamp (<code>long</code>) parameter.
+	 */
+	void deliverData(final ByteBuffer data, final long timestamp) {
+		final SerialDataListener l = this.dataListener;
+		if (l != null) {
+			l.dataReceived(this, data, timestamp);
+		}
+	}
+
+	/**
+	 * Have the pending bytes read through the input stream and handed to
+	 * the data listener on the event executor. Used where the data monitor
+	 * cannot read the port itself: with a receive ring, and on platforms
+	 * without the reactor.
+	 * @return <code>true</code> if a delivery was requested, <code>false</code> if one is still outstanding.
+	 */
+	private boolean pushFromStream() {
+		if ((this.dataListener == null) || (this.fd == -1)) {
+			return false;
+		}
+		return this.pusher.request();
+	}
+
+	/**
+	 * Called by the pusher once its task has delivered everything, so a
+	 * data monitor waiting for it looks at the port again.
+	 */
+	void pushDone() {
+		final SerialDataEventThread thread = this.dataThread;
+		if (thread != null) {
+			thread.rearm();
+		}
+	}
+
+	/**
+	 * Make the data monitor pick up a change of delivery mode.
+	 */
+	private void rearmDataMonitor() {
+		final SerialDataReactor reactor = this.dataReactor;
+		if (reactor != null) {
+			reactor.rearm(this);
+		}
+		final SerialDataEventThread thread = this.dataThread;
+		if (thread != null) {
+			thread.rearm();
+		}
+	}
+
+	/**
+	 * Report a coalesced DATA_AVAILABLE event for the specified number of
+	 * pending bytes. Nothing is reported while a previous event has not been
+	 * followed by a read, or while fewer than the data available threshold
+	 * bytes are pending.
+	 * @param pending The pending (<code>int</code>) parameter.
+	 * @return <code>true</code> if an event was delivered.
+	 */
+	boolean reportDataAvailable(final int pending) {
+		if (this.pushData) {
+			return pushFromStream();
+		}
+		if (!this.dataEventArmed || (pending < this.dataAvailableThreshold)) {
+			return false;
+		}
+		this.dataEventArmed = false;
+		if (this.listeners.accepts(SerialPortEvent.DATA_AVAILABLE)) {
+			this.dispatcher.publish(SerialPortEvent.DATA_AVAILABLE, true, true, pending);
+		}
+		return true;
+	}
+
+	/**
+	 * Stage bytes the data reactor has read for the data listener.
+	 * @param reactor The reactor (<code>SerialDataReactor</code>) parameter.
+	 * @param data The data (<code>ByteBuffer</code>) parameter.
+	 * @param timestamp The timestamp (<code>long</code>) parameter.
+	 * @return <code>true</code> if the reactor may read the port again.
+	 * @see SerialDataPusher#stage(SerialDataReactor, ByteBuffer, long)
+	 */
+	boolean stageData(final SerialDataReactor reactor, final ByteBuffer data, final long timestamp) {
+		return this.pusher.stage(reactor, data, timestamp);
+	}
+
+	/**
+	 * Report that the output stream's buffer has been written to the driver.
+	 */
+	void reportOutputWritten() {
+		SerialDrainThread thread = null;
+		synchronized (this) {
+			if (this.outputEmptyOnDrain && (this.fd != -1)) {
+				if (this.drainThread == null) {
+					this.drainThread = new SerialDrainThread(this);
+					this.drainThread.start();
+				}
+				thread = this.drainThread;
+			}
+		}
+		if (thread != null) {
+			thread.written();
+		} else {
+			reportSerialEvent(SerialPortEvent.OUTPUT_BUFFER_EMPTY, false, true);
 		}
 	}
 
 	/**
 	 * Report serial event with the specified event type, oldvalue and newvalue parameters.
+	 * Called from the monitor threads; the event is queued for the event
+	 * executor so the caller goes straight back to the device.
 	 * @param eventType The event type (<code>int</code>) parameter.
 	 * @param oldvalue The oldvalue (<code>boolean</code>) parameter.
 	 * @param newvalue The newvalue (<code>boolean</code>) parameter.
 	 */
-	synchronized void reportSerialEvent(final int eventType, final boolean oldvalue, final boolean newvalue) {
-		if (this.listener != null) {
-			final SerialPortEvent se = new SerialPortEvent(this, eventType, oldvalue, newvalue);
-			this.listener.serialEvent(se);
+	void reportSerialEvent(final int eventType, final boolean oldvalue, final boolean newvalue) {
+		if ((eventType == SerialPortEvent.DATA_AVAILABLE) && this.pushData) {
+			pushFromStream();
+			return;
+		}
+		if (this.listeners.accepts(eventType)) {
+			this.dispatcher.publish(eventType, oldvalue, newvalue, -1);
 		}
 	}
 
@@ -1193,6 +1892,20 @@ class NSSerialPort extends SerialPort {
 	 */
 	private native void setDTRNC(final boolean dtr);
 
+	/**
+	 * Sets the executor that delivers events to the listener. By default
+	 * all ports deliver their events on a shared pool that starts a thread
+	 * for each port with events outstanding and lets it go when idle; the
+	 * <code>org.eclipse.soda.dk.comm.event.threads</code> system property
+	 * bounds it. An application can instead run them on its own pool or on virtual
+	 * threads by wrapping its executor. Events are still delivered one at a
+	 * time and in order.
+	 * @param executor The executor (<code>CommEventExecutor</code>) parameter, or <code>null</code> for the shared pool.
+	 */
+	public void setEventExecutor(final CommEventExecutor executor) {
+		this.dispatcher.setExecutor(executor);
+	}
+
 	/**
 	 * Sets the flow control mode value.
 	 * @param flowctrl The flowctrl (<code>int</code>) parameter.
@@ -1232,12 +1945,37 @@ class NSSerialPort extends SerialPort {
 	private native int setFlowControlModeNC(final int fd, final int flowctrl);
 
 	/**
-	 * Sets the input buffer size value.
+	 * Sets the input buffer size value. A positive size turns on read-ahead:
+	 * single byte and small reads are then served from a buffer of this
+	 * many bytes, refilled with one device read. 0, the default, reads the
+	 * device for every call.
 	 * @param size The size (<code>int</code>) parameter.
 	 * @see #getInputBufferSize()
 	 */
 	public void setInputBufferSize(final int size) {
-		/* do nothing */
+		if (size >= 0) {
+			this.insBufferSize = size;
+			if (this.ins != null) {
+				this.ins.setBufferSize(size);
+			}
+		}
+	}
+
+	/**
+	 * Sets the output buffer linger value. Once the first byte lands in an
+	 * empty output buffer, the buffer is flushed after at most this many
+	 * microseconds even if it is not full, so small writes are coalesced
+	 * without the caller having to flush. The timer has millisecond
+	 * resolution. 0 flushes at the end of every write; -1, the default,
+	 * disables the timer.
+	 * @param micros The micros (<code>int</code>) parameter.
+	 * @see #getOutputBufferLinger()
+	 * @see #setOutputBufferSize(int)
+	 */
+	public void setOutputBufferLinger(final int micros) {
+		if (micros >= -1) {
+			this.outsLinger = micros;
+		}
 	}
 
 	/**
@@ -1266,6 +2004,15 @@ class NSSerialPort extends SerialPort {
 	 */
 	private native void setRTSNC(final boolean rts);
 
+	/**
+	 * Set receive mode nc with the specified fd, vmin and vtime parameters and return the int result.
+	 * @param fd The fd (<code>int</code>) parameter.
+	 * @param vmin The vmin (<code>int</code>) parameter.
+	 * @param vtime The vtime (<code>int</code>) parameter.
+	 * @return Results of the set receive mode nc (<code>int</code>) value.
+	 */
+	private native int setReceiveModeNC(final int fd, final int vmin, final int vtime);
+
 	/**
 	 * Sets the rcv fifo trigger value.
 	 * @param trigger The trigger (<code>int</code>) parameter.
@@ -1274,6 +2021,96 @@ class NSSerialPort extends SerialPort {
 		/* do nothing */
 	}
 
+	/**
+	 * Start monitoring the port for incoming data. The port is registered
+	 * with the shared data reactor; where that is not available a dedicated
+	 * SerialDataEventThread is started instead.
+	 */
+	private void startDataMonitor() {
+		if ((this.dataReactor != null) || (this.dataThread != null)) {
+			return;
+		}
+		this.dataReactor = SerialDataReactor.register(this);
+		if (this.dataReactor == null) {
+			this.dataThread = new SerialDataEventThread(this.fd, this);
+			this.dataThread.start();
+		}
+	}
+
+	/**
+	 * Stop monitoring the port for incoming data.
+	 */
+	private void stopDataMonitor() {
+		this.pusher.detach();
+		if (this.dataReactor != null) {
+			this.dataReactor.remove(this);
+			this.dataReactor = null;
+		}
+		if (this.dataThread != null) {
+			this.dataThread.setStopThreadFlag(1);
+			this.dataThread = null;
+		}
+	}
+
+	/**
+	 * Sets the data available threshold value. DATA_AVAILABLE is only raised
+	 * once at least this many bytes are pending in the driver; the event is a
+	 * {@link SerialDataAvailableEvent} carrying the pending count.
+	 * @param threshold The threshold (<code>int</code>) parameter.
+	 * @see #getDataAvailableThreshold()
+	 */
+	public void setDataAvailableThreshold(final int threshold) {
+		this.dataAvailableThreshold = threshold < 1 ? 1 : threshold;
+	}
+
+	/**
+	 * Sets the data listener value. While a data listener is set, the
+	 * port's data monitor reads incoming bytes itself and passes them to the
+	 * listener with the time they were read, saving the separate
+	 * <code>available()</code> and <code>read()</code> calls that follow a
+	 * DATA_AVAILABLE event. The listener is called on the port's event
+	 * executor, after it has been given whatever the input stream had
+	 * already buffered, so it sees the bytes in order. The listener then is
+	 * the port's only reader: it replaces DATA_AVAILABLE events, and the
+	 * input stream should not be read at the same time. Receive threshold
+	 * and timeout do not apply to pushed data. <code>null</code> returns to
+	 * normal reads.
+	 * @param listener The listener (<code>SerialDataListener</code>) parameter.
+	 * @see SerialDataListener
+	 */
+	public synchronized void setDataListener(final SerialDataListener listener) {
+		this.pusher.detach();
+		this.dataListener = listener;
+		this.pushData = listener != null;
+		if (this.receiveRing != null) {
+			this.receiveRing.setNotifyOnData(this.notifyOnDataFlag || this.pushData);
+		}
+		applyReceiveMode();
+		if (this.pushData) {
+			startDataMonitor();
+			rearmDataMonitor();
+		} else if (this.notifyOnDataFlag) {
+			rearmDataMonitor();
+		} else {
+			stopDataMonitor();
+		}
+	}
+
+	/**
+	 * Sets the send timeout value and passes it to an open output stream.
+	 * @param st The st (<code>int</code>) parameter, -1 to disable.
+	 */
+	private void setSendTimeout(final int st) {
+		final NSDeviceOutputStream out;
+		synchronized (this) {
+			this.sndTimeout = st;
+			out = this.outs;
+		}
+		if (out != null) {
+			out.tmo = st;
+		}
+	}
+
 	/**
 	 * Set serial port params with the specified bd, db, sb and par parameters.
 	 * @param bd The bd (<code>int</code>) parameter.
@@ -1312,4 +2149,74 @@ class NSSerialPort extends SerialPort {
 	 * @return Results of the set serial port params nc (<code>int</code>) value.
 	 */
 	private native int setSerialPortParamsNC(final int fd, final int bd, final int db, final int sb, final int par);
+
+	/**
+	 * Wait for the specified monitor thread to end, but not past the deadline.
+	 * @param thread The thread (<code>Thread</code>) parameter, may be <code>null</code>.
+	 * @param deadline The deadline (<code>long</code>) parameter, in milliseconds since the epoch.
+	 */
+	private void joinMonitor(final Thread thread, final long deadline) {
+		if ((thread == null) || (thread == Thread.currentThread())) {
+			return;
+		}
+		final long left = deadline - System.currentTimeMillis();
+		if (left > 0) {
+			try {
+				thread.join(left);
+			} catch (final InterruptedException e) {
+				// close without waiting
+			}
+		}
+	}
+
+	/**
+	 * Wakeup nc with the specified fd parameter and return the int result.
+	 * Signals the port's wakeup descriptor, which every native wait on the
+	 * port also polls.
+	 * @param fd The fd (<code>int</code>) parameter.
+	 * @return Results of the wakeup nc (<code>int</code>) value, -2 if not supported.
+	 */
+	private native int wakeupNC(final int fd);
+
+	/**
+	 * Queue the specified frame for writing and return without waiting.
+	 * @param frame The frame (<code>byte[]</code>) parameter.
+	 * @return The future completed when the frame has been written (<code>WriteFuture</code>).
+	 * @throws IOException IOException.
+	 * @see #writeAsync(byte[], int, int)
+	 */
+	public WriteFuture writeAsync(final byte[] frame) throws IOException {
+		return writeAsync(frame, 0, frame.length);
+	}
+
+	/**
+	 * Queue the specified frame for writing and return without waiting. Any
+	 * number of threads may call this; frames are written whole and in the
+	 * order they were queued, by one drainer thread per port. The frame is
+	 * written in place and must not be changed until the future is done.
+	 * @param frame The frame (<code>byte[]</code>) parameter.
+	 * @param off The offset (<code>int</code>) parameter.
+	 * @param len The length (<code>int</code>) parameter.
+	 * @return The future completed when the frame has been written (<code>WriteFuture</code>).
+	 * @throws IOException IOException.
+	 */
+	public WriteFuture writeAsync(final byte[] frame, final int off, final int len) throws IOException {
+		if ((off < 0) || (len < 0) || (off > frame.length - len)) {
+			throw new IndexOutOfBoundsException();
+		}
+		SerialWriteQueue queue;
+		synchronized (this) {
+			if (this.closed || (this.fd == -1)) {
+				throw new IOException();
+			}
+			queue = this.writeQueue;
+			if (queue == null) {
+				queue = this.writeQueue = new SerialWriteQueue(this);
+				queue.start();
+			}
+		}
+		final WriteFuture future = new WriteFuture(frame, off, len);
+		queue.submit(future);
+		return future;
+	}
 }
@@ -0,0 +1,44 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+
+/**
+ * Flushes one output stream whose linger time has expired. The linger
+ * timer hands this task to the shared event pool instead of flushing
+ * itself, since the flush waits for the stream's writers and for the
+ * device (with CTS low it waits until the peer is ready again), and the
+ * timer must keep serving the other streams meanwhile.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class OutputLingerFlush implements Runnable {
+	/**
+	 * Define the out (NSDeviceOutputStream) field.
+	 */
+	private final NSDeviceOutputStream out;
+
+	/**
+	 * Constructs an instance of this class from the specified out parameter.
+	 * @param out	The out (<code>NSDeviceOutputStream</code>) parameter.
+	 */
+	OutputLingerFlush(final NSDeviceOutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Run.
+	 */
+	public void run() {
+		this.out.lingerExpired();
+	}
+}
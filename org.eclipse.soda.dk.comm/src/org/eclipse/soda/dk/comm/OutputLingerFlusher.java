@@ -0,0 +1,152 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.util.Vector;
+
+/**
+ * Single shared timer thread that flushes output streams whose linger
+ * time has expired with data still buffered. Streams register when the
+ * first byte enters an empty buffer and are dropped once due. The flush
+ * itself runs on the shared event pool, so a stream that is busy writing
+ * or waiting for flow control never holds up the timer.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class OutputLingerFlusher extends Thread {
+	/**
+	 * Define the instance (OutputLingerFlusher) field.
+	 */
+	private static OutputLingerFlusher instance = null;
+
+	/**
+	 * Define the nano time (boolean) constant, set if the runtime has
+	 * <code>System.nanoTime()</code>; Foundation 1.1 does not.
+	 */
+	private static final boolean NANO_TIME = hasNanoTime();
+
+	/**
+	 * Define the streams (Vector) field, the streams waiting for their linger deadline.
+	 */
+	private final Vector streams = new Vector();
+
+	/**
+	 * Constructs an instance of this class.
+	 */
+	private OutputLingerFlusher() {
+		super("OutputLingerFlusher"); //$NON-NLS-1$
+		setDaemon(true);
+	}
+
+	/**
+	 * Answer whether the runtime has <code>System.nanoTime()</code>.
+	 * @return	The has nano time (<code>boolean</code>) value.
+	 */
+	private static boolean hasNanoTime() {
+		try {
+			System.class.getMethod("nanoTime", new Class[0]); //$NON-NLS-1$
+			return true;
+		} catch (final NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the current time for linger deadlines, in milliseconds. Where
+	 * the runtime has a monotonic clock it is used, so setting the wall
+	 * clock neither holds back nor hurries a flush.
+	 * @return	The current time (<code>long</code>) value, in milliseconds from an arbitrary origin.
+	 */
+	static long currentTime() {
+		return NANO_TIME ? System.nanoTime() / 1000000 : System.currentTimeMillis();
+	}
+
+	/**
+	 * Schedule the specified stream for a flush at its linger deadline.
+	 * @param out	The out (<code>NSDeviceOutputStream</code>) parameter.
+	 */
+	static void schedule(final NSDeviceOutputStream out) {
+		OutputLingerFlusher flusher;
+		synchronized (OutputLingerFlusher.class) {
+			if (instance == null) {
+				instance = new OutputLingerFlusher();
+				instance.start();
+			}
+			flusher = instance;
+		}
+		flusher.add(out);
+	}
+
+	/**
+	 * Add the specified stream.
+	 * @param out	The out (<code>NSDeviceOutputStream</code>) parameter.
+	 */
+	private synchronized void add(final NSDeviceOutputStream out) {
+		if (!this.streams.contains(out)) {
+			this.streams.addElement(out);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Wait for the next deadline and remove the streams that are due.
+	 * @return	The due streams (<code>NSDeviceOutputStream[]</code>) value.
+	 * @throws InterruptedException InterruptedException.
+	 */
+	private synchronized NSDeviceOutputStream[] awaitDue() throws InterruptedException {
+		while (true) {
+			final long now = currentTime();
+			long next = Long.MAX_VALUE;
+			final Vector due = new Vector();
+			for (int i = this.streams.size() - 1; i >= 0; i--) {
+				final NSDeviceOutputStream out = (NSDeviceOutputStream) this.streams.elementAt(i);
+				final long deadline = out.getLingerDeadline();
+				if ((deadline == 0) || (deadline <= now)) {
+					this.streams.removeElementAt(i);
+					if (deadline != 0) {
+						due.addElement(out);
+					}
+				} else if (deadline < next) {
+					next = deadline;
+				}
+			}
+			if (!due.isEmpty()) {
+				final NSDeviceOutputStream[] result = new NSDeviceOutputStream[due.size()];
+				due.copyInto(result);
+				return result;
+			}
+			if (next == Long.MAX_VALUE) {
+				wait();
+			} else {
+				wait(next - now);
+			}
+		}
+	}
+
+	/**
+	 * Run.
+	 */
+	public void run() {
+		while (true) {
+			NSDeviceOutputStream[] due;
+			try {
+				due = awaitDue();
+			} catch (final InterruptedException e) {
+				continue;
+			}
+			for (int i = 0; i < due.length; i++) {
+				// a failed flush is kept by the stream for its next write or flush
+				CommEventPool.getDefault().execute(due[i].getLingerFlush());
+			}
+		}
+	}
+}
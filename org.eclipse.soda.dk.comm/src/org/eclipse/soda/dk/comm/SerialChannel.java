@@ -0,0 +1,254 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+/**
+ * Channel view of a serial port. Reads and writes share the port's input
+ * and output streams, so read-ahead, framing, thresholds and timeouts
+ * behave exactly as they do for stream users. A gathering write of direct
+ * buffers goes out in a single <code>writev</code> call, so a header,
+ * payload and checksum held in separate buffers need not be assembled
+ * first. Closing the channel does not close the port; closing the port
+ * closes the channel.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ * @see NSSerialPort#getChannel()
+ */
+public class SerialChannel implements ByteChannel, ScatteringByteChannel, GatheringByteChannel {
+	/**
+	 * Define the serial port (NSSerialPort) field.
+	 */
+	private final NSSerialPort serialPort;
+
+	/**
+	 * Define the open (boolean) field.
+	 */
+	private volatile boolean open = true;
+
+	/**
+	 * Define the positions (int[]) field, reused by gathering writes.
+	 */
+	private int[] positions = new int[8];
+
+	/**
+	 * Define the lengths (int[]) field, reused by gathering writes.
+	 */
+	private int[] lengths = new int[8];
+
+	/**
+	 * Constructs an instance of this class from the specified serial port parameter.
+	 * @param serialPort	The serial port (<code>NSSerialPort</code>) parameter.
+	 */
+	SerialChannel(final NSSerialPort serialPort) {
+		this.serialPort = serialPort;
+	}
+
+	/**
+	 * Check that the specified offset and length lie within an array of the specified size.
+	 * @param size	The size (<code>int</code>) parameter.
+	 * @param offset	The offset (<code>int</code>) parameter.
+	 * @param length	The length (<code>int</code>) parameter.
+	 */
+	private static void checkBounds(final int size, final int offset, final int length) {
+		if ((offset < 0) || (length < 0) || (offset > size - length)) {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+
+	/**
+	 * Write nc with the specified fd, srcs, offset, count, positions and lengths parameters and return the int result.
+	 * @param fd	The fd (<code>int</code>) parameter.
+	 * @param srcs	The srcs (<code>ByteBuffer[]</code>) parameter.
+	 * @param offset	The offset (<code>int</code>) parameter.
+	 * @param count	The count (<code>int</code>) parameter.
+	 * @param positions	The positions (<code>int[]</code>) parameter.
+	 * @param lengths	The lengths (<code>int[]</code>) parameter.
+	 * @return	Results of the writev nc (<code>int</code>) value.
+	 */
+	private static native int writevNC(final int fd, final ByteBuffer[] srcs, final int offset, final int count, final int[] positions, final int[] lengths);
+
+	/**
+	 * Close this channel. The port stays open.
+	 */
+	public void close() {
+		this.open = false;
+	}
+
+	/**
+	 * Ensure open.
+	 * @throws ClosedChannelException If the channel or its port has been closed.
+	 */
+	private void ensureOpen() throws ClosedChannelException {
+		if (!this.open || (this.serialPort.fd == -1)) {
+			throw new ClosedChannelException();
+		}
+	}
+
+	/**
+	 * Gets the input stream value.
+	 * @return	The input stream (<code>NSDeviceInputStream</code>) value.
+	 * @throws IOException IOException.
+	 */
+	private NSDeviceInputStream getInputStream() throws IOException {
+		return (NSDeviceInputStream) this.serialPort.getInputStream();
+	}
+
+	/**
+	 * Gets the output stream value.
+	 * @return	The output stream (<code>NSDeviceOutputStream</code>) value.
+	 * @throws IOException IOException.
+	 */
+	private NSDeviceOutputStream getOutputStream() throws IOException {
+		return (NSDeviceOutputStream) this.serialPort.getOutputStream();
+	}
+
+	/**
+	 * Gets the open (boolean) value.
+	 * @return	The open (<code>boolean</code>) value.
+	 */
+	public boolean isOpen() {
+		return this.open && (this.serialPort.fd != -1);
+	}
+
+	/**
+	 * Read into the specified buffer.
+	 * @param dst	The dst (<code>ByteBuffer</code>) parameter.
+	 * @return	The number of bytes read (<code>int</code>).
+	 * @throws IOException IOException.
+	 */
+	public int read(final ByteBuffer dst) throws IOException {
+		ensureOpen();
+		return getInputStream().read(dst);
+	}
+
+	/**
+	 * Read into the specified buffers.
+	 * @param dsts	The dsts (<code>ByteBuffer[]</code>) parameter.
+	 * @return	The number of bytes read (<code>long</code>).
+	 * @throws IOException IOException.
+	 */
+	public long read(final ByteBuffer[] dsts) throws IOException {
+		return read(dsts, 0, dsts.length);
+	}
+
+	/**
+	 * Read into the specified buffers in turn, stopping at the first buffer
+	 * that is not filled completely.
+	 * @param dsts	The dsts (<code>ByteBuffer[]</code>) parameter.
+	 * @param offset	The offset (<code>int</code>) parameter.
+	 * @param length	The length (<code>int</code>) parameter.
+	 * @return	The number of bytes read (<code>long</code>).
+	 * @throws IOException IOException.
+	 */
+	public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException {
+		checkBounds(dsts.length, offset, length);
+		ensureOpen();
+		final NSDeviceInputStream in = getInputStream();
+		long total = 0;
+		for (int i = offset; i < offset + length; i++) {
+			final int wanted = dsts[i].remaining();
+			if (wanted == 0) {
+				continue;
+			}
+			final int rc = in.read(dsts[i]);
+			total += rc;
+			if (rc < wanted) {
+				break;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Write the remaining bytes of the specified buffer.
+	 * @param src	The src (<code>ByteBuffer</code>) parameter.
+	 * @return	The number of bytes written (<code>int</code>).
+	 * @throws IOException IOException.
+	 */
+	public int write(final ByteBuffer src) throws IOException {
+		ensureOpen();
+		final int len = src.remaining();
+		getOutputStream().write(src);
+		return len;
+	}
+
+	/**
+	 * Write the remaining bytes of the specified buffers.
+	 * @param srcs	The srcs (<code>ByteBuffer[]</code>) parameter.
+	 * @return	The number of bytes written (<code>long</code>).
+	 * @throws IOException IOException.
+	 */
+	public long write(final ByteBuffer[] srcs) throws IOException {
+		return write(srcs, 0, srcs.length);
+	}
+
+	/**
+	 * Write the remaining bytes of the specified buffers. When every buffer
+	 * is direct, no stream output is buffered ahead of them and no send
+	 * timeout is set, they are written with one <code>writev</code> call;
+	 * otherwise they are written one after another through the output stream.
+	 * @param srcs	The srcs (<code>ByteBuffer[]</code>) parameter.
+	 * @param offset	The offset (<code>int</code>) parameter.
+	 * @param length	The length (<code>int</code>) parameter.
+	 * @return	The number of bytes written (<code>long</code>).
+	 * @throws IOException IOException.
+	 */
+	public synchronized long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+		checkBounds(srcs.length, offset, length);
+		ensureOpen();
+		final NSDeviceOutputStream out = getOutputStream();
+		// Hold the stream lock so no other writer lands between buffers.
+		synchronized (out) {
+			if (this.positions.length < length) {
+				this.positions = new int[length];
+				this.lengths = new int[length];
+			}
+			// writev has no send timeout; bounded writes go through the stream.
+			boolean direct = (this.serialPort.outsBufferCount == 0) && (this.serialPort.sndTimeout == -1);
+			long total = 0;
+			for (int i = 0; i < length; i++) {
+				final ByteBuffer src = srcs[offset + i];
+				this.positions[i] = src.position();
+				this.lengths[i] = src.remaining();
+				total += this.lengths[i];
+				direct &= src.isDirect();
+			}
+			if (direct && (length > 1)) {
+				final int rc = writevNC(this.serialPort.fd, srcs, offset, length, this.positions, this.lengths);
+				if (rc != -2) {
+					int left = rc < 0 ? 0 : rc;
+					for (int i = 0; (i < length) && (left > 0); i++) {
+						final int cc = left < this.lengths[i] ? left : this.lengths[i];
+						srcs[offset + i].position(this.positions[i] + cc);
+						left -= cc;
+					}
+					if (rc != total) {
+						throw new IOException();
+					}
+					out.reportBufferEmpty();
+					return total;
+				}
+			}
+			for (int i = offset; i < offset + length; i++) {
+				out.write(srcs[i]);
+			}
+			return total;
+		}
+	}
+}
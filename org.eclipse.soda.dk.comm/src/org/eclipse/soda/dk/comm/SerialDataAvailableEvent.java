@@ -0,0 +1,60 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import javax.comm.SerialPort;
+import javax.comm.SerialPortEvent;
+
+/**
+ * A <code>DATA_AVAILABLE</code> event that also carries the number of
+ * bytes the driver had pending when the event was raised, so a listener
+ * can size a single bulk read instead of calling <code>available()</code>.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+public class SerialDataAvailableEvent extends SerialPortEvent {
+	/**
+	 * Define the serial version uid (long) constant.
+	 */
+	private static final long serialVersionUID = -2476325349632851120L;
+
+	/**
+	 * Define the pending count (int) field.
+	 */
+	private int pendingCount;
+
+	/**
+	 * Constructs an instance of this class from the specified srcport and pending count parameters.
+	 * @param srcport	The srcport (<code>SerialPort</code>) parameter.
+	 * @param pendingCount	The pending count (<code>int</code>) parameter.
+	 */
+	public SerialDataAvailableEvent(final SerialPort srcport, final int pendingCount) {
+		super(srcport, DATA_AVAILABLE, true, true);
+		this.pendingCount = pendingCount;
+	}
+
+	/**
+	 * Gets the pending count (int) value.
+	 * @return	The number of bytes pending in the driver when the event was raised (<code>int</code>).
+	 */
+	public int getPendingCount() {
+		return this.pendingCount;
+	}
+
+	/**
+	 * Sets the pending count value; used when the event is pooled.
+	 * @param pendingCount	The pending count (<code>int</code>) parameter.
+	 */
+	void setPendingCount(final int pendingCount) {
+		this.pendingCount = pendingCount;
+	}
+}
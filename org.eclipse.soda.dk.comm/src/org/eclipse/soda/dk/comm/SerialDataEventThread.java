@@ -16,6 +16,13 @@ package org.eclipse.soda.dk.comm;
  * @since 1.0
  */
 class SerialDataEventThread extends Thread {
+	/**
+	 * Define the backoff (long) constant, in milliseconds; how long the
+	 * monitor waits while bytes are pending below the data available
+	 * threshold.
+	 */
+	private static final long BACKOFF = 10;
+
 	/**
 	 * Define the serial port (NSSerialPort) field.
 	 */
@@ -41,6 +48,27 @@ class SerialDataEventThread extends Thread {
 		this.fileDescriptor = fd;
 	}
 
+	/**
+	 * Called by the native monitor when the port turned down a data
+	 * available report. While the port is disarmed the monitor sleeps here,
+	 * leaving the device alone, until the application has read the port or
+	 * the monitor is stopped; otherwise too few bytes were pending, and it
+	 * waits a little before polling again.
+	 */
+	private synchronized void awaitRearm() {
+		try {
+			if (this.serialPort.isDataReportWanted()) {
+				wait(BACKOFF);
+				return;
+			}
+			while ((this.stopThreadFlag == 0) && !this.serialPort.isDataReportWanted()) {
+				wait();
+			}
+		} catch (final InterruptedException e) {
+			interrupt();
+		}
+	}
+
 	/**
 	 * Gets the stop thread flag (int) value.
 	 * @return	The stop thread flag (<code>int</code>) value.
@@ -56,6 +84,14 @@ class SerialDataEventThread extends Thread {
 	 */
 	private native void monitorSerialDataNC(final int fd);
 
+	/**
+	 * Wake the monitor if it waits for the port to be re-armed. The port's
+	 * state must have changed before this is called.
+	 */
+	synchronized void rearm() {
+		notifyAll();
+	}
+
 	/**
 	 * Run.
 	 */
@@ -68,8 +104,9 @@ class SerialDataEventThread extends Thread {
 	 * @param value	The value (<code>int</code>) parameter.
 	 * @see #getStopThreadFlag()
 	 */
-	public void setStopThreadFlag(final int value) {
+	public synchronized void setStopThreadFlag(final int value) {
 		this.stopThreadFlag = value;
+		notifyAll();
 		return;
 	}
 }
@@ -0,0 +1,36 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.nio.ByteBuffer;
+import java.util.EventListener;
+
+/**
+ * Receives the bytes read from a serial port as they arrive, instead of a
+ * DATA_AVAILABLE event followed by <code>available()</code> and
+ * <code>read()</code>. The port's monitor reads the data itself and hands
+ * it over in one call.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ * @see NSSerialPort#setDataListener(SerialDataListener)
+ */
+public interface SerialDataListener extends EventListener {
+	/**
+	 * Data received. The buffer is a read-only view positioned on the new
+	 * bytes. It is reused for the next delivery, so a listener that keeps
+	 * the data must copy it before returning.
+	 * @param port	The port (<code>NSSerialPort</code>) parameter.
+	 * @param data	The data (<code>ByteBuffer</code>) parameter.
+	 * @param timestamp	The time the bytes were taken from the driver, in milliseconds since the epoch (<code>long</code>).
+	 */
+	public void dataReceived(NSSerialPort port, ByteBuffer data, long timestamp);
+}
@@ -0,0 +1,328 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Hands the bytes for a port's data listener to the port's event executor,
+ * so a slow listener holds up neither the shared data reactor nor the
+ * other ports. The reactor copies each chunk it reads into one of two
+ * staging areas and goes straight back to the device; a task on the
+ * executor takes the filled area and delivers its chunks while the reactor
+ * fills the other. Each pass first delivers what the input stream's
+ * read-ahead buffer still holds, which is older than anything the reactor
+ * read, so the listener sees the bytes in the order they arrived. When a
+ * staging area fills up the port leaves the reactor, and the data waits in
+ * the driver until the task has taken the area.
+ * <p>
+ * Where the reactor cannot read the port itself (with a receive ring, or
+ * without native reactor support) the task reads through the input stream
+ * instead.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class SerialDataPusher implements Runnable {
+	/**
+	 * Define the stage size (int) constant, the bytes one staging area holds.
+	 */
+	static final int STAGE_SIZE = 4 * NSSerialPort.PUSH_SIZE;
+
+	/**
+	 * Define the max chunks (int) constant, the chunks one staging area holds.
+	 */
+	static final int MAX_CHUNKS = 64;
+
+	/**
+	 * Define the serial port (NSSerialPort) field.
+	 */
+	private final NSSerialPort serialPort;
+
+	/**
+	 * Define the dispatcher (SerialEventDispatcher) field, whose executor runs the task.
+	 */
+	private final SerialEventDispatcher dispatcher;
+
+	/**
+	 * Define the data (byte[][]) field, the two staging areas; allocated on first use.
+	 */
+	private byte[][] data = null;
+
+	/**
+	 * Define the views (ByteBuffer[]) field, the read-only views of the staging areas.
+	 */
+	private ByteBuffer[] views = null;
+
+	/**
+	 * Define the lengths (int[][]) field, the length of each staged chunk.
+	 */
+	private final int[][] lengths = new int[2][MAX_CHUNKS];
+
+	/**
+	 * Define the timestamps (long[][]) field, the time each staged chunk was read.
+	 */
+	private final long[][] timestamps = new long[2][MAX_CHUNKS];
+
+	/**
+	 * Define the used (int[]) field, the bytes staged in each area.
+	 */
+	private final int[] used = new int[2];
+
+	/**
+	 * Define the chunks (int[]) field, the chunks staged in each area.
+	 */
+	private final int[] chunks = new int[2];
+
+	/**
+	 * Define the filling (int) field, the area the reactor copies into.
+	 */
+	private int filling = 0;
+
+	/**
+	 * Define the reactor (SerialDataReactor) field, the reactor that last staged data.
+	 */
+	private SerialDataReactor reactor = null;
+
+	/**
+	 * Define the suspended (boolean) field, set while the port is out of the reactor because the filling area is full.
+	 */
+	private boolean suspended = false;
+
+	/**
+	 * Define the pull (boolean) field, set when the task must read the input stream.
+	 */
+	private boolean pull = false;
+
+	/**
+	 * Define the scheduled (boolean) field, set while a task is outstanding.
+	 */
+	private boolean scheduled = false;
+
+	/**
+	 * Define the closed (boolean) field.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Define the array (byte[]) field, reused when data is read from the input stream.
+	 */
+	private byte[] array = null;
+
+	/**
+	 * Define the array view (ByteBuffer) field, the read-only view of the array.
+	 */
+	private ByteBuffer arrayView = null;
+
+	/**
+	 * Constructs an instance of this class from the specified sp and dispatcher parameters.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 * @param dispatcher	The dispatcher (<code>SerialEventDispatcher</code>) parameter.
+	 */
+	SerialDataPusher(final NSSerialPort sp, final SerialEventDispatcher dispatcher) {
+		this.serialPort = sp;
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Deliver the specified number of chunks staged in the specified area.
+	 * @param area	The area (<code>int</code>) parameter.
+	 * @param count	The count (<code>int</code>) parameter.
+	 */
+	private void deliver(final int area, final int count) {
+		final ByteBuffer view = this.views[area];
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			final int length = this.lengths[area][i];
+			view.limit(offset + length).position(offset);
+			this.serialPort.deliverData(view, this.timestamps[area][i]);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Put the port back into the reactor if it was taken out, and forget
+	 * the reactor. Called when the port stops using it.
+	 */
+	synchronized void detach() {
+		if (this.suspended) {
+			this.suspended = false;
+			this.reactor.resume(this.serialPort);
+		}
+		this.reactor = null;
+	}
+
+	/**
+	 * Read from the input stream and deliver what is read.
+	 * @param buffered	The buffered (<code>boolean</code>) parameter, <code>true</code> to take only what the read-ahead buffer holds.
+	 */
+	private void pushStream(final boolean buffered) {
+		NSDeviceInputStream ins;
+		try {
+			ins = (NSDeviceInputStream) this.serialPort.getInputStream();
+		} catch (final IOException e) {
+			return;
+		}
+		if (ins == null) {
+			return;
+		}
+		if (this.array == null) {
+			this.array = new byte[NSSerialPort.PUSH_SIZE];
+			this.arrayView = ByteBuffer.wrap(this.array).asReadOnlyBuffer();
+		}
+		while (true) {
+			int rc;
+			try {
+				rc = buffered ? ins.readBuffered(this.array, 0, this.array.length) : ins.readAvailable(this.array, 0, this.array.length);
+			} catch (final IOException e) {
+				rc = 0;
+			}
+			if (rc <= 0) {
+				return;
+			}
+			this.arrayView.clear();
+			this.arrayView.limit(rc);
+			this.serialPort.deliverData(this.arrayView, System.currentTimeMillis());
+			if (rc < this.array.length) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Gets the idle (boolean) value.
+	 * @return	<code>true</code> if no task is outstanding.
+	 */
+	synchronized boolean isIdle() {
+		return !this.scheduled;
+	}
+
+	/**
+	 * Ask for the pending bytes to be read through the input stream and
+	 * delivered. Called where the reactor does not read the port itself.
+	 * @return	<code>true</code> if a task was scheduled, <code>false</code> if one is already outstanding or the pusher is shut down.
+	 */
+	boolean request() {
+		synchronized (this) {
+			if (this.closed) {
+				return false;
+			}
+			this.pull = true;
+			if (this.scheduled) {
+				return false;
+			}
+			this.scheduled = true;
+		}
+		this.dispatcher.execute(this);
+		return true;
+	}
+
+	/**
+	 * Deliver staged and stream data until there is none left, then tell
+	 * the port, whose data monitor waits for that before asking again.
+	 */
+	public void run() {
+		while (true) {
+			int area = -1;
+			int count = 0;
+			boolean stream;
+			boolean done = false;
+			synchronized (this) {
+				if (this.closed) {
+					this.scheduled = false;
+					return;
+				}
+				stream = this.pull;
+				this.pull = false;
+				if (this.data != null) {
+					count = this.chunks[this.filling];
+				}
+				if ((count == 0) && !stream) {
+					this.scheduled = false;
+					done = true;
+				} else if (count > 0) {
+					area = this.filling;
+					this.filling ^= 1;
+					if (this.suspended) {
+						this.suspended = false;
+						this.reactor.resume(this.serialPort);
+					}
+				}
+			}
+			if (done) {
+				this.serialPort.pushDone();
+				return;
+			}
+			pushStream(true);
+			if (area != -1) {
+				deliver(area, count);
+				synchronized (this) {
+					this.used[area] = 0;
+					this.chunks[area] = 0;
+				}
+			}
+			if (stream) {
+				pushStream(false);
+			}
+		}
+	}
+
+	/**
+	 * Stop delivering; data staged or read later is dropped.
+	 */
+	synchronized void shutdown() {
+		this.closed = true;
+		detach();
+	}
+
+	/**
+	 * Stage the specified bytes for delivery. Called by the reactor that
+	 * read them, which only reads while the filling area has room for a
+	 * whole read. When the area has no room for another, the port is taken
+	 * out of the reactor until the task takes the area.
+	 * @param from	The from (<code>SerialDataReactor</code>) parameter.
+	 * @param src	The src (<code>ByteBuffer</code>) parameter, positioned on the bytes.
+	 * @param timestamp	The timestamp (<code>long</code>) parameter.
+	 * @return	<code>true</code> if the reactor may read the port again.
+	 */
+	boolean stage(final SerialDataReactor from, final ByteBuffer src, final long timestamp) {
+		boolean room;
+		synchronized (this) {
+			if (this.closed) {
+				return false;
+			}
+			if (this.data == null) {
+				this.data = new byte[2][STAGE_SIZE];
+				this.views = new ByteBuffer[] {ByteBuffer.wrap(this.data[0]).asReadOnlyBuffer(), ByteBuffer.wrap(this.data[1]).asReadOnlyBuffer()};
+			}
+			this.reactor = from;
+			final int area = this.filling;
+			final int length = src.remaining();
+			src.get(this.data[area], this.used[area], length);
+			this.lengths[area][this.chunks[area]] = length;
+			this.timestamps[area][this.chunks[area]] = timestamp;
+			this.used[area] += length;
+			this.chunks[area]++;
+			room = (STAGE_SIZE - this.used[area] >= NSSerialPort.PUSH_SIZE) && (this.chunks[area] < MAX_CHUNKS);
+			if (!room) {
+				this.suspended = true;
+				from.suspend(this.serialPort);
+			}
+			if (this.scheduled) {
+				return room;
+			}
+			this.scheduled = true;
+		}
+		this.dispatcher.execute(this);
+		return room;
+	}
+}
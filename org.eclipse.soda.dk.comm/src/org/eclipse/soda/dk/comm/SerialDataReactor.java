@@ -0,0 +1,318 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.nio.ByteBuffer;
+
+/**
+ * Shared data available monitor. A small, fixed pool of reactor threads
+ * watches the file descriptors of every serial port that has data
+ * notification enabled, so the number of native threads and idle wakeups
+ * no longer grows with the number of open ports. The pool size is read
+ * from the <code>org.eclipse.soda.dk.comm.reactor.threads</code> system
+ * property (default 1). Where the platform has no native reactor support
+ * {@link #register(NSSerialPort)} returns <code>null</code> and the caller
+ * falls back to a {@link SerialDataEventThread} per port.
+ * <p>
+ * Ports are watched edge triggered: a port is told about new data once,
+ * with the number of bytes pending, and is only re-armed when its reader
+ * has consumed data (see {@link #rearm(NSSerialPort)}).
+ * <p>
+ * A port with a {@link SerialDataListener} is registered in push mode. The
+ * reactor then reads the pending bytes itself into a direct buffer and
+ * stages them with the port's {@link SerialDataPusher} in the same wakeup;
+ * the listener is called on the port's event executor, never here.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class SerialDataReactor extends Thread {
+	/**
+	 * Define the threads property (String) constant.
+	 */
+	static final String THREADS_PROPERTY = "org.eclipse.soda.dk.comm.reactor.threads"; //$NON-NLS-1$
+
+	/**
+	 * Define the push slot (int) constant, the slot flag for a port in push mode.
+	 */
+	static final int PUSH_SLOT = 0x40000000;
+
+	/**
+	 * Define the reactors (SerialDataReactor[]) field.
+	 */
+	private static SerialDataReactor[] reactors = null;
+
+	/**
+	 * Define the supported (boolean) field.
+	 */
+	private static boolean supported = true;
+
+	/**
+	 * Define the reactor descriptor (int) field.
+	 */
+	private final int reactorDescriptor;
+
+	/**
+	 * Define the ports (NSSerialPort[]) field, indexed by registration slot.
+	 */
+	private volatile NSSerialPort[] ports = new NSSerialPort[8];
+
+	/**
+	 * Define the registered (int) field.
+	 */
+	private int registered = 0;
+
+	/**
+	 * Define the push buffer (ByteBuffer) field, filled by the native loop for ports in push mode.
+	 */
+	private final ByteBuffer pushBuffer = ByteBuffer.allocateDirect(NSSerialPort.PUSH_SIZE);
+
+	/**
+	 * Define the push view (ByteBuffer) field, the read-only view handed to data listeners.
+	 */
+	private final ByteBuffer pushView = this.pushBuffer.asReadOnlyBuffer();
+
+	/**
+	 * Constructs an instance of this class from the specified reactor descriptor parameter.
+	 * @param rd	The reactor descriptor (<code>int</code>) parameter.
+	 * @param index	The index (<code>int</code>) parameter.
+	 */
+	private SerialDataReactor(final int rd, final int index) {
+		super("SerialDataReactor-" + index); //$NON-NLS-1$
+		this.reactorDescriptor = rd;
+		setDaemon(true);
+	}
+
+	/**
+	 * Create the reactor pool, or mark the reactor unsupported if the native
+	 * layer cannot provide one.
+	 * @return	The reactor pool (<code>SerialDataReactor[]</code>) value, or <code>null</code>.
+	 */
+	private static SerialDataReactor[] createReactors() {
+		int count = Integer.getInteger(THREADS_PROPERTY, 1).intValue();
+		if (count < 1) {
+			count = 1;
+		}
+		final SerialDataReactor[] pool = new SerialDataReactor[count];
+		for (int i = 0; i < count; i++) {
+			int rd;
+			try {
+				rd = createNC();
+			} catch (final UnsatisfiedLinkError e) {
+				rd = -1;
+			}
+			if (rd == -1) {
+				for (int j = 0; j < i; j++) {
+					closeNC(pool[j].reactorDescriptor);
+				}
+				return null;
+			}
+			pool[i] = new SerialDataReactor(rd, i);
+		}
+		for (int i = 0; i < count; i++) {
+			pool[i].start();
+		}
+		return pool;
+	}
+
+	/**
+	 * Register the specified serial port with the least loaded reactor.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 * @return	The reactor now monitoring the port (<code>SerialDataReactor</code>), or <code>null</code> if unsupported.
+	 */
+	static synchronized SerialDataReactor register(final NSSerialPort sp) {
+		if (!supported) {
+			return null;
+		}
+		if (reactors == null) {
+			reactors = createReactors();
+			if (reactors == null) {
+				supported = false;
+				return null;
+			}
+		}
+		SerialDataReactor reactor = reactors[0];
+		for (int i = 1; i < reactors.length; i++) {
+			if (reactors[i].registered < reactor.registered) {
+				reactor = reactors[i];
+			}
+		}
+		return reactor.add(sp) ? reactor : null;
+	}
+
+	/**
+	 * Close nc with the specified reactor descriptor parameter.
+	 * @param rd	The reactor descriptor (<code>int</code>) parameter.
+	 */
+	private static native void closeNC(final int rd);
+
+	/**
+	 * Create nc and return the reactor descriptor, or -1 if unsupported.
+	 * @return	Results of the create nc (<code>int</code>) value.
+	 */
+	private static native int createNC();
+
+	/**
+	 * Add the specified serial port to this reactor.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 * @return	<code>true</code> if the port is now monitored.
+	 */
+	private synchronized boolean add(final NSSerialPort sp) {
+		int slot = 0;
+		while ((slot < this.ports.length) && (this.ports[slot] != null)) {
+			slot++;
+		}
+		if (slot == this.ports.length) {
+			final NSSerialPort[] grown = new NSSerialPort[this.ports.length * 2];
+			System.arraycopy(this.ports, 0, grown, 0, this.ports.length);
+			this.ports = grown;
+		}
+		this.ports[slot] = sp;
+		sp.dataSlot = slot;
+		if (addNC(this.reactorDescriptor, sp.fd, tag(sp)) == -1) {
+			this.ports[slot] = null;
+			return false;
+		}
+		this.registered++;
+		return true;
+	}
+
+	/**
+	 * Add nc with the specified reactor descriptor, fd and slot parameters and return the int result.
+	 * @param rd	The reactor descriptor (<code>int</code>) parameter.
+	 * @param fd	The fd (<code>int</code>) parameter.
+	 * @param slot	The slot (<code>int</code>) parameter.
+	 * @return	Results of the add nc (<code>int</code>) value.
+	 */
+	private native int addNC(final int rd, final int fd, final int slot);
+
+	/**
+	 * Dispatch a data available event for the port in the specified slot.
+	 * Called from the native reactor loop.
+	 * @param slot	The slot (<code>int</code>) parameter.
+	 * @param pending	The number of bytes pending (<code>int</code>) parameter.
+	 */
+	void dispatch(final int slot, final int pending) {
+		final NSSerialPort[] current = this.ports;
+		if (slot >= current.length) {
+			return;
+		}
+		final NSSerialPort sp = current[slot];
+		if ((sp != null) && (sp.isNotifyOnDataAvailable() || sp.pushData)) {
+			sp.reportDataAvailable(pending);
+		}
+	}
+
+	/**
+	 * Stage bytes the native loop has read into the push buffer for the
+	 * port in the specified slot. Called from the native reactor loop.
+	 * @param slot	The slot (<code>int</code>) parameter.
+	 * @param count	The count (<code>int</code>) parameter.
+	 * @param timestamp	The timestamp (<code>long</code>) parameter.
+	 * @return	<code>true</code> if the loop may read the port again in this wakeup.
+	 */
+	boolean dispatchData(final int slot, final int count, final long timestamp) {
+		final NSSerialPort[] current = this.ports;
+		if (slot >= current.length) {
+			return false;
+		}
+		final NSSerialPort sp = current[slot];
+		if (sp == null) {
+			return false;
+		}
+		this.pushView.clear();
+		this.pushView.limit(count);
+		return sp.stageData(this, this.pushView, timestamp);
+	}
+
+	/**
+	 * Monitor nc with the specified reactor descriptor parameter.
+	 * @param rd	The reactor descriptor (<code>int</code>) parameter.
+	 */
+	private native void monitorNC(final int rd);
+
+	/**
+	 * Re-arm the specified serial port after its reader consumed data. The
+	 * driver is asked again whether the port is readable, so data that is
+	 * still pending is reported without waiting for more to arrive.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 */
+	void rearm(final NSSerialPort sp) {
+		rearmNC(this.reactorDescriptor, sp.fd, tag(sp));
+	}
+
+	/**
+	 * Put the specified serial port back after {@link #suspend(NSSerialPort)}.
+	 * Data already pending is reported at once.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 */
+	void resume(final NSSerialPort sp) {
+		addNC(this.reactorDescriptor, sp.fd, tag(sp));
+	}
+
+	/**
+	 * Rearm nc with the specified reactor descriptor, fd and slot parameters and return the int result.
+	 * @param rd	The reactor descriptor (<code>int</code>) parameter.
+	 * @param fd	The fd (<code>int</code>) parameter.
+	 * @param slot	The slot (<code>int</code>) parameter.
+	 * @return	Results of the rearm nc (<code>int</code>) value.
+	 */
+	private native int rearmNC(final int rd, final int fd, final int slot);
+
+	/**
+	 * Remove the specified serial port from this reactor.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 */
+	synchronized void remove(final NSSerialPort sp) {
+		for (int slot = 0; slot < this.ports.length; slot++) {
+			if (this.ports[slot] == sp) {
+				removeNC(this.reactorDescriptor, sp.fd);
+				this.ports[slot] = null;
+				this.registered--;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Stop watching the specified serial port for now; its slot stays taken.
+	 * Used while the port cannot take more pushed data.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 * @see #resume(NSSerialPort)
+	 */
+	void suspend(final NSSerialPort sp) {
+		removeNC(this.reactorDescriptor, sp.fd);
+	}
+
+	/**
+	 * Remove nc with the specified reactor descriptor and fd parameters and return the int result.
+	 * @param rd	The reactor descriptor (<code>int</code>) parameter.
+	 * @param fd	The fd (<code>int</code>) parameter.
+	 * @return	Results of the remove nc (<code>int</code>) value.
+	 */
+	private native int removeNC(final int rd, final int fd);
+
+	/**
+	 * Run.
+	 */
+	public void run() {
+		monitorNC(this.reactorDescriptor);
+	}
+
+	/**
+	 * Gets the slot tag the native loop is given for the specified port.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 * @return	The slot, with {@link #PUSH_SLOT} set in push mode (<code>int</code>).
+	 */
+	private static int tag(final NSSerialPort sp) {
+		return sp.isPushDirect() ? sp.dataSlot | PUSH_SLOT : sp.dataSlot;
+	}
+}
@@ -0,0 +1,104 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import javax.comm.SerialPortEvent;
+
+/**
+ * Raises OUTPUT_BUFFER_EMPTY once the kernel and UART have actually sent
+ * everything written, rather than when the stream's own buffer empties.
+ * Writers only signal this thread; it waits in <code>tcdrain</code> so
+ * the writer never blocks, and fires the event only if nothing new was
+ * written while it waited.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class SerialDrainThread extends Thread {
+	/**
+	 * Define the serial port (NSSerialPort) field.
+	 */
+	private final NSSerialPort serialPort;
+
+	/**
+	 * Define the written (int) field, bumped on every signalled write.
+	 */
+	private int written = 0;
+
+	/**
+	 * Define the reported (int) field, the write count last reported as drained.
+	 */
+	private int reported = 0;
+
+	/**
+	 * Define the stopped (boolean) field.
+	 */
+	private boolean stopped = false;
+
+	/**
+	 * Constructs an instance of this class from the specified serial port parameter.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 */
+	SerialDrainThread(final NSSerialPort sp) {
+		super("SerialDrainThread-" + sp.getName()); //$NON-NLS-1$
+		this.serialPort = sp;
+		setDaemon(true);
+	}
+
+	/**
+	 * Run.
+	 */
+	public void run() {
+		while (true) {
+			int target;
+			synchronized (this) {
+				while ((this.written == this.reported) && !this.stopped) {
+					try {
+						wait();
+					} catch (final InterruptedException e) {
+						// keep waiting until stopped
+					}
+				}
+				if (this.stopped) {
+					break;
+				}
+				target = this.written;
+			}
+			this.serialPort.drain();
+			synchronized (this) {
+				if (this.stopped) {
+					break;
+				}
+				if (this.written != target) {
+					continue;
+				}
+				this.reported = target;
+			}
+			this.serialPort.reportSerialEvent(SerialPortEvent.OUTPUT_BUFFER_EMPTY, false, true);
+		}
+	}
+
+	/**
+	 * Stop the thread.
+	 */
+	synchronized void shutdown() {
+		this.stopped = true;
+		notifyAll();
+	}
+
+	/**
+	 * Note that data was written and the event is due once it has drained.
+	 */
+	synchronized void written() {
+		this.written++;
+		notifyAll();
+	}
+}
@@ -0,0 +1,256 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import javax.comm.SerialPortEvent;
+
+/**
+ * Hands serial port events from the monitor threads to the listeners. The
+ * monitors only store a primitive record in a preallocated ring and return
+ * to the device; the records are turned into events and delivered by a
+ * task run on the port's event executor, so a slow listener no longer
+ * holds up the native loops or the port's other methods. Only one
+ * delivery task is outstanding at a time, which keeps events in order.
+ * Unless the application sets an executor, the task runs on the pool
+ * shared by all ports.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class SerialEventDispatcher implements Runnable {
+	/**
+	 * Define the ring size property (String) constant.
+	 */
+	static final String RING_SIZE_PROPERTY = "org.eclipse.soda.dk.comm.event.ring"; //$NON-NLS-1$
+
+	/**
+	 * Define the pool property (String) constant.
+	 */
+	static final String POOL_PROPERTY = "org.eclipse.soda.dk.comm.event.pool"; //$NON-NLS-1$
+
+	/**
+	 * Define the event types (int) constant, one more than the highest SerialPortEvent type.
+	 */
+	private static final int EVENT_TYPES = 11;
+
+	/**
+	 * Define the serial port (NSSerialPort) field.
+	 */
+	private final NSSerialPort serialPort;
+
+	/**
+	 * Define the kinds (int[]) field, the event type and values of each record.
+	 */
+	private final int[] kinds;
+
+	/**
+	 * Define the counts (int[]) field, the pending count of each DATA_AVAILABLE record.
+	 */
+	private final int[] counts;
+
+	/**
+	 * Define the mask (int) field.
+	 */
+	private final int mask;
+
+	/**
+	 * Define the head (int) field, the records published.
+	 */
+	private int head = 0;
+
+	/**
+	 * Define the tail (int) field, the records delivered.
+	 */
+	private int tail = 0;
+
+	/**
+	 * Define the scheduled (boolean) field, set while a delivery task is outstanding.
+	 */
+	private boolean scheduled = false;
+
+	/**
+	 * Define the dropped (long) field, the records lost to a full ring.
+	 */
+	private long dropped = 0;
+
+	/**
+	 * Define the closed (boolean) field, set once the port has closed.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Define the executor (CommEventExecutor) field, or <code>null</code> for the shared pool.
+	 */
+	private CommEventExecutor executor = null;
+
+	/**
+	 * Define the pool (SerialPortEvent[]) field, one event per type and value pair; <code>null</code> when pooling is off.
+	 */
+	private final SerialPortEvent[] pool;
+
+	/**
+	 * Define the data event (SerialDataAvailableEvent) field, reused when pooling is on.
+	 */
+	private SerialDataAvailableEvent dataEvent = null;
+
+	/**
+	 * Constructs an instance of this class from the specified sp parameter.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 */
+	SerialEventDispatcher(final NSSerialPort sp) {
+		final int size = Integer.getInteger(RING_SIZE_PROPERTY, 256).intValue();
+		int capacity = 16;
+		while ((capacity < size) && (capacity < (1 << 20))) {
+			capacity <<= 1;
+		}
+		this.serialPort = sp;
+		this.kinds = new int[capacity];
+		this.counts = new int[capacity];
+		this.mask = capacity - 1;
+		this.pool = Boolean.getBoolean(POOL_PROPERTY) ? new SerialPortEvent[EVENT_TYPES * 4] : null;
+	}
+
+	/**
+	 * Create, or take from the pool, the event for the specified record.
+	 * @param kind	The kind (<code>int</code>) parameter.
+	 * @param count	The count (<code>int</code>) parameter.
+	 * @return	The event (<code>SerialPortEvent</code>) value.
+	 */
+	private SerialPortEvent event(final int kind, final int count) {
+		final int eventType = kind >> 2;
+		final boolean oldvalue = (kind & 2) != 0;
+		final boolean newvalue = (kind & 1) != 0;
+		if (count >= 0) {
+			if (this.pool == null) {
+				return new SerialDataAvailableEvent(this.serialPort, count);
+			}
+			if (this.dataEvent == null) {
+				this.dataEvent = new SerialDataAvailableEvent(this.serialPort, count);
+			} else {
+				this.dataEvent.setPendingCount(count);
+			}
+			return this.dataEvent;
+		}
+		if ((this.pool == null) || (eventType >= EVENT_TYPES)) {
+			return new SerialPortEvent(this.serialPort, eventType, oldvalue, newvalue);
+		}
+		SerialPortEvent se = this.pool[kind];
+		if (se == null) {
+			se = new SerialPortEvent(this.serialPort, eventType, oldvalue, newvalue);
+			this.pool[kind] = se;
+		}
+		return se;
+	}
+
+	/**
+	 * Run the specified task on the port's event executor, unless the port
+	 * has closed.
+	 * @param task	The task (<code>Runnable</code>) parameter.
+	 */
+	void execute(final Runnable task) {
+		CommEventExecutor target;
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			target = this.executor;
+		}
+		if (target == null) {
+			target = CommEventPool.getDefault();
+		}
+		target.execute(task);
+	}
+
+	/**
+	 * Gets the dropped (long) value.
+	 * @return	The number of events lost because the ring was full (<code>long</code>).
+	 */
+	synchronized long getDropped() {
+		return this.dropped;
+	}
+
+	/**
+	 * Publish an event record. Called by the monitor threads; stores the
+	 * record without allocating and hands delivery to the executor when no
+	 * task is outstanding. A full ring drops the record, and a closed port
+	 * ignores it.
+	 * @param eventType	The event type (<code>int</code>) parameter.
+	 * @param oldvalue	The oldvalue (<code>boolean</code>) parameter.
+	 * @param newvalue	The newvalue (<code>boolean</code>) parameter.
+	 * @param count	The count (<code>int</code>) parameter, the pending byte count of a DATA_AVAILABLE event, or -1.
+	 */
+	void publish(final int eventType, final boolean oldvalue, final boolean newvalue, final int count) {
+		CommEventExecutor target;
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			if (this.head - this.tail > this.mask) {
+				this.dropped++;
+				return;
+			}
+			final int slot = this.head & this.mask;
+			this.kinds[slot] = (eventType << 2) | (oldvalue ? 2 : 0) | (newvalue ? 1 : 0);
+			this.counts[slot] = count;
+			this.head++;
+			if (this.scheduled) {
+				return;
+			}
+			this.scheduled = true;
+			target = this.executor;
+		}
+		if (target == null) {
+			target = CommEventPool.getDefault();
+		}
+		target.execute(this);
+	}
+
+	/**
+	 * Deliver the published records until the ring is empty.
+	 */
+	public void run() {
+		while (true) {
+			int kind;
+			int count;
+			synchronized (this) {
+				if (this.tail == this.head) {
+					this.scheduled = false;
+					return;
+				}
+				final int slot = this.tail & this.mask;
+				kind = this.kinds[slot];
+				count = this.counts[slot];
+				this.tail++;
+			}
+			try {
+				this.serialPort.deliverSerialEvent(event(kind, count));
+			} catch (final RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Sets the executor value.
+	 * @param executor	The executor (<code>CommEventExecutor</code>) parameter, or <code>null</code> for the shared pool.
+	 */
+	synchronized void setExecutor(final CommEventExecutor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Discard the undelivered records and ignore any published later.
+	 */
+	synchronized void shutdown() {
+		this.closed = true;
+		this.tail = this.head;
+	}
+}
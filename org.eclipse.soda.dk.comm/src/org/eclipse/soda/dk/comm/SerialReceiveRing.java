@@ -0,0 +1,375 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Off-heap receive ring for one serial port. This thread spends its whole
+ * life in native code, reading the port into a direct buffer as fast as
+ * data arrives, so the kernel's small tty buffer is drained even while the
+ * JVM is paused for garbage collection. The ring has a single producer (the
+ * native pump) and a single consumer (the port's input stream). The pump
+ * publishes <code>head</code> and the consumer publishes <code>tail</code>,
+ * both as running byte counts, so neither side takes a lock to move data.
+ * The consumer only synchronizes when it has to wait for data.
+ * <p>
+ * The counts and flags the two sides share live in a header after the data,
+ * in the same direct buffer, so the pump reaches them through a plain
+ * pointer and never calls into the VM while data flows. Each header slot is
+ * a 32 bit int, read and written whole on every platform; the counts wrap
+ * and only their difference is used. On the Java side every header access
+ * is bracketed by an access to the volatile <code>fence</code> field, which
+ * the VM compiles to the barriers the pump pairs with its own.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class SerialReceiveRing extends Thread {
+	/**
+	 * Define the minimum size (int) constant.
+	 */
+	static final int MIN_SIZE = 4096;
+
+	/**
+	 * Define the maximum size (int) constant.
+	 */
+	static final int MAX_SIZE = 1 << 30;
+
+	/**
+	 * Define the header size (int) constant. The pump's and the consumer's
+	 * slots sit on separate cache lines.
+	 */
+	static final int HEADER_SIZE = 128;
+
+	/**
+	 * Define the head offset (int) constant, the bytes produced; written by the pump.
+	 */
+	static final int HEAD = 0;
+
+	/**
+	 * Define the high water offset (int) constant, the most bytes ever held; written by the pump.
+	 */
+	static final int HIGH_WATER = 4;
+
+	/**
+	 * Define the full count offset (int) constant, how often the pump found the ring full, once per time it filled up; written by the pump.
+	 */
+	static final int FULL_COUNT = 8;
+
+	/**
+	 * Define the tail offset (int) constant, the bytes consumed.
+	 */
+	static final int TAIL = 64;
+
+	/**
+	 * Define the waiting offset (int) constant, nonzero while the consumer waits for data.
+	 */
+	static final int WAITING = 68;
+
+	/**
+	 * Define the notify on data offset (int) constant, nonzero while DATA_AVAILABLE events are wanted.
+	 */
+	static final int NOTIFY_ON_DATA = 72;
+
+	/**
+	 * Define the stop offset (int) constant, nonzero once the pump must stop.
+	 */
+	static final int STOP = 76;
+
+	/**
+	 * Define the serial port (NSSerialPort) field.
+	 */
+	private final NSSerialPort serialPort;
+
+	/**
+	 * Define the file descriptor (int) field.
+	 */
+	private final int fileDescriptor;
+
+	/**
+	 * Define the wakeup (int) field, the port's wakeup handle, polled by the native pump.
+	 */
+	private final int wakeup;
+
+	/**
+	 * Define the ring (ByteBuffer) field, shared with the native pump: the
+	 * data, then the header.
+	 */
+	private final ByteBuffer ring;
+
+	/**
+	 * Define the view (ByteBuffer) field, the consumer's window on the ring.
+	 */
+	private final ByteBuffer view;
+
+	/**
+	 * Define the mask (int) field.
+	 */
+	private final int mask;
+
+	/**
+	 * Define the header (int) field, the offset of the header in the ring.
+	 */
+	private final int header;
+
+	/**
+	 * Define the fence (int) field, always 0. A write publishes the header
+	 * stores before it, and a read orders the loads after it.
+	 */
+	private volatile int fence = 0;
+
+	/**
+	 * Define the running (boolean) field.
+	 */
+	private volatile boolean running = true;
+
+	/**
+	 * Define the space wanted (boolean) field, set while the pump sleeps on a full ring; guarded by this.
+	 */
+	private boolean spaceWanted = false;
+
+	/**
+	 * Constructs an instance of this class from the specified fd, size and sp parameters.
+	 * @param fd	The fd (<code>int</code>) parameter.
+	 * @param size	The size (<code>int</code>) parameter, rounded up to a power of two.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 */
+	SerialReceiveRing(final int fd, final int size, final NSSerialPort sp) {
+		super("SerialReceiveRing-" + sp.getName()); //$NON-NLS-1$
+		int capacity = MIN_SIZE;
+		while ((capacity < size) && (capacity < MAX_SIZE)) {
+			capacity <<= 1;
+		}
+		this.serialPort = sp;
+		this.fileDescriptor = fd;
+		this.wakeup = sp.wakeup;
+		this.ring = ByteBuffer.allocateDirect(capacity + HEADER_SIZE);
+		this.ring.order(ByteOrder.nativeOrder());
+		this.view = this.ring.duplicate();
+		this.mask = capacity - 1;
+		this.header = capacity;
+		setDaemon(true);
+		setPriority(Thread.MAX_PRIORITY);
+	}
+
+	/**
+	 * Called by the native pump when it finds the ring full. Sleeps until
+	 * the consumer frees space or the pump must stop, so the pump uses no
+	 * CPU while the consumer is stalled.
+	 */
+	private synchronized void awaitSpace() {
+		this.spaceWanted = true;
+		try {
+			while ((available() > this.mask) && (this.ring.getInt(this.header + STOP) == 0)) {
+				try {
+					wait();
+				} catch (final InterruptedException e) {
+					return;
+				}
+			}
+		} finally {
+			this.spaceWanted = false;
+		}
+	}
+
+	/**
+	 * Gets the available (int) value.
+	 * @return	The number of bytes waiting in the ring (<code>int</code>).
+	 */
+	int available() {
+		return getHead() - this.ring.getInt(this.header + TAIL);
+	}
+
+	/**
+	 * Copy up to the specified number of bytes out of the ring, which must
+	 * hold at least that many, and wake the pump if it waits for space.
+	 * Called with this locked.
+	 * @param b	The b (<code>byte[]</code>) parameter.
+	 * @param off	The off (<code>int</code>) parameter.
+	 * @param len	The len (<code>int</code>) parameter.
+	 */
+	private void copy(final byte[] b, final int off, final int len) {
+		final int t = this.ring.getInt(this.header + TAIL);
+		final int pos = t & this.mask;
+		final int first = len < this.mask + 1 - pos ? len : this.mask + 1 - pos;
+		this.view.limit(pos + first).position(pos);
+		this.view.get(b, off, first);
+		if (first < len) {
+			this.view.limit(len - first).position(0);
+			this.view.get(b, off + first, len - first);
+		}
+		// The copy must be done before the pump sees the space freed.
+		this.fence = 0;
+		this.ring.putInt(this.header + TAIL, t + len);
+		this.fence = 0;
+		if (this.spaceWanted) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Gets the capacity (int) value.
+	 * @return	The capacity (<code>int</code>) value.
+	 */
+	int getCapacity() {
+		return this.mask + 1;
+	}
+
+	/**
+	 * Gets the full count (long) value.
+	 * @return	The full count (<code>long</code>) value.
+	 */
+	long getFullCount() {
+		return this.ring.getInt(this.header + FULL_COUNT) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Gets the head (int) value. The fence is read after the head, so the
+	 * data up to it is visible once this returns.
+	 * @return	The head (<code>int</code>) value.
+	 */
+	private int getHead() {
+		final int h = this.ring.getInt(this.header + HEAD);
+		return h + this.fence;
+	}
+
+	/**
+	 * Gets the high water (long) value.
+	 * @return	The high water (<code>long</code>) value.
+	 */
+	long getHighWater() {
+		return this.ring.getInt(this.header + HIGH_WATER);
+	}
+
+	/**
+	 * Gets the running (boolean) value. Once the pump has stopped, the
+	 * consumer drains what is left and then reads the device directly.
+	 * @return	The running (<code>boolean</code>) value.
+	 */
+	boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * Called by the native pump after publishing data while the consumer
+	 * waits or DATA_AVAILABLE events are wanted. The kernel holds next to nothing while the pump
+	 * runs, so the event is raised from here with the ring's count.
+	 */
+	private void produced() {
+		if (this.ring.getInt(this.header + WAITING) != 0) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+		if (this.ring.getInt(this.header + NOTIFY_ON_DATA) != 0) {
+			this.serialPort.reportDataAvailable(available());
+		}
+	}
+
+	/**
+	 * Pump nc with the specified fd, ring and capacity parameters and return the int result.
+	 * @param fd	The fd (<code>int</code>) parameter.
+	 * @param ring	The ring (<code>ByteBuffer</code>) parameter.
+	 * @param capacity	The capacity (<code>int</code>) parameter, the data size; the header follows it.
+	 * @return	Results of the pump nc (<code>int</code>) value, -2 if not supported.
+	 */
+	private native int pumpNC(final int fd, final ByteBuffer ring, final int capacity);
+
+	/**
+	 * Read into the specified array, waiting until at least min bytes are
+	 * in the ring or the timeout expires.
+	 * @param b	The b (<code>byte[]</code>) parameter.
+	 * @param off	The off (<code>int</code>) parameter.
+	 * @param len	The len (<code>int</code>) parameter.
+	 * @param min	The min (<code>int</code>) parameter.
+	 * @param tmo	The tmo (<code>int</code>) parameter, in milliseconds; not positive waits forever.
+	 * @return	The number of bytes read (<code>int</code>), or -1 if the ring has stopped and is empty.
+	 */
+	synchronized int read(final byte[] b, final int off, final int len, final int min, final int tmo) {
+		int cc = available();
+		if ((cc < min) && (cc < len)) {
+			final long deadline = tmo > 0 ? System.currentTimeMillis() + tmo : 0;
+			// Waiting must be visible before the count is checked again,
+			// or the pump could publish in between and not call back.
+			this.ring.putInt(this.header + WAITING, 1);
+			this.fence = 0;
+			try {
+				while (((cc = available()) < min) && (cc < len) && this.running) {
+					long left = 0;
+					if (deadline != 0) {
+						left = deadline - System.currentTimeMillis();
+						if (left <= 0) {
+							break;
+						}
+					}
+					try {
+						wait(left);
+					} catch (final InterruptedException e) {
+						break;
+					}
+				}
+			} finally {
+				this.ring.putInt(this.header + WAITING, 0);
+			}
+		}
+		if (cc > len) {
+			cc = len;
+		}
+		if (cc == 0) {
+			return this.running ? 0 : -1;
+		}
+		copy(b, off, cc);
+		return cc;
+	}
+
+	/**
+	 * Run.
+	 */
+	public void run() {
+		try {
+			pumpNC(this.fileDescriptor, this.ring, this.mask + 1);
+		} finally {
+			synchronized (this) {
+				this.running = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Sets the notify on data (boolean) value, whether the pump raises
+	 * DATA_AVAILABLE events.
+	 * @param notify	The notify (<code>boolean</code>) parameter.
+	 */
+	void setNotifyOnData(final boolean notify) {
+		this.ring.putInt(this.header + NOTIFY_ON_DATA, notify ? 1 : 0);
+		this.fence = 0;
+	}
+
+	/**
+	 * Stop the pump and wait up to the specified number of milliseconds for it to leave the device.
+	 * @param millis	The millis (<code>long</code>) parameter.
+	 */
+	void shutdown(final long millis) {
+		this.ring.putInt(this.header + STOP, 1);
+		this.fence = 0;
+		synchronized (this) {
+			notifyAll();
+		}
+		try {
+			join(millis);
+		} catch (final InterruptedException e) {
+			// the pump exits on its next poll
+		}
+	}
+}
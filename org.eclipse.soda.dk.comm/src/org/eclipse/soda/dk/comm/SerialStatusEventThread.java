@@ -11,6 +11,12 @@ package org.eclipse.soda.dk.comm;
  *     IBM - initial API and implementation                              *
  ************************************************************************/
 /**
+ * Monitors the modem status lines of a serial port. On Linux the native
+ * monitor blocks on TIOCMIWAIT so line changes are reported as they
+ * happen; where the driver does not support it, the lines are sampled
+ * every {@link #getPollingInterval()} milliseconds. The interval is read
+ * from the <code>org.eclipse.soda.dk.comm.status.interval</code> system
+ * property (default 100).
  * @author IBM
  * @version 1.2.0
  * @since 1.0
@@ -26,6 +32,36 @@ class SerialStatusEventThread extends Thread {
 	 */
 	private final int pollingTime = 5; //  ??
 
+	/**
+	 * Define the polling interval property (String) constant.
+	 */
+	static final String POLLING_INTERVAL_PROPERTY = "org.eclipse.soda.dk.comm.status.interval"; //$NON-NLS-1$
+
+	/**
+	 * Define the polling interval (int) field, in milliseconds.
+	 */
+	private final int pollingInterval = Integer.getInteger(POLLING_INTERVAL_PROPERTY, 100).intValue();
+
+	/**
+	 * Define the wakeup retry (long) constant, in milliseconds.
+	 */
+	private static final long WAKEUP_RETRY = 10;
+
+	/**
+	 * Define the native thread (long) field; set by the native monitor while it runs.
+	 */
+	private long nativeThread = 0;
+
+	/**
+	 * Define the wakeup request (int) field, counting the wakeups asked for.
+	 */
+	private int wakeupRequest = 0;
+
+	/**
+	 * Define the wakeup ack (int) field, the last wakeup request the native monitor has seen.
+	 */
+	private volatile int wakeupAck = 0;
+
 	/**
 	 * Define the file descriptor (int) field.
 	 */
@@ -34,7 +70,7 @@ class SerialStatusEventThread extends Thread {
 	/**
 	 * Define the stop thread flag (int) field.
 	 */
-	private int stopThreadFlag = 0;
+	private volatile int stopThreadFlag = 0;
 
 	/**
 	 * Constructs an instance of this class from the specified fd and sp parameters.
@@ -54,6 +90,14 @@ class SerialStatusEventThread extends Thread {
 		return this.pollingTime;
 	}
 
+	/**
+	 * Gets the polling interval (int) value.
+	 * @return	The polling interval (<code>int</code>) value, in milliseconds.
+	 */
+	public int getPollingInterval() {
+		return this.pollingInterval;
+	}
+
 	/**
 	 * Gets the stop thread flag (int) value.
 	 * @return	The stop thread flag (<code>int</code>) value.
@@ -81,8 +125,42 @@ class SerialStatusEventThread extends Thread {
 	 * @param value	The value (<code>int</code>) parameter.
 	 * @see #getStopThreadFlag()
 	 */
-	public void setStopThreadFlag(final int value) {
+	public synchronized void setStopThreadFlag(final int value) {
 		this.stopThreadFlag = value;
+		// The native monitor may be blocked waiting for a line change.
+		if (value != 0) {
+			wakeup();
+		}
 		return;
 	}
+
+	/**
+	 * Wake up the native monitor so it re-reads the notification flags of
+	 * the serial port, for example after line error notification has been
+	 * switched on. A signal that arrives just before the monitor blocks is
+	 * lost, so it is sent again until the monitor has acknowledged this
+	 * request or left. A monitor that has not yet started blocking reads
+	 * the flags after it publishes its native thread, so it needs none.
+	 */
+	public synchronized void wakeup() {
+		final int request = ++this.wakeupRequest;
+		boolean interrupted = false;
+		while ((this.nativeThread != 0) && (this.wakeupAck - request < 0)) {
+			wakeupNC(this.nativeThread);
+			try {
+				wait(WAKEUP_RETRY);
+			} catch (final InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Wake up the native monitor blocked in the specified native thread.
+	 * @param thread	The native thread (<code>long</code>) parameter.
+	 */
+	private native void wakeupNC(final long thread);
 }
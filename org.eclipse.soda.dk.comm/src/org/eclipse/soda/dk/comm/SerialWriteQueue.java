@@ -0,0 +1,137 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.io.IOException;
+
+/**
+ * Per port write queue. Any number of threads submit whole frames; a
+ * single drainer thread writes them in submission order, each frame in one
+ * piece, so frames from different producers never interleave. Producers
+ * only hold the queue lock long enough to link a frame onto the tail, and
+ * the drainer takes every queued frame in one step before writing, so
+ * producers never wait on the device.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+class SerialWriteQueue extends Thread {
+	/**
+	 * Define the serial port (NSSerialPort) field.
+	 */
+	private final NSSerialPort serialPort;
+
+	/**
+	 * Define the head (WriteFuture) field.
+	 */
+	private WriteFuture head = null;
+
+	/**
+	 * Define the tail (WriteFuture) field.
+	 */
+	private WriteFuture tail = null;
+
+	/**
+	 * Define the stopped (boolean) field.
+	 */
+	private boolean stopped = false;
+
+	/**
+	 * Constructs an instance of this class from the specified serial port parameter.
+	 * @param sp	The sp (<code>NSSerialPort</code>) parameter.
+	 */
+	SerialWriteQueue(final NSSerialPort sp) {
+		super("SerialWriteQueue-" + sp.getName()); //$NON-NLS-1$
+		this.serialPort = sp;
+		setDaemon(true);
+	}
+
+	/**
+	 * Fail every future in the specified chain.
+	 * @param first	The first (<code>WriteFuture</code>) parameter.
+	 */
+	private static void fail(final WriteFuture first) {
+		for (WriteFuture f = first; f != null; f = f.next) {
+			f.complete(new IOException("port closed")); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Run.
+	 */
+	public void run() {
+		while (true) {
+			WriteFuture batch;
+			synchronized (this) {
+				while ((this.head == null) && !this.stopped) {
+					try {
+						wait();
+					} catch (final InterruptedException e) {
+						// keep draining until stopped
+					}
+				}
+				if (this.stopped) {
+					break;
+				}
+				batch = this.head;
+				this.head = this.tail = null;
+			}
+			for (WriteFuture f = batch; f != null; f = f.next) {
+				IOException failure = null;
+				try {
+					final NSDeviceOutputStream out = (NSDeviceOutputStream) this.serialPort.getOutputStream();
+					out.writeFrame(f.frame, f.offset, f.length);
+				} catch (final IOException e) {
+					failure = e;
+				} catch (final RuntimeException e) {
+					// fail this frame only; the drainer must keep serving the rest
+					failure = new IOException(e.toString());
+					failure.initCause(e);
+				}
+				f.complete(failure);
+			}
+		}
+	}
+
+	/**
+	 * Stop the drainer; frames not yet written fail.
+	 */
+	void shutdown() {
+		WriteFuture pending;
+		synchronized (this) {
+			this.stopped = true;
+			pending = this.head;
+			this.head = this.tail = null;
+			notifyAll();
+		}
+		fail(pending);
+	}
+
+	/**
+	 * Queue the specified write.
+	 * @param f	The f (<code>WriteFuture</code>) parameter.
+	 */
+	void submit(final WriteFuture f) {
+		synchronized (this) {
+			if (!this.stopped) {
+				if (this.tail == null) {
+					this.head = f;
+					notifyAll();
+				} else {
+					this.tail.next = f;
+				}
+				this.tail = f;
+				return;
+			}
+		}
+		fail(f);
+	}
+}
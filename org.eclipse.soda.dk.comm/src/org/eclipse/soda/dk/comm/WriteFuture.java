@@ -0,0 +1,140 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Result of an asynchronous frame write. The future completes once the
+ * whole frame has been handed to the kernel, or fails with the
+ * <code>IOException</code> that stopped it. The frame array must not be
+ * modified until the future is done; it is written in place.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ * @see NSSerialPort#writeAsync(byte[], int, int)
+ */
+public class WriteFuture {
+	/**
+	 * Define the frame (byte[]) field.
+	 */
+	final byte[] frame;
+
+	/**
+	 * Define the offset (int) field.
+	 */
+	final int offset;
+
+	/**
+	 * Define the length (int) field.
+	 */
+	final int length;
+
+	/**
+	 * Define the next (WriteFuture) field, the link in the write queue.
+	 */
+	WriteFuture next = null;
+
+	/**
+	 * Define the done (boolean) field.
+	 */
+	private boolean done = false;
+
+	/**
+	 * Define the exception (IOException) field.
+	 */
+	private IOException exception = null;
+
+	/**
+	 * Constructs an instance of this class from the specified frame, offset and length parameters.
+	 * @param frame	The frame (<code>byte[]</code>) parameter.
+	 * @param offset	The offset (<code>int</code>) parameter.
+	 * @param length	The length (<code>int</code>) parameter.
+	 */
+	WriteFuture(final byte[] frame, final int offset, final int length) {
+		this.frame = frame;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Complete this future, successfully if the specified exception is <code>null</code>.
+	 * @param e	The e (<code>IOException</code>) parameter.
+	 */
+	synchronized void complete(final IOException e) {
+		this.exception = e;
+		this.done = true;
+		notifyAll();
+	}
+
+	/**
+	 * Wait for the write to complete.
+	 * @return	The number of bytes written (<code>int</code>).
+	 * @throws IOException If the write failed.
+	 * @throws InterruptedException If the calling thread was interrupted.
+	 */
+	public synchronized int get() throws IOException, InterruptedException {
+		while (!this.done) {
+			wait();
+		}
+		return getResult();
+	}
+
+	/**
+	 * Wait up to the specified number of milliseconds for the write to complete.
+	 * @param millis	The millis (<code>long</code>) parameter.
+	 * @return	The number of bytes written (<code>int</code>).
+	 * @throws IOException If the write failed.
+	 * @throws InterruptedIOException If the write did not complete in time.
+	 * @throws InterruptedException If the calling thread was interrupted.
+	 */
+	public synchronized int get(final long millis) throws IOException, InterruptedException {
+		final long deadline = System.currentTimeMillis() + millis;
+		long left = millis;
+		while (!this.done && (left > 0)) {
+			wait(left);
+			left = deadline - System.currentTimeMillis();
+		}
+		if (!this.done) {
+			throw new InterruptedIOException();
+		}
+		return getResult();
+	}
+
+	/**
+	 * Gets the exception (IOException) value.
+	 * @return	The exception (<code>IOException</code>) value, or <code>null</code>.
+	 */
+	public synchronized IOException getException() {
+		return this.exception;
+	}
+
+	/**
+	 * Gets the result (int) value.
+	 * @return	The result (<code>int</code>) value.
+	 * @throws IOException If the write failed.
+	 */
+	private int getResult() throws IOException {
+		if (this.exception != null) {
+			throw this.exception;
+		}
+		return this.length;
+	}
+
+	/**
+	 * Gets the done (boolean) value.
+	 * @return	The done (<code>boolean</code>) value.
+	 */
+	public synchronized boolean isDone() {
+		return this.done;
+	}
+}
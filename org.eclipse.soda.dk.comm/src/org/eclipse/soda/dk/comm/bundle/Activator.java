@@ -10,6 +10,8 @@ package org.eclipse.soda.dk.comm.bundle;
  * Contributors:                                                         *
  *     IBM - initial API and implementation                              *
  ************************************************************************/
+import javax.comm.CommPortIdentifier;
+import org.eclipse.soda.dk.comm.CommPortWatcher;
 import org.eclipse.soda.dk.comm.internal.Library;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
@@ -20,6 +22,11 @@ import org.osgi.framework.BundleContext;
  * @since 1.0
  */
 public class Activator implements BundleActivator {
+	/**
+	 * Define the background discovery property (String) constant.
+	 */
+	public static final String BACKGROUND_DISCOVERY_PROPERTY = "org.eclipse.soda.dk.comm.discovery.background"; //$NON-NLS-1$
+
 	/**
 	 * Parse bundle list with the specified raw list and bundle file parameters and return the String result.
 	 * @param rawList	The raw list (<code>String</code>) parameter.
@@ -72,7 +79,11 @@ public class Activator implements BundleActivator {
 	}
 
 	/**
-	 * Start with the specified arg0 parameter.
+	 * Start with the specified arg0 parameter. Once the library can be
+	 * found, the ports are discovered in the background, unless the
+	 * <code>org.eclipse.soda.dk.comm.discovery.background</code> property
+	 * is <code>false</code>; then the first lookup discovers them. Device
+	 * watchers stopped with the bundle are started again.
 	 * @param arg0	The arg0 (<code>BundleContext</code>) parameter.
 	 * @throws Exception Exception.
 	 */
@@ -94,14 +105,19 @@ public class Activator implements BundleActivator {
 			 */
 			Library.setBundlepath(Library.FILE, bundle_path);
 		}
+		CommPortWatcher.startAll();
+		if (!"false".equalsIgnoreCase(System.getProperty(BACKGROUND_DISCOVERY_PROPERTY))) { //$NON-NLS-1$
+			CommPortIdentifier.discoverInBackground();
+		}
 	}
 
 	/**
-	 * Stop with the specified arg0 parameter.
+	 * Stop with the specified arg0 parameter. The device watchers are
+	 * stopped; ports already listed stay listed.
 	 * @param arg0	The arg0 (<code>BundleContext</code>) parameter.
 	 * @throws Exception Exception.
 	 */
 	public void stop(final BundleContext arg0) throws Exception {
-		/* do nothing */
+		CommPortWatcher.stopAll();
 	}
 }
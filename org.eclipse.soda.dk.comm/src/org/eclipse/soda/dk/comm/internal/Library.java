@@ -45,24 +45,41 @@ public class Library {
 	private static String bundlepath = ""; //$NON-NLS-1$
 
 	/**
-	 * Load_dkcomm.
+	 * Define the loaded (boolean) field.
 	 */
-	public static void load_dkcomm() {
-		if (load_from_java_lib_path() == false) {
-			load_from_bundle();
+	private static boolean loaded = false;
+
+	/**
+	 * Load_dkcomm, once.
+	 * @throws UnsatisfiedLinkError if the library cannot be loaded; the next call tries again.
+	 */
+	public static synchronized void load_dkcomm() {
+		if (!loaded) {
+			if (load_from_java_lib_path() == false) {
+				load_from_bundle();
+			}
+			loaded = true;
 		}
 	}
 
 	/**
 	 * Load_from_bundle.
+	 * @throws UnsatisfiedLinkError if the library cannot be loaded.
 	 */
 	private static void load_from_bundle() {
 		String file_separator = System.getProperty("file.separator"); //$NON-NLS-1$
 		String javalibpath = System.getProperty("java.library.path"); //$NON-NLS-1$
 		String path_seperator = System.getProperty("path.separator"); //$NON-NLS-1$
-		int i = javalibpath.indexOf(path_seperator);
-		javalibpath = javalibpath.substring(0, i) + file_separator;
 		String os = System.getProperty("osgi.ws"); //$NON-NLS-1$
+		if ((javalibpath == null) || (os == null)) {
+			/* not running in a framework, so there is no bundle to load from */
+			throw new UnsatisfiedLinkError("no dkcomm in java.library.path"); //$NON-NLS-1$
+		}
+		int i = javalibpath.indexOf(path_seperator);
+		if (i != -1) {
+			javalibpath = javalibpath.substring(0, i);
+		}
+		javalibpath = javalibpath + file_separator;
 		String processor = System.getProperty("org.osgi.framework.processor"); //$NON-NLS-1$
 		String libname = ""; //$NON-NLS-1$
 		if (os.equalsIgnoreCase("win32")) { //$NON-NLS-1$
@@ -80,11 +97,7 @@ public class Library {
 		} catch (final IOException e) {
 			e.printStackTrace();
 		}
-		try {
-			System.load(javalibpath + libname);
-		} catch (java.lang.UnsatisfiedLinkError e) {
-			e.printStackTrace();
-		}
+		System.load(javalibpath + libname);
 	}
 
 	/**
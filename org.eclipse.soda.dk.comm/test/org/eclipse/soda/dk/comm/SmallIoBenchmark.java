@@ -0,0 +1,127 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.comm.CommPortIdentifier;
+import javax.comm.SerialPort;
+
+/**
+ * Measures the cost of small unbuffered reads and writes, where the JNI
+ * overhead of each call is a large share of the total: <code>available()</code>,
+ * an 8 byte <code>write</code> and an 8 byte <code>read</code> of data
+ * that is already waiting. Only the public javax.comm API is used, so the
+ * same class can be run against an older build of the bundle and its
+ * library to compare. Needs the native library and a port that echoes
+ * what it is sent (a loopback plug, or a pseudo terminal whose master
+ * echoes), named by the <code>org.eclipse.soda.dk.comm.test.port</code>
+ * property:
+ * <pre>
+ * socat pty,raw,echo=0,link=/tmp/ttyT0 exec:cat &amp;
+ * java -Dorg.eclipse.soda.dk.comm.devices=/tmp/ttyT0 \
+ *      -Dorg.eclipse.soda.dk.comm.test.port=ttyT0 ... SmallIoBenchmark
+ * </pre>
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+public class SmallIoBenchmark {
+	/**
+	 * Define the chunk (int) constant, the bytes per read or write.
+	 */
+	private static final int CHUNK = 8;
+
+	/**
+	 * Define the batch (int) constant, the calls per batch; a batch of
+	 * writes must fit in the echo path without blocking.
+	 */
+	private static final int BATCH = 64;
+
+	/**
+	 * Define the batches (int) constant, per measured run.
+	 */
+	private static final int BATCHES = 2000;
+
+	/**
+	 * Main with the specified args parameter.
+	 * @param args	The args (<code>String[]</code>) parameter.
+	 * @throws Exception Exception.
+	 */
+	public static void main(final String[] args) throws Exception {
+		final String name = System.getProperty(WriteAllocationTest.PORT_PROPERTY);
+		if (name == null) {
+			System.out.println("skipped: needs -D" + WriteAllocationTest.PORT_PROPERTY); //$NON-NLS-1$
+			return;
+		}
+		final SerialPort port = (SerialPort) CommPortIdentifier.getPortIdentifier(name).open("SmallIoBenchmark", 2000); //$NON-NLS-1$
+		try {
+			port.setInputBufferSize(0);
+			port.setOutputBufferSize(0);
+			port.enableReceiveTimeout(1000);
+			final InputStream in = port.getInputStream();
+			final OutputStream out = port.getOutputStream();
+			// The first run warms up; the second is reported.
+			run(in, out, false);
+			run(in, out, true);
+		} finally {
+			port.close();
+		}
+	}
+
+	/**
+	 * Run the batches once, printing the time per call if report is set.
+	 * @param in	The in (<code>InputStream</code>) parameter.
+	 * @param out	The out (<code>OutputStream</code>) parameter.
+	 * @param report	The report (<code>boolean</code>) parameter.
+	 * @throws Exception Exception.
+	 */
+	private static void run(final InputStream in, final OutputStream out, final boolean report) throws Exception {
+		final byte[] data = new byte[CHUNK];
+		long availableTime = 0;
+		long writeTime = 0;
+		long readTime = 0;
+		for (int batch = 0; batch < BATCHES; batch++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < BATCH; i++) {
+				out.write(data, 0, CHUNK);
+			}
+			writeTime += System.nanoTime() - start;
+			// Wait for the echo, so every read below finds its data.
+			while (in.available() < BATCH * CHUNK) {
+				Thread.yield();
+			}
+			start = System.nanoTime();
+			for (int i = 0; i < BATCH; i++) {
+				in.available();
+			}
+			availableTime += System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < BATCH; i++) {
+				int off = 0;
+				while (off < CHUNK) {
+					final int rc = in.read(data, off, CHUNK - off);
+					if (rc <= 0) {
+						throw new IllegalStateException("echo lost"); //$NON-NLS-1$
+					}
+					off += rc;
+				}
+			}
+			readTime += System.nanoTime() - start;
+		}
+		if (report) {
+			final long calls = (long) BATCHES * BATCH;
+			System.out.println("available() " + availableTime / calls + " ns/call"); //$NON-NLS-1$ //$NON-NLS-2$
+			System.out.println("write(" + CHUNK + ")   " + writeTime / calls + " ns/call"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			System.out.println("read(" + CHUNK + ")    " + readTime / calls + " ns/call"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+}
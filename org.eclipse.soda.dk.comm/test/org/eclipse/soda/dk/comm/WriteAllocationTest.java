@@ -0,0 +1,100 @@
+package org.eclipse.soda.dk.comm;
+
+/*************************************************************************
+ * Copyright (c) 2007, 2009 IBM.                                         *
+ * All rights reserved. This program and the accompanying materials      *
+ * are made available under the terms of the Eclipse Public License v1.0 *
+ * which accompanies this distribution, and is available at              *
+ * http://www.eclipse.org/legal/epl-v10.html                             *
+ *                                                                       *
+ * Contributors:                                                         *
+ *     IBM - initial API and implementation                              *
+ ************************************************************************/
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import javax.comm.CommPortIdentifier;
+import javax.comm.SerialPort;
+
+/**
+ * Checks that <code>NSDeviceOutputStream.write(int)</code> allocates
+ * nothing in steady state, buffer drains included. Needs a full JRE whose
+ * thread MX bean counts allocated bytes, the native library, and a serial
+ * port that accepts data without flow control, named by the
+ * <code>org.eclipse.soda.dk.comm.test.port</code> property. A pseudo
+ * terminal drained to <code>/dev/null</code> will do:
+ * <pre>
+ * socat pty,raw,echo=0,link=/tmp/ttyT0 system:'cat &gt; /dev/null' &amp;
+ * java -Dorg.eclipse.soda.dk.comm.devices=/tmp/ttyT0 \
+ *      -Dorg.eclipse.soda.dk.comm.test.port=ttyT0 ... WriteAllocationTest
+ * </pre>
+ * Exits with an exception if any bytes are allocated per write.
+ * @author IBM
+ * @version 1.2.0
+ * @since 1.0
+ */
+public class WriteAllocationTest {
+	/**
+	 * Define the port property (String) constant.
+	 */
+	static final String PORT_PROPERTY = "org.eclipse.soda.dk.comm.test.port"; //$NON-NLS-1$
+
+	/**
+	 * Define the writes (int) constant, per measured round.
+	 */
+	private static final int WRITES = 1000000;
+
+	/**
+	 * Define the slack (long) constant, the bytes a round may allocate
+	 * without any write allocating, such as the JIT compiling a method.
+	 * Any per write allocation is at least 16 bytes per call, far above it.
+	 */
+	private static final long SLACK = 4096;
+
+	/**
+	 * Main with the specified args parameter.
+	 * @param args	The args (<code>String[]</code>) parameter.
+	 * @throws Exception Exception.
+	 */
+	public static void main(final String[] args) throws Exception {
+		final String name = System.getProperty(PORT_PROPERTY);
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ((name == null) || !(bean instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("skipped: needs -D" + PORT_PROPERTY + " and a JRE that counts allocated bytes"); //$NON-NLS-1$ //$NON-NLS-2$
+			return;
+		}
+		final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+		final long thread = Thread.currentThread().getId();
+		final SerialPort port = (SerialPort) CommPortIdentifier.getPortIdentifier(name).open("WriteAllocationTest", 2000); //$NON-NLS-1$
+		try {
+			port.setOutputBufferSize(1024);
+			final OutputStream out = port.getOutputStream();
+			// Warm up until write(int) and the drain are compiled.
+			for (int round = 0; round < 5; round++) {
+				write(out, WRITES);
+			}
+			final long before = allocations.getThreadAllocatedBytes(thread);
+			write(out, WRITES);
+			final long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+			System.out.println(WRITES + " writes allocated " + allocated + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$
+			if (allocated > SLACK) {
+				throw new IllegalStateException("write(int) allocates: " + allocated + " bytes for " + WRITES + " writes"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+		} finally {
+			port.close();
+		}
+	}
+
+	/**
+	 * Write the specified number of single bytes.
+	 * @param out	The out (<code>OutputStream</code>) parameter.
+	 * @param count	The count (<code>int</code>) parameter.
+	 * @throws Exception Exception.
+	 */
+	private static void write(final OutputStream out, final int count) throws Exception {
+		for (int i = 0; i < count; i++) {
+			out.write(i);
+		}
+		out.flush();
+	}
+}